@@ -0,0 +1,115 @@
+package com.github.demo.grpc.benchmarks;
+
+import com.github.demo.grpc.compression.DeflateCodec;
+import io.grpc.Codec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU time against wire bytes of the message codecs: the time per message is the score, the
+ * {@code compressedBytes} and {@code uncompressedBytes} counters give the compression ratio. Text stands for
+ * JSON-like payloads, random for already compressed ones like images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"gzip", "deflate"})
+    public String codec;
+
+    @Param({"text", "random"})
+    public String payload;
+
+    @Param({"1024", "65536"})
+    public int size;
+
+    private Codec compressor;
+
+    private byte[] message;
+
+    private byte[] compressed;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+
+        public long compressedBytes;
+
+        public long uncompressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            compressedBytes = 0;
+            uncompressedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        compressor = "gzip".equals(codec) ? new Codec.Gzip() : new DeflateCodec();
+        message = new byte[size];
+        if ("text".equals(payload)) {
+            byte[] text = ("{\"id\":12345,\"name\":\"benchmark\",\"tags\":[\"grpc\",\"nacos\",\"spring\"],"
+                    + "\"enabled\":true,\"weight\":1.0}").getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < size; i++) {
+                message[i] = text[i % text.length];
+            }
+        } else {
+            new Random(42).nextBytes(message);
+        }
+        compressed = compress();
+    }
+
+    @Benchmark
+    public int compress(Bytes bytes) throws IOException {
+        int length = compress().length;
+        bytes.compressedBytes += length;
+        bytes.uncompressedBytes += size;
+        return length;
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = compressor.decompress(new ByteArrayInputStream(compressed))) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private byte[] compress() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 64);
+        try (OutputStream compressing = compressor.compress(out)) {
+            compressing.write(message);
+        }
+        return out.toByteArray();
+    }
+}
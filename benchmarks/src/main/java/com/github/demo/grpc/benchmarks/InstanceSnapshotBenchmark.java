@@ -0,0 +1,76 @@
+package com.github.demo.grpc.benchmarks;
+
+import com.github.demo.grpc.benchmarks.support.FakeDiscoveryClient;
+import com.github.demo.grpc.nacos.InstanceSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffs an instance list against the addresses a resolver currently reports, the work of every refresh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstanceSnapshotBenchmark {
+
+    private static final String SERVICE = "benchmark-service";
+
+    @Param({"10", "1000", "10000"})
+    public int instances;
+
+    private InstanceSnapshot snapshot;
+
+    private List<ServiceInstance> unchanged;
+
+    private List<ServiceInstance> oneUpdated;
+
+    private List<ServiceInstance> oneAdded;
+
+    @Setup
+    public void setUp() {
+        snapshot = InstanceSnapshot.EMPTY.diff(FakeDiscoveryClient.newInstances(SERVICE, instances)).getSnapshot();
+        // equal, but distinct instances like every look up returns
+        unchanged = FakeDiscoveryClient.newInstances(SERVICE, instances);
+        oneUpdated = new ArrayList<>(unchanged);
+        oneUpdated.set(0, FakeDiscoveryClient.newInstance(SERVICE, 0, "2.0"));
+        oneAdded = new ArrayList<>(unchanged);
+        oneAdded.add(FakeDiscoveryClient.newInstance(SERVICE, instances, "1.0"));
+    }
+
+    @Benchmark
+    public InstanceSnapshot.Diff initial() {
+        return InstanceSnapshot.EMPTY.diff(unchanged);
+    }
+
+    @Benchmark
+    public InstanceSnapshot.Diff unchanged() {
+        return snapshot.diff(unchanged);
+    }
+
+    @Benchmark
+    public InstanceSnapshot.Diff oneUpdated() {
+        return snapshot.diff(oneUpdated);
+    }
+
+    @Benchmark
+    public InstanceSnapshot.Diff oneAdded() {
+        return snapshot.diff(oneAdded);
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.demo.grpc.benchmarks;
+
+import com.github.demo.grpc.benchmarks.support.EchoService;
+import com.github.demo.grpc.compression.GrpcCodecRegistry;
+import com.github.demo.grpc.config.GrpcServerProperties;
+import com.github.demo.grpc.server.GrpcConcurrencyLimitInterceptor;
+import com.github.demo.grpc.server.GrpcServerCompressionInterceptor;
+import com.github.demo.grpc.server.GrpcServerDeadlineInterceptor;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the server interceptors {@code GrpcServer} binds to every service: binding the chain once at startup
+ * and passing every call through it, over the in-process transport on a direct executor so the chain dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptorChainBenchmark {
+
+    /**
+     * none: no interceptors, starter: the deadline, compression and concurrency limit interceptors.
+     */
+    @Param({"none", "starter"})
+    public String chain;
+
+    private final BytesValue request = BytesValue.of(ByteString.copyFromUtf8("ping"));
+
+    private List<ServerInterceptor> interceptors;
+
+    private GrpcServerDeadlineInterceptor deadlineInterceptor;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Setup
+    public void setUp() throws IOException {
+        interceptors = new ArrayList<>();
+        if ("starter".equals(chain)) {
+            deadlineInterceptor = new GrpcServerDeadlineInterceptor(Duration.ofSeconds(30));
+            interceptors.add(deadlineInterceptor);
+            interceptors.add(new GrpcServerCompressionInterceptor(new GrpcServerProperties.ServerCompression(),
+                    new GrpcCodecRegistry(Collections.emptyList())));
+            interceptors.add(new GrpcConcurrencyLimitInterceptor());
+        }
+        String name = "interceptor-chain-" + chain;
+        server = InProcessServerBuilder.forName(name)
+                .directExecutor()
+                .addService(ServerInterceptors.intercept(EchoService.bindService(), interceptors))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        if (deadlineInterceptor != null) {
+            deadlineInterceptor.destroy();
+        }
+    }
+
+    @Benchmark
+    public ServerServiceDefinition bind() {
+        return ServerInterceptors.intercept(EchoService.bindService(), interceptors);
+    }
+
+    @Benchmark
+    public BytesValue unaryCall() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.ECHO, CallOptions.DEFAULT, request);
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.demo.grpc.benchmarks;
+
+import com.github.demo.grpc.benchmarks.support.FakeDiscoveryClient;
+import com.github.demo.grpc.nacos.NacosNameResolver;
+import com.github.demo.grpc.nacos.NacosNameResolverProvider;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import io.grpc.internal.GrpcUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes a {@link NacosNameResolver} against a {@link FakeDiscoveryClient}: the look up, the diff and reporting
+ * the result to the channel. The resolver runs on a direct executor, so each operation is one complete refresh.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NacosNameResolverBenchmark {
+
+    private static final String SERVICE = "benchmark-service";
+
+    @Param({"10", "1000", "10000"})
+    public int instances;
+
+    private final FakeDiscoveryClient discoveryClient = new FakeDiscoveryClient();
+
+    private ScheduledExecutorService scheduler;
+
+    private NacosNameResolver resolver;
+
+    private List<ServiceInstance> current;
+
+    private List<ServiceInstance> updated;
+
+    private boolean flip;
+
+    private long results;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        current = FakeDiscoveryClient.newInstances(SERVICE, instances);
+        updated = new ArrayList<>(current);
+        updated.set(0, FakeDiscoveryClient.newInstance(SERVICE, 0, "2.0"));
+        discoveryClient.setInstances(SERVICE, current);
+        scheduler = Executors.newSingleThreadScheduledExecutor(GrpcUtil.getThreadFactory("benchmark-scheduler-%d", true));
+        NameResolver.Args args = NameResolver.Args.newBuilder()
+                .setDefaultPort(9090)
+                .setProxyDetector(GrpcUtil.NOOP_PROXY_DETECTOR)
+                .setSynchronizationContext(new SynchronizationContext((thread, e) -> {
+                    throw new IllegalStateException(e);
+                }))
+                .setServiceConfigParser(new NameResolver.ServiceConfigParser() {
+                    @Override
+                    public NameResolver.ConfigOrError parseServiceConfig(Map<String, ?> rawServiceConfig) {
+                        return NameResolver.ConfigOrError.fromConfig(rawServiceConfig);
+                    }
+                })
+                .setScheduledExecutorService(scheduler)
+                .setOffloadExecutor(MoreExecutors.directExecutor())
+                .build();
+        resolver = (NacosNameResolver) new NacosNameResolverProvider(discoveryClient)
+                .newNameResolver(URI.create("nacos:///" + SERVICE), args);
+        resolver.start(new NameResolver.Listener2() {
+            @Override
+            public void onResult(NameResolver.ResolutionResult resolutionResult) {
+                results++;
+            }
+
+            @Override
+            public void onError(Status error) {
+                throw error.asRuntimeException();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        resolver.shutdown();
+        scheduler.shutdown();
+    }
+
+    /**
+     * Every refresh finds one instance with a changed weight and reports new addresses.
+     */
+    @Benchmark
+    public long refreshChanged() {
+        flip = !flip;
+        discoveryClient.setInstances(SERVICE, flip ? updated : current);
+        resolver.refreshFromExternal();
+        return results;
+    }
+
+    /**
+     * Every refresh finds the same instances and is skipped after the diff.
+     */
+    @Benchmark
+    public long refreshUnchanged() {
+        discoveryClient.setInstances(SERVICE, current);
+        resolver.refreshFromExternal();
+        return results;
+    }
+
+    /**
+     * The instances are handed over like a nacos push, without a look up.
+     */
+    @Benchmark
+    public long pushChanged() {
+        flip = !flip;
+        resolver.refreshFromExternal(flip ? updated : current);
+        return results;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.demo.grpc.benchmarks;
+
+import com.github.demo.grpc.context.GrpcClientBeanPostProcessor;
+import com.github.demo.grpc.context.GrpcClientDeadlineInterceptor;
+import io.grpc.Channel;
+import io.grpc.ManagedChannel;
+import io.grpc.health.v1.HealthGrpc;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.stub.AbstractStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates {@code @GrpcClient} stubs the way {@link GrpcClientBeanPostProcessor} does, through the static factory
+ * method of the generated class found by reflection, compared with calling the factory directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StubCreationBenchmark {
+
+    @Param({"blocking", "future", "async"})
+    public String stub;
+
+    private final StubFactory stubFactory = new StubFactory();
+
+    private final GrpcClientDeadlineInterceptor deadlineInterceptor =
+            new GrpcClientDeadlineInterceptor(Duration.ofSeconds(2), Collections.emptyMap());
+
+    private ManagedChannel channel;
+
+    private Class<?> stubType;
+
+    @Setup
+    public void setUp() {
+        channel = InProcessChannelBuilder.forName("stub-creation").build();
+        switch (stub) {
+            case "blocking":
+                stubType = HealthGrpc.HealthBlockingStub.class;
+                break;
+            case "future":
+                stubType = HealthGrpc.HealthFutureStub.class;
+                break;
+            default:
+                stubType = HealthGrpc.HealthStub.class;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.shutdownNow();
+    }
+
+    @Benchmark
+    public AbstractStub<?> createStub() {
+        return stubFactory.create(stubType, channel);
+    }
+
+    /**
+     * Like a {@code @GrpcClient(deadline = "2s")} injection point.
+     */
+    @Benchmark
+    public AbstractStub<?> createStubWithDeadline() {
+        return stubFactory.create(stubType, channel).withInterceptors(deadlineInterceptor);
+    }
+
+    @Benchmark
+    public AbstractStub<?> direct() {
+        switch (stub) {
+            case "blocking":
+                return HealthGrpc.newBlockingStub(channel);
+            case "future":
+                return HealthGrpc.newFutureStub(channel);
+            default:
+                return HealthGrpc.newStub(channel);
+        }
+    }
+
+    private static final class StubFactory extends GrpcClientBeanPostProcessor {
+
+        AbstractStub<?> create(Class<?> stubType, Channel channel) {
+            return createStub(stubType, channel);
+        }
+    }
+}
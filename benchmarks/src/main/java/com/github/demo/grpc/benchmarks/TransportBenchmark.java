@@ -0,0 +1,136 @@
+package com.github.demo.grpc.benchmarks;
+
+import com.github.demo.grpc.benchmarks.support.EchoService;
+import com.github.demo.grpc.metrics.GrpcClientMetrics;
+import com.github.demo.grpc.metrics.GrpcServerMetrics;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end unary and streaming throughput with the starter's client and server metrics installed, over the
+ * in-process transport and over Netty on the loopback interface.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final int STREAM_MESSAGES = 100;
+
+    @Param({"inprocess", "netty"})
+    public String transport;
+
+    @Param({"16", "16384"})
+    public int payloadSize;
+
+    private BytesValue request;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Setup
+    public void setUp() throws IOException {
+        request = BytesValue.of(ByteString.copyFrom(new byte[payloadSize]));
+        ServerBuilder<?> serverBuilder;
+        ManagedChannelBuilder<?> channelBuilder;
+        if ("netty".equals(transport)) {
+            serverBuilder = NettyServerBuilder.forAddress(new InetSocketAddress("127.0.0.1", 0));
+        } else {
+            serverBuilder = InProcessServerBuilder.forName("transport-" + payloadSize);
+        }
+        GrpcServerMetrics serverMetrics = new GrpcServerMetrics();
+        serverMetrics.registerService(EchoService.bindService());
+        server = serverBuilder
+                .addService(EchoService.bindService())
+                .addStreamTracerFactory(serverMetrics.getStreamTracerFactory())
+                .build()
+                .start();
+        if ("netty".equals(transport)) {
+            channelBuilder = NettyChannelBuilder.forAddress("127.0.0.1", server.getPort()).usePlaintext();
+        } else {
+            channelBuilder = InProcessChannelBuilder.forName("transport-" + payloadSize);
+        }
+        channel = channelBuilder
+                .intercept(new GrpcClientMetrics().newInterceptor("benchmark-service"))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public BytesValue unary() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.ECHO, CallOptions.DEFAULT, request);
+    }
+
+    /**
+     * Echoes {@value #STREAM_MESSAGES} messages over one bidi stream, the score counts messages.
+     */
+    @Benchmark
+    @OperationsPerInvocation(STREAM_MESSAGES)
+    public int streaming() throws Exception {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        ClientCall<BytesValue, BytesValue> call = channel.newCall(EchoService.STREAM, CallOptions.DEFAULT);
+        StreamObserver<BytesValue> requests = ClientCalls.asyncBidiStreamingCall(call, new StreamObserver<BytesValue>() {
+
+            private int received;
+
+            @Override
+            public void onNext(BytesValue value) {
+                received++;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                done.complete(received);
+            }
+        });
+        for (int i = 0; i < STREAM_MESSAGES; i++) {
+            requests.onNext(request);
+        }
+        requests.onCompleted();
+        return done.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.demo.grpc.benchmarks;
+
+import com.github.demo.grpc.benchmarks.support.EchoService;
+import com.github.demo.grpc.server.ZeroCopyMarshaller;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ClientCalls;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads a {@code bytes} payload over Netty on the loopback interface to a server parsing it with the default
+ * marshaller or the {@link ZeroCopyMarshaller}. Run with {@code -prof gc}, {@code gc.alloc.rate.norm} shows the
+ * bytes allocated per upload by client and server together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZeroCopyBenchmark {
+
+    @Param({"false", "true"})
+    public boolean zeroCopy;
+
+    @Param({"65536", "1048576", "4194304"})
+    public int payloadSize;
+
+    private BytesValue request;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Setup
+    public void setUp() throws IOException {
+        request = BytesValue.of(ByteString.copyFrom(new byte[payloadSize]));
+        ServerServiceDefinition service = EchoService.bindService();
+        if (zeroCopy) {
+            service = ZeroCopyMarshaller.apply(service, EchoService.SIZE.getFullMethodName()::equals);
+        }
+        server = NettyServerBuilder.forAddress(new InetSocketAddress("127.0.0.1", 0))
+                .maxInboundMessageSize(16 << 20)
+                .addService(service)
+                .build()
+                .start();
+        channel = NettyChannelBuilder.forAddress("127.0.0.1", server.getPort())
+                .usePlaintext()
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public BytesValue upload() {
+        return ClientCalls.blockingUnaryCall(channel, EchoService.SIZE, CallOptions.DEFAULT, request);
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.demo.grpc.benchmarks.support;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A service built from descriptors instead of generated code: {@code Echo} returns the request, {@code Stream}
+ * echoes every message of a bidi stream and {@code Size} returns the number of bytes it received.
+ */
+public final class EchoService {
+
+    public static final MethodDescriptor<BytesValue, BytesValue> ECHO = method("Echo", MethodDescriptor.MethodType.UNARY);
+
+    public static final MethodDescriptor<BytesValue, BytesValue> STREAM = method("Stream", MethodDescriptor.MethodType.BIDI_STREAMING);
+
+    public static final MethodDescriptor<BytesValue, BytesValue> SIZE = method("Size", MethodDescriptor.MethodType.UNARY);
+
+    private EchoService() {
+    }
+
+    public static ServerServiceDefinition bindService() {
+        ServiceDescriptor descriptor = ServiceDescriptor.newBuilder("benchmark.EchoService")
+                .addMethod(ECHO)
+                .addMethod(STREAM)
+                .addMethod(SIZE)
+                .build();
+        return ServerServiceDefinition.builder(descriptor)
+                .addMethod(ECHO, ServerCalls.asyncUnaryCall(EchoService::echo))
+                .addMethod(STREAM, ServerCalls.asyncBidiStreamingCall(EchoService::stream))
+                .addMethod(SIZE, ServerCalls.asyncUnaryCall(EchoService::size))
+                .build();
+    }
+
+    private static void echo(BytesValue request, StreamObserver<BytesValue> responseObserver) {
+        responseObserver.onNext(request);
+        responseObserver.onCompleted();
+    }
+
+    private static StreamObserver<BytesValue> stream(StreamObserver<BytesValue> responseObserver) {
+        return new StreamObserver<BytesValue>() {
+            @Override
+            public void onNext(BytesValue value) {
+                responseObserver.onNext(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private static void size(BytesValue request, StreamObserver<BytesValue> responseObserver) {
+        // reads every byte like a handler storing the payload would
+        byte sum = 0;
+        for (ByteBuffer buffer : request.getValue().asReadOnlyByteBufferList()) {
+            while (buffer.hasRemaining()) {
+                sum ^= buffer.get();
+            }
+        }
+        responseObserver.onNext(BytesValue.of(ByteString.copyFrom(new byte[]{sum})));
+        responseObserver.onCompleted();
+    }
+
+    private static MethodDescriptor<BytesValue, BytesValue> method(String name, MethodDescriptor.MethodType type) {
+        return MethodDescriptor.<BytesValue, BytesValue>newBuilder()
+                .setType(type)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName("benchmark.EchoService", name))
+                .setRequestMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+                .setResponseMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+                .build();
+    }
+}
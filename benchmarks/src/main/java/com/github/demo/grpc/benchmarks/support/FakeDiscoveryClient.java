@@ -0,0 +1,65 @@
+package com.github.demo.grpc.benchmarks.support;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link DiscoveryClient} serving instance lists set by the benchmark, so the suites run without nacos.
+ */
+public class FakeDiscoveryClient implements DiscoveryClient {
+
+    private final Map<String, List<ServiceInstance>> instances = new ConcurrentHashMap<>();
+
+    public void setInstances(String service, List<ServiceInstance> serviceInstances) {
+        instances.put(service, serviceInstances);
+    }
+
+    @Override
+    public String description() {
+        return "fake";
+    }
+
+    @Override
+    public List<ServiceInstance> getInstances(String serviceId) {
+        return instances.getOrDefault(serviceId, Collections.emptyList());
+    }
+
+    @Override
+    public List<String> getServices() {
+        return new ArrayList<>(instances.keySet());
+    }
+
+    /**
+     * @return {@code count} instances on distinct addresses with metadata like nacos reports it.
+     */
+    public static List<ServiceInstance> newInstances(String service, int count) {
+        List<ServiceInstance> serviceInstances = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            serviceInstances.add(newInstance(service, i, "1.0"));
+        }
+        return serviceInstances;
+    }
+
+    /**
+     * @param index  Selects the address, 10.0.0.0/8 with a port per index.
+     * @param weight The nacos weight, changes the metadata but not the address.
+     */
+    public static ServiceInstance newInstance(String service, int index, String weight) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("nacos.instanceId", "10." + (index >> 16 & 0xff) + "." + (index >> 8 & 0xff) + "." + (index & 0xff) + "#9090");
+        metadata.put("nacos.weight", weight);
+        metadata.put("nacos.cluster", "DEFAULT");
+        metadata.put("nacos.healthy", "true");
+        metadata.put("preserved.register.source", "SPRING_CLOUD");
+        return new DefaultServiceInstance(metadata.get("nacos.instanceId"), service,
+                "10." + (index >> 16 & 0xff) + "." + (index >> 8 & 0xff) + "." + (index & 0xff), 9090, false, metadata);
+    }
+}
@@ -3,12 +3,21 @@ package com.github.demo.grpc;
 import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.github.demo.grpc.annoation.GrpcGlobalInterceptor;
 import com.github.demo.grpc.annoation.GrpcService;
+import com.github.demo.grpc.compression.GrpcCodecRegistry;
 import com.github.demo.grpc.context.GrpcServerInitializedEvent;
 import com.github.demo.grpc.config.GrpcServerProperties;
+import com.github.demo.grpc.metrics.GrpcServerMetrics;
+import com.github.demo.grpc.nacos.NacosGrpcRegistry;
+import com.github.demo.grpc.server.GrpcNettyServerConfigurer;
+import com.github.demo.grpc.server.GrpcServerCompressionInterceptor;
+import com.github.demo.grpc.server.GrpcServerDrainer;
+import com.github.demo.grpc.server.GrpcServerExecutor;
+import com.github.demo.grpc.server.ZeroCopyMarshaller;
 import com.github.demo.grpc.utils.NetUtils;
 import io.grpc.*;
 import io.grpc.health.v1.HealthCheckResponse;
-import io.grpc.services.HealthStatusManager;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.services.HealthStatusManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanCreationException;
@@ -16,6 +25,7 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.support.AbstractApplicationContext;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.core.annotation.AnnotationUtils;
@@ -25,15 +35,19 @@ import org.springframework.core.type.AnnotatedTypeMetadata;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Hosts embedded gRPC server.
+ * <p>
+ * On shutdown the server is stopped before any other lifecycle bean: it deregisters from nacos, reports NOT_SERVING
+ * and lets the {@link GrpcServerDrainer} complete the running calls.
  */
 
-public class GrpcServer implements CommandLineRunner, DisposableBean {
+public class GrpcServer implements CommandLineRunner, SmartLifecycle, DisposableBean {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -46,6 +60,18 @@ public class GrpcServer implements CommandLineRunner, DisposableBean {
     @Autowired
     private GrpcServerProperties grpcServerProperties;
 
+    @Autowired
+    private GrpcServerExecutor grpcServerExecutor;
+
+    @Autowired
+    private GrpcNettyServerConfigurer grpcNettyServerConfigurer;
+
+    @Autowired
+    private GrpcServerDrainer grpcServerDrainer;
+
+    @Autowired
+    private GrpcCodecRegistry grpcCodecRegistry;
+
     private Server server;
 
 
@@ -53,36 +79,74 @@ public class GrpcServer implements CommandLineRunner, DisposableBean {
     public void run(String... args) throws Exception {
         logger.info("Starting gRPC Server ...");
 
-        final ServerBuilder<?> serverBuilder = ServerBuilder.forPort(grpcServerProperties.getPort());
+        final NettyServerBuilder serverBuilder = NettyServerBuilder.forPort(grpcServerProperties.getPort());
+        grpcNettyServerConfigurer.configure(serverBuilder);
+        grpcServerExecutor.configure(serverBuilder);
+        grpcServerDrainer.configure(serverBuilder);
+        grpcCodecRegistry.configure(serverBuilder);
+        GrpcServerMetrics metrics = applicationContext.getBeanProvider(GrpcServerMetrics.class).getIfAvailable();
+        if (metrics != null) {
+            serverBuilder.addStreamTracerFactory(metrics.getStreamTracerFactory());
+        }
+
+        // find all interceptors and services, each annotation is indexed once
+        long phaseStart = System.nanoTime();
+        List<String> globalInterceptorNames = getBeanNamesByTypeWithAnnotation(GrpcGlobalInterceptor.class, ServerInterceptor.class)
+                .collect(Collectors.toList());
+        List<String> serviceNames = getBeanNamesByTypeWithAnnotation(GrpcService.class, BindableService.class)
+                .collect(Collectors.toList());
+        long discoveryNanos = System.nanoTime() - phaseStart;
 
-        // find all interceptor
-        Collection<ServerInterceptor> globalInterceptors = getBeanNamesByTypeWithAnnotation(GrpcGlobalInterceptor.class, ServerInterceptor.class)
+        // bean creation isn't safe to parallelize, resolve services and interceptor chains sequentially
+        phaseStart = System.nanoTime();
+        Collection<ServerInterceptor> globalInterceptors = globalInterceptorNames.stream()
                 .map(name -> applicationContext.getBeanFactory().getBean(name, ServerInterceptor.class))
                 .collect(Collectors.toList());
-
-        // Adding health service
-        serverBuilder.addService(healthStatusManager.getHealthService());
-
-        // find and register all GRpcService-enabled beans
-        getBeanNamesByTypeWithAnnotation(GrpcService.class, BindableService.class)
-                .forEach(name -> {
+        List<ServiceBinding> bindings = serviceNames.stream()
+                .map(name -> {
                     BindableService srv = applicationContext.getBeanFactory().getBean(name, BindableService.class);
-                    ServerServiceDefinition serviceDefinition = srv.bindService();
                     GrpcService annotation = applicationContext.findAnnotationOnBean(name, GrpcService.class);
-                    // bind interceptors
-                    serviceDefinition = bindInterceptors(serviceDefinition, annotation, globalInterceptors);
-                    serverBuilder.addService(serviceDefinition);
-                    String serviceName = serviceDefinition.getServiceDescriptor().getName();
-                    healthStatusManager.setStatus(serviceName, HealthCheckResponse.ServingStatus.SERVING);
+                    return new ServiceBinding(srv, resolveInterceptors(annotation, globalInterceptors), annotation);
+                })
+                .collect(Collectors.toList());
+        GrpcServerCompressionInterceptor compression = applicationContext.getBeanProvider(GrpcServerCompressionInterceptor.class).getIfAvailable();
+        long resolutionNanos = System.nanoTime() - phaseStart;
+
+        // binding only touches the service instances, so it runs in parallel
+        phaseStart = System.nanoTime();
+        List<ServerServiceDefinition> serviceDefinitions = (bindings.size() > 1 ? bindings.parallelStream() : bindings.stream())
+                .map(binding -> ServerInterceptors.intercept(
+                        applyCompression(applyZeroCopy(binding.service.bindService(), binding.annotation), compression),
+                        binding.interceptors))
+                .collect(Collectors.toList());
+        long bindingNanos = System.nanoTime() - phaseStart;
 
-                    logger.info("'{}' service has been registered.", srv.getClass().getName());
+        // Adding health service
+        serverBuilder.addService(healthStatusManager.getHealthService());
+        if (metrics != null) {
+            metrics.registerService(healthStatusManager.getHealthService().bindService());
+        }
+        for (int i = 0; i < serviceDefinitions.size(); i++) {
+            ServerServiceDefinition serviceDefinition = serviceDefinitions.get(i);
+            serverBuilder.addService(serviceDefinition);
+            if (metrics != null) {
+                metrics.registerService(serviceDefinition);
+            }
+            String serviceName = serviceDefinition.getServiceDescriptor().getName();
+            healthStatusManager.setStatus(serviceName, HealthCheckResponse.ServingStatus.SERVING);
 
-                });
+            logger.info("'{}' service has been registered.", bindings.get(i).service.getClass().getName());
+        }
 
+        phaseStart = System.nanoTime();
         server = serverBuilder.build().start();
+        long startNanos = System.nanoTime() - phaseStart;
         applicationContext.publishEvent(new GrpcServerInitializedEvent(applicationContext, server));
 
         logger.info("gRPC Server started, listening on port {}.", server.getPort());
+        logger.info("gRPC Server startup took {} ms for discovery, {} ms for resolving {} services, {} ms for binding and {} ms for starting.",
+                TimeUnit.NANOSECONDS.toMillis(discoveryNanos), TimeUnit.NANOSECONDS.toMillis(resolutionNanos), bindings.size(),
+                TimeUnit.NANOSECONDS.toMillis(bindingNanos), TimeUnit.NANOSECONDS.toMillis(startNanos));
         startDaemonAwaitThread();
 
     }
@@ -94,7 +158,7 @@ public class GrpcServer implements CommandLineRunner, DisposableBean {
         return instance;
     }
 
-    private ServerServiceDefinition bindInterceptors(ServerServiceDefinition serviceDefinition, GrpcService grpcService, Collection<ServerInterceptor> globalInterceptors) {
+    private List<ServerInterceptor> resolveInterceptors(GrpcService grpcService, Collection<ServerInterceptor> globalInterceptors) {
         Stream<? extends ServerInterceptor> privateInterceptors = Stream.of(grpcService.interceptors())
                 .map(interceptorClass -> {
                     try {
@@ -106,13 +170,36 @@ public class GrpcServer implements CommandLineRunner, DisposableBean {
                     }
                 });
 
-        List<ServerInterceptor> interceptors = Stream.concat(
+        return Stream.concat(
                 grpcService.applyGlobalInterceptors() ? globalInterceptors.stream() : Stream.empty(),
                 privateInterceptors)
                 .distinct()
                 .sorted(serverInterceptorOrderComparator())
                 .collect(Collectors.toList());
-        return ServerInterceptors.intercept(serviceDefinition, interceptors);
+    }
+
+    /**
+     * Switches the methods selected by {@link GrpcService#zeroCopy()} and {@link GrpcService#zeroCopyMethods()} to
+     * the {@link ZeroCopyMarshaller}.
+     */
+    private ServerServiceDefinition applyZeroCopy(ServerServiceDefinition definition, GrpcService grpcService) {
+        if (grpcService.zeroCopy()) {
+            return ZeroCopyMarshaller.apply(definition, name -> true);
+        }
+        if (grpcService.zeroCopyMethods().length == 0) {
+            return definition;
+        }
+        Set<String> methods = Stream.of(grpcService.zeroCopyMethods())
+                .map(method -> MethodDescriptor.generateFullMethodName(definition.getServiceDescriptor().getName(), method))
+                .collect(Collectors.toSet());
+        return ZeroCopyMarshaller.apply(definition, methods::contains);
+    }
+
+    /**
+     * Applies {@code grpc.server.compression} to every service, also to the ones not applying the global interceptors.
+     */
+    private static ServerServiceDefinition applyCompression(ServerServiceDefinition definition, GrpcServerCompressionInterceptor compression) {
+        return compression == null ? definition : ServerInterceptors.intercept(definition, compression);
     }
 
     private Comparator<Object> serverInterceptorOrderComparator() {
@@ -142,32 +229,75 @@ public class GrpcServer implements CommandLineRunner, DisposableBean {
     }
 
     @Override
-    public void destroy() throws Exception {
-        Optional.ofNullable(server).ifPresent(s -> {
-            logger.info("Shutting down gRPC server ...");
-            s.getServices().forEach(def -> healthStatusManager.clearStatus(def.getServiceDescriptor().getName()));
-            s.shutdown();
-            logger.info("gRPC server stopped.");
+    public void start() {
+        // started by run(), once the application is ready
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return server != null && !server.isShutdown();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!isRunning()) {
+            return;
+        }
+        logger.info("Shutting down gRPC server ...");
+        applicationContext.getBeanProvider(NacosGrpcRegistry.class).ifAvailable(registry -> {
+            if (registry.isRunning()) {
+                registry.stop();
+            }
         });
+        healthStatusManager.enterTerminalState();
+        try {
+            grpcServerDrainer.drain(server);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("gRPC server stopped.");
+    }
 
+    @Override
+    public void destroy() throws Exception {
+        // fallback when the context is closed without stopping its lifecycle beans
+        stop();
     }
 
-    private <T> Stream<String> getBeanNamesByTypeWithAnnotation(Class<? extends Annotation> annotationType, Class<T> beanType) throws Exception {
+    private <T> Stream<String> getBeanNamesByTypeWithAnnotation(Class<? extends Annotation> annotationType, Class<T> beanType) {
+        // names only, unlike getBeansWithAnnotation this doesn't create every annotated bean
+        final Set<String> annotatedBeanNames = new HashSet<>(Arrays.asList(applicationContext.getBeanNamesForAnnotation(annotationType)));
 
         return Stream.of(applicationContext.getBeanNamesForType(beanType))
                 .filter(name -> {
-                    final BeanDefinition beanDefinition = applicationContext.getBeanFactory().getBeanDefinition(name);
-                    final Map<String, Object> beansWithAnnotation = applicationContext.getBeansWithAnnotation(annotationType);
-
-                    if (beansWithAnnotation.containsKey(name)) {
+                    if (annotatedBeanNames.contains(name)) {
                         return true;
-                    } else if (beanDefinition.getSource() instanceof AnnotatedTypeMetadata) {
+                    }
+                    final BeanDefinition beanDefinition = applicationContext.getBeanFactory().getBeanDefinition(name);
+                    if (beanDefinition.getSource() instanceof AnnotatedTypeMetadata) {
                         return AnnotatedTypeMetadata.class.cast(beanDefinition.getSource()).isAnnotated(annotationType.getName());
-
                     }
                     return false;
                 });
     }
 
+    private static final class ServiceBinding {
+
+        private final BindableService service;
+
+        private final List<ServerInterceptor> interceptors;
 
+        private final GrpcService annotation;
+
+        private ServiceBinding(BindableService service, List<ServerInterceptor> interceptors, GrpcService annotation) {
+            this.service = service;
+            this.interceptors = interceptors;
+            this.annotation = annotation;
+        }
+    }
 }
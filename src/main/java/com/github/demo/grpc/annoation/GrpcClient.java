@@ -9,4 +9,16 @@ import java.lang.annotation.*;
 public @interface GrpcClient {
     String service() default "";
     boolean broadcast() default false;
+
+    /**
+     * The deadline of calls that don't set an own one, e.g. {@code "2s"} or {@code "500ms"}. Empty means no deadline.
+     * A shorter deadline of the inbound call being served still wins.
+     */
+    String deadline() default "";
+
+    /**
+     * Deadlines of single methods, e.g. {@code "SayHello=500ms"}. Methods are named bare or as
+     * {@code package.Service/Method}.
+     */
+    String[] methodDeadlines() default {};
 }
@@ -12,4 +12,15 @@ import java.lang.annotation.*;
 public @interface GrpcService {
     Class<? extends ServerInterceptor>[] interceptors() default {};
     boolean applyGlobalInterceptors() default true;
+
+    /**
+     * Parses the requests of all methods without copying them out of the transport's buffers, see
+     * {@link com.github.demo.grpc.server.ZeroCopyMarshaller} for how long the parsed bytes stay valid.
+     */
+    boolean zeroCopy() default false;
+
+    /**
+     * Like {@link #zeroCopy()}, but only for the methods with the given names, e.g. {@code "Upload"}.
+     */
+    String[] zeroCopyMethods() default {};
 }
@@ -0,0 +1,447 @@
+package com.github.demo.grpc.batching;
+
+import com.github.demo.grpc.metrics.BatchMetrics;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoMethodDescriptorSupplier;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects the calls of a unary method and sends them as one call of a batch method, then hands every caller its
+ * own response. A batch is sent when it holds {@code maxSize} calls or when its first call waited for
+ * {@code window}, whichever comes first.
+ * <p>
+ * The batch method is a unary method of the same service whose request holds the batched requests in one repeated
+ * field and whose response holds the responses, in the same order, in one repeated field:
+ * <pre>
+ * rpc GetUser(GetUserRequest) returns (User);
+ * rpc GetUsers(GetUsersRequest) returns (GetUsersResponse);
+ *
+ * message GetUsersRequest { repeated GetUserRequest requests = 1; }
+ * message GetUsersResponse { repeated User users = 1; }
+ * </pre>
+ * Only calls with equal headers are batched together, a batch is sent with their headers and the latest deadline of
+ * its calls. Headers that differ per call, e.g. request ids, thus keep calls from being batched. Every call keeps its
+ * own deadline and cancellation, a call that ends while its batch is in flight just ignores its response. A failed
+ * batch fails all of its calls with the status of the batch.
+ *
+ * @param <ReqT>  The request type of the batched method.
+ * @param <RespT> The response type of the batched method.
+ */
+public class GrpcBatcher<ReqT, RespT> {
+
+    private final Channel channel;
+
+    private final MethodDescriptor<List<ReqT>, List<RespT>> batchMethod;
+
+    private final long windowNanos;
+
+    private final int maxSize;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final BatchMetrics metrics;
+
+    private final Object lock = new Object();
+
+    /**
+     * The batches being collected, by the headers of their calls.
+     */
+    private final Map<List<Object>, Batch> pending = new HashMap<>();
+
+    /**
+     * @param channel     The channel the batches are sent on.
+     * @param method      The batched unary method.
+     * @param batchMethod The unary method taking the batches.
+     * @param window      How long the first call of a batch waits for further ones.
+     * @param maxSize     The number of calls that are sent at once.
+     * @param scheduler   Runs the window and deadline timers.
+     * @param metrics     Records the batch sizes and the time calls waited for their batch.
+     * @throws IllegalArgumentException If the methods aren't generated protobuf methods or their messages don't
+     *                                  match.
+     */
+    public GrpcBatcher(Channel channel, MethodDescriptor<ReqT, RespT> method, MethodDescriptor<?, ?> batchMethod,
+                       Duration window, int maxSize, ScheduledExecutorService scheduler, BatchMetrics metrics) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The batch size of " + method.getFullMethodName() + " must be at least 1");
+        }
+        this.channel = requireNonNull(channel, "channel");
+        this.batchMethod = createBatchMethod(method, batchMethod);
+        this.windowNanos = window.toNanos();
+        this.maxSize = maxSize;
+        this.scheduler = requireNonNull(scheduler, "scheduler");
+        this.metrics = requireNonNull(metrics, "metrics");
+    }
+
+    /**
+     * @return A call that is sent with the next batch once it is half-closed.
+     */
+    public ClientCall<ReqT, RespT> newCall(CallOptions callOptions) {
+        return new BatchedCall(callOptions);
+    }
+
+    private void enqueue(BatchedCall call) {
+        List<Object> headersKey = getHeadersKey(call.headers);
+        List<BatchedCall> full = null;
+        synchronized (lock) {
+            Batch batch = pending.computeIfAbsent(headersKey, Batch::new);
+            batch.calls.add(call);
+            if (batch.calls.size() >= maxSize) {
+                full = take(batch);
+            } else if (batch.calls.size() == 1) {
+                batch.flushTimer = scheduler.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    private void flush(Batch scheduled) {
+        List<BatchedCall> batch;
+        synchronized (lock) {
+            // the batch may have been sent because it was full
+            if (pending.get(scheduled.headersKey) != scheduled) {
+                return;
+            }
+            batch = take(scheduled);
+        }
+        send(batch);
+    }
+
+    private List<BatchedCall> take(Batch batch) {
+        pending.remove(batch.headersKey);
+        if (batch.flushTimer != null) {
+            batch.flushTimer.cancel(false);
+        }
+        return batch.calls;
+    }
+
+    /**
+     * @return A key that is equal for equal headers, regardless of the order of their keys.
+     */
+    private static List<Object> getHeadersKey(Metadata headers) {
+        List<Object> key = new ArrayList<>();
+        for (String name : new TreeSet<>(headers.keys())) {
+            key.add(name);
+            if (name.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
+                for (byte[] value : headers.getAll(Metadata.Key.of(name, Metadata.BINARY_BYTE_MARSHALLER))) {
+                    key.add(ByteBuffer.wrap(value));
+                }
+            } else {
+                for (String value : headers.getAll(Metadata.Key.of(name, Metadata.ASCII_STRING_MARSHALLER))) {
+                    key.add(value);
+                }
+            }
+        }
+        return key;
+    }
+
+    private void send(List<BatchedCall> batch) {
+        long now = System.nanoTime();
+        List<BatchedCall> calls = new ArrayList<>(batch.size());
+        List<ReqT> requests = new ArrayList<>(batch.size());
+        Deadline deadline = null;
+        boolean unbounded = false;
+        for (BatchedCall call : batch) {
+            if (call.done.get()) {
+                continue;
+            }
+            calls.add(call);
+            requests.add(call.request);
+            metrics.recordQueueDelay(now - call.enqueuedNanos);
+            if (call.deadline == null) {
+                unbounded = true;
+            } else if (deadline == null || deadline.isBefore(call.deadline)) {
+                deadline = call.deadline;
+            }
+        }
+        if (calls.isEmpty()) {
+            return;
+        }
+        metrics.recordBatch(calls.size());
+        // the executor of a blocking call only runs while its caller waits, the batch uses the channel's one
+        CallOptions callOptions = calls.get(0).callOptions.withExecutor(null).withDeadline(unbounded ? null : deadline);
+        BatchListener listener = new BatchListener(calls);
+        // the batch must not end with the context of the call that happened to fill it
+        Context previous = Context.ROOT.attach();
+        try {
+            ClientCall<List<ReqT>, List<RespT>> call = channel.newCall(batchMethod, callOptions);
+            try {
+                call.start(listener, calls.get(0).headers);
+                call.sendMessage(requests);
+                call.halfClose();
+                call.request(1);
+            } catch (RuntimeException e) {
+                call.cancel("Failed to send a batch", e);
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            // the cancelled call may close the listener as well
+            listener.fail(Status.INTERNAL.withDescription("Failed to send a batch").withCause(e));
+        } finally {
+            Context.ROOT.detach(previous);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ReqT, RespT> MethodDescriptor<List<ReqT>, List<RespT>> createBatchMethod(
+            MethodDescriptor<ReqT, RespT> method, MethodDescriptor<?, ?> batchMethod) {
+        if (method.getType() != MethodDescriptor.MethodType.UNARY || batchMethod.getType() != MethodDescriptor.MethodType.UNARY) {
+            throw new IllegalArgumentException("Only unary methods can be batched, but " + method.getFullMethodName()
+                    + " is " + method.getType() + " and " + batchMethod.getFullMethodName() + " is " + batchMethod.getType());
+        }
+        Descriptors.MethodDescriptor protoMethod = getProtoMethod(method);
+        Descriptors.MethodDescriptor protoBatchMethod = getProtoMethod(batchMethod);
+        int requestField = getRepeatedField(protoBatchMethod.getInputType(), protoMethod.getInputType());
+        int responseField = getRepeatedField(protoBatchMethod.getOutputType(), protoMethod.getOutputType());
+        return MethodDescriptor.<List<ReqT>, List<RespT>>newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName(batchMethod.getFullMethodName())
+                .setRequestMarshaller((MethodDescriptor.Marshaller<List<ReqT>>) (Object) new RepeatedFieldMarshaller<>(
+                        requestField, getParser(method.getRequestMarshaller())))
+                .setResponseMarshaller((MethodDescriptor.Marshaller<List<RespT>>) (Object) new RepeatedFieldMarshaller<>(
+                        responseField, getParser(method.getResponseMarshaller())))
+                .setSchemaDescriptor(batchMethod.getSchemaDescriptor())
+                .setIdempotent(batchMethod.isIdempotent())
+                .setSafe(batchMethod.isSafe())
+                .build();
+    }
+
+    private static Descriptors.MethodDescriptor getProtoMethod(MethodDescriptor<?, ?> method) {
+        if (!(method.getSchemaDescriptor() instanceof ProtoMethodDescriptorSupplier)) {
+            throw new IllegalArgumentException("Batching needs the protobuf descriptor of " + method.getFullMethodName()
+                    + ", only methods generated by protoc-gen-grpc-java have one");
+        }
+        return ((ProtoMethodDescriptorSupplier) method.getSchemaDescriptor()).getMethodDescriptor();
+    }
+
+    /**
+     * @return The number of the only repeated field of the container holding elements of the given type.
+     */
+    private static int getRepeatedField(Descriptors.Descriptor container, Descriptors.Descriptor element) {
+        Descriptors.FieldDescriptor found = null;
+        for (Descriptors.FieldDescriptor field : container.getFields()) {
+            if (field.isRepeated() && field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE
+                    && field.getMessageType().getFullName().equals(element.getFullName())) {
+                if (found != null) {
+                    throw new IllegalArgumentException(container.getFullName() + " has more than one repeated "
+                            + element.getFullName() + " field");
+                }
+                found = field;
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException(container.getFullName() + " has no repeated " + element.getFullName() + " field");
+        }
+        return found.getNumber();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Parser<MessageLite> getParser(MethodDescriptor.Marshaller<?> marshaller) {
+        Object prototype = marshaller instanceof MethodDescriptor.PrototypeMarshaller ?
+                ((MethodDescriptor.PrototypeMarshaller<?>) marshaller).getMessagePrototype() : null;
+        if (!(prototype instanceof MessageLite)) {
+            throw new IllegalArgumentException("Batching needs protobuf marshallers, but was " + marshaller);
+        }
+        return (Parser<MessageLite>) ((MessageLite) prototype).getParserForType();
+    }
+
+    /**
+     * The calls collected for one batch.
+     */
+    private final class Batch {
+
+        private final List<Object> headersKey;
+
+        private final List<BatchedCall> calls = new ArrayList<>();
+
+        private ScheduledFuture<?> flushTimer;
+
+        Batch(List<Object> headersKey) {
+            this.headersKey = headersKey;
+        }
+    }
+
+    private final class BatchListener extends ClientCall.Listener<List<RespT>> {
+
+        private final List<BatchedCall> calls;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private List<RespT> responses;
+
+        BatchListener(List<BatchedCall> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public void onMessage(List<RespT> message) {
+            responses = message;
+        }
+
+        @Override
+        public void onClose(Status status, Metadata trailers) {
+            if (status.isOk() && (responses == null || responses.size() != calls.size())) {
+                status = Status.INTERNAL.withDescription(batchMethod.getFullMethodName() + " returned "
+                        + (responses == null ? 0 : responses.size()) + " responses for " + calls.size() + " requests");
+            }
+            if (!status.isOk()) {
+                fail(status);
+                return;
+            }
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            for (int i = 0; i < calls.size(); i++) {
+                calls.get(i).complete(responses.get(i), status);
+            }
+        }
+
+        /**
+         * Fails all calls of the batch, unless the batch already ended.
+         */
+        void fail(Status status) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            metrics.recordFailedBatch();
+            for (BatchedCall call : calls) {
+                call.complete(null, status);
+            }
+        }
+    }
+
+    private final class BatchedCall extends ClientCall<ReqT, RespT> implements Context.CancellationListener {
+
+        private final CallOptions callOptions;
+
+        private final Context context;
+
+        private final Deadline deadline;
+
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Listener<RespT> listener;
+
+        private Metadata headers;
+
+        private ReqT request;
+
+        private long enqueuedNanos;
+
+        private ScheduledFuture<?> deadlineTimer;
+
+        BatchedCall(CallOptions callOptions) {
+            this.callOptions = callOptions;
+            this.context = Context.current();
+            Deadline callDeadline = callOptions.getDeadline();
+            Deadline contextDeadline = context.getDeadline();
+            this.deadline = callDeadline == null ? contextDeadline :
+                    contextDeadline == null ? callDeadline : callDeadline.minimum(contextDeadline);
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+            if (context.isCancelled()) {
+                complete(null, Contexts.statusFromCancelled(context));
+                return;
+            }
+            if (deadline != null) {
+                if (deadline.isExpired()) {
+                    complete(null, Status.DEADLINE_EXCEEDED.withDescription("deadline exceeded before the call was batched"));
+                    return;
+                }
+                deadlineTimer = deadline.runOnExpiration(() -> complete(null,
+                        Status.DEADLINE_EXCEEDED.withDescription("deadline exceeded while waiting for the batch")), scheduler);
+            }
+            context.addListener(this, MoreExecutors.directExecutor());
+        }
+
+        @Override
+        public void request(int numMessages) {
+            // the response is delivered as soon as it arrives
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            complete(null, Status.CANCELLED.withDescription(message).withCause(cause));
+        }
+
+        @Override
+        public void halfClose() {
+            if (done.get()) {
+                return;
+            }
+            if (request == null) {
+                complete(null, Status.INTERNAL.withDescription("No request was sent"));
+                return;
+            }
+            enqueuedNanos = System.nanoTime();
+            enqueue(this);
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            if (request != null) {
+                throw new IllegalStateException("Batched calls take a single request");
+            }
+            request = message;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void cancelled(Context context) {
+            complete(null, Contexts.statusFromCancelled(context));
+        }
+
+        void complete(RespT response, Status status) {
+            if (!done.compareAndSet(false, true) || listener == null) {
+                return;
+            }
+            if (deadlineTimer != null) {
+                deadlineTimer.cancel(false);
+            }
+            context.removeListener(this);
+            Executor executor = callOptions.getExecutor() != null ? callOptions.getExecutor() : MoreExecutors.directExecutor();
+            executor.execute(() -> {
+                if (status.isOk()) {
+                    listener.onHeaders(new Metadata());
+                    listener.onMessage(response);
+                }
+                listener.onClose(status, new Metadata());
+            });
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.demo.grpc.batching;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+
+import java.util.Map;
+
+/**
+ * Hands the calls of batched methods to their {@link GrpcBatcher}, all other calls pass through.
+ */
+public class GrpcClientBatchingInterceptor implements ClientInterceptor {
+
+    private final Map<String, GrpcBatcher<?, ?>> batchers;
+
+    /**
+     * @param batchers The batchers by the full name of the method they batch.
+     */
+    public GrpcClientBatchingInterceptor(Map<String, GrpcBatcher<?, ?>> batchers) {
+        this.batchers = batchers;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        GrpcBatcher<ReqT, RespT> batcher = (GrpcBatcher<ReqT, RespT>) batchers.get(method.getFullMethodName());
+        if (batcher == null) {
+            return next.newCall(method, callOptions);
+        }
+        return batcher.newCall(callOptions);
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.demo.grpc.batching;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import com.google.protobuf.WireFormat;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Marshals a list of messages as a message holding them in one repeated field, without knowing the generated class
+ * of that message. Other fields are skipped when parsing and never written.
+ *
+ * @param <T> The type of the repeated field.
+ */
+final class RepeatedFieldMarshaller<T extends MessageLite> implements MethodDescriptor.Marshaller<List<T>> {
+
+    private final int fieldNumber;
+
+    private final Parser<T> parser;
+
+    RepeatedFieldMarshaller(int fieldNumber, Parser<T> parser) {
+        this.fieldNumber = fieldNumber;
+        this.parser = parser;
+    }
+
+    @Override
+    public InputStream stream(List<T> values) {
+        int size = 0;
+        for (T value : values) {
+            size += CodedOutputStream.computeMessageSize(fieldNumber, value);
+        }
+        byte[] bytes = new byte[size];
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        try {
+            for (T value : values) {
+                out.writeMessage(fieldNumber, value);
+            }
+            out.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize a batch", e);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public List<T> parse(InputStream stream) {
+        List<T> values = new ArrayList<>();
+        CodedInputStream in = CodedInputStream.newInstance(stream);
+        // the channel already limits the message size
+        in.setSizeLimit(Integer.MAX_VALUE);
+        try {
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == fieldNumber
+                        && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    values.add(in.readMessage(parser, ExtensionRegistryLite.getEmptyRegistry()));
+                } else if (!in.skipField(tag)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw Status.INTERNAL.withDescription("Invalid batch response").withCause(e).asRuntimeException();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.demo.grpc.broadcast;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The aggregated outcome of a broadcast, keyed by the address of each instance.
+ *
+ * @param <R> The response type of the broadcast call.
+ */
+public class BroadcastResult<R> {
+
+    private final Map<SocketAddress, R> responses;
+
+    private final Map<SocketAddress, Throwable> failures;
+
+    BroadcastResult(Map<SocketAddress, R> responses, Map<SocketAddress, Throwable> failures) {
+        this.responses = Collections.unmodifiableMap(responses);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return The responses of the instances that answered successfully.
+     */
+    public Map<SocketAddress, R> getResponses() {
+        return responses;
+    }
+
+    /**
+     * @return The errors of the instances that failed or didn't answer within the deadline.
+     */
+    public Map<SocketAddress, Throwable> getFailures() {
+        return failures;
+    }
+
+    public boolean isAllSucceeded() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastResult [responses=" + responses.size() + ", failures=" + failures.keySet() + "]";
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.demo.grpc.broadcast;
+
+import com.github.demo.grpc.loadbalancer.AbstractNacosLoadBalancer;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.grpc.Deadline;
+import io.grpc.stub.AbstractFutureStub;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sends a call to every instance of a service concurrently. Injected for
+ * {@code @GrpcClient(service = "...", broadcast = true) GrpcBroadcaster<XxxFutureStub>}. All calls share one channel
+ * that keeps a pooled subchannel per instance, each call is pinned to its instance through
+ * {@link AbstractNacosLoadBalancer#TARGET_ADDRESS}.
+ * <pre>
+ * broadcaster.broadcast(stub -> stub.invalidate(request))
+ * </pre>
+ * Instances are immutable, {@link #withDeadlineAfter(long, TimeUnit)} and {@link #withFailureMode(FailureMode)}
+ * return configured copies.
+ *
+ * @param <S> The future stub type of the service.
+ */
+public class GrpcBroadcaster<S extends AbstractFutureStub<S>> {
+
+    public enum FailureMode {
+        /**
+         * Fail the broadcast with the first error and cancel the calls still running.
+         */
+        FAIL_FAST,
+        /**
+         * Wait for every call and report the errors in the {@link BroadcastResult}.
+         */
+        COLLECT
+    }
+
+    private final S stub;
+
+    private final Supplier<List<SocketAddress>> targets;
+
+    private final long deadlineNanos;
+
+    private final FailureMode failureMode;
+
+    public GrpcBroadcaster(S stub, Supplier<List<SocketAddress>> targets, long deadline, TimeUnit unit,
+                           FailureMode failureMode) {
+        this.stub = requireNonNull(stub, "stub");
+        this.targets = requireNonNull(targets, "targets");
+        this.deadlineNanos = unit.toNanos(deadline);
+        this.failureMode = requireNonNull(failureMode, "failureMode");
+    }
+
+    public GrpcBroadcaster<S> withDeadlineAfter(long deadline, TimeUnit unit) {
+        return new GrpcBroadcaster<>(stub, targets, deadline, unit, failureMode);
+    }
+
+    public GrpcBroadcaster<S> withFailureMode(FailureMode failureMode) {
+        return new GrpcBroadcaster<>(stub, targets, deadlineNanos, TimeUnit.NANOSECONDS, failureMode);
+    }
+
+    /**
+     * @return The addresses of the instances a broadcast is currently sent to.
+     */
+    public List<SocketAddress> getTargets() {
+        return new ArrayList<>(new LinkedHashSet<>(targets.get()));
+    }
+
+    /**
+     * Invokes the given call once per instance, all calls share the deadline of this broadcaster.
+     *
+     * @param call The call to make, e.g. {@code stub -> stub.invalidate(request)}.
+     * @param <R>  The response type.
+     * @return The future of the aggregated result, see {@link FailureMode} for its failure semantics.
+     */
+    public <R> ListenableFuture<BroadcastResult<R>> broadcast(Function<S, ListenableFuture<R>> call) {
+        final List<SocketAddress> addresses = getTargets();
+        final SettableFuture<BroadcastResult<R>> result = SettableFuture.create();
+        if (addresses.isEmpty()) {
+            result.set(new BroadcastResult<>(new HashMap<>(), new HashMap<>()));
+            return result;
+        }
+
+        final Deadline deadline = Deadline.after(deadlineNanos, TimeUnit.NANOSECONDS);
+        final List<ListenableFuture<R>> calls = new ArrayList<>(addresses.size());
+        for (SocketAddress address : addresses) {
+            ListenableFuture<R> future;
+            try {
+                future = call.apply(stub.withOption(AbstractNacosLoadBalancer.TARGET_ADDRESS, address).withDeadline(deadline));
+            } catch (RuntimeException e) {
+                future = Futures.immediateFailedFuture(e);
+            }
+            calls.add(future);
+        }
+        result.addListener(() -> {
+            if (result.isCancelled()) {
+                calls.forEach(future -> future.cancel(true));
+            }
+        }, MoreExecutors.directExecutor());
+
+        final Map<SocketAddress, R> responses = new ConcurrentHashMap<>();
+        final Map<SocketAddress, Throwable> failures = new ConcurrentHashMap<>();
+        final AtomicInteger remaining = new AtomicInteger(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            final SocketAddress address = addresses.get(i);
+            Futures.addCallback(calls.get(i), new FutureCallback<R>() {
+                @Override
+                public void onSuccess(R response) {
+                    responses.put(address, response);
+                    completed();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failures.put(address, t);
+                    if (failureMode == FailureMode.FAIL_FAST && result.setException(t)) {
+                        calls.forEach(future -> future.cancel(true));
+                    }
+                    completed();
+                }
+
+                private void completed() {
+                    if (remaining.decrementAndGet() == 0) {
+                        result.set(new BroadcastResult<>(new HashMap<>(responses), new HashMap<>(failures)));
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "GrpcBroadcaster [stub=" + stub.getClass().getName() + ", failureMode=" + failureMode + "]";
+    }
+}
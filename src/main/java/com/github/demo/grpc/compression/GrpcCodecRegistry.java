@@ -0,0 +1,60 @@
+package com.github.demo.grpc.compression;
+
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.ServerBuilder;
+
+import java.util.Collection;
+
+/**
+ * The message encodings the server and the {@code @GrpcClient} channels can use: gzip, {@value DeflateCodec#ENCODING}
+ * and every {@link Codec} bean, e.g. a snappy or zstd codec. All of them are advertised to the peer as accepted.
+ */
+public class GrpcCodecRegistry {
+
+    private final CompressorRegistry compressorRegistry = CompressorRegistry.newEmptyInstance();
+
+    private DecompressorRegistry decompressorRegistry = DecompressorRegistry.emptyInstance()
+            .with(Codec.Identity.NONE, false);
+
+    public GrpcCodecRegistry(Collection<? extends Codec> codecs) {
+        compressorRegistry.register(Codec.Identity.NONE);
+        register(new Codec.Gzip());
+        register(new DeflateCodec());
+        codecs.forEach(this::register);
+    }
+
+    private void register(Codec codec) {
+        compressorRegistry.register(codec);
+        decompressorRegistry = decompressorRegistry.with(codec, true);
+    }
+
+    /**
+     * Creates the compression setting of a method.
+     *
+     * @param encoding        The configured message encoding, may be empty.
+     * @param minMessageBytes Messages below this size are sent uncompressed.
+     * @return The setting or null if no encoding is configured.
+     * @throws IllegalArgumentException If no codec is registered for the encoding.
+     */
+    public MessageCompression getMessageCompression(String encoding, long minMessageBytes) {
+        if (encoding == null || encoding.trim().isEmpty()) {
+            return null;
+        }
+        if (compressorRegistry.lookupCompressor(encoding) == null) {
+            throw new IllegalArgumentException("Unknown message encoding '" + encoding + "', register a "
+                    + Codec.class.getName() + " bean for it");
+        }
+        return new MessageCompression(encoding, minMessageBytes);
+    }
+
+    public void configure(ServerBuilder<?> serverBuilder) {
+        serverBuilder.compressorRegistry(compressorRegistry).decompressorRegistry(decompressorRegistry);
+    }
+
+    public void configure(ManagedChannelBuilder<?> channelBuilder) {
+        channelBuilder.compressorRegistry(compressorRegistry).decompressorRegistry(decompressorRegistry);
+    }
+}
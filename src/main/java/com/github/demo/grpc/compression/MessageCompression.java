@@ -0,0 +1,60 @@
+package com.github.demo.grpc.compression;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.Codec;
+import io.grpc.MethodDescriptor;
+
+import java.util.Map;
+
+/**
+ * How the messages of a method are compressed: the message encoding negotiated for the call and the size below which
+ * single messages are sent uncompressed anyway, because compressing them costs more CPU than it saves bytes.
+ */
+public final class MessageCompression {
+
+    private final String encoding;
+
+    private final long minMessageBytes;
+
+    public MessageCompression(String encoding, long minMessageBytes) {
+        this.encoding = encoding;
+        this.minMessageBytes = minMessageBytes;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public long getMinMessageBytes() {
+        return minMessageBytes;
+    }
+
+    /**
+     * Whether the given message is large enough to be compressed. Protobuf messages memoize their size, so this costs
+     * nothing extra when they are serialized afterwards. Other messages are always compressed.
+     */
+    public boolean shouldCompress(Object message) {
+        return !(message instanceof MessageLite) || ((MessageLite) message).getSerializedSize() >= minMessageBytes;
+    }
+
+    /**
+     * Finds the compression of a method, entries of a method take precedence over entries of its service.
+     *
+     * @param compressions  The settings keyed by {@code package.Service} or {@code package.Service/Method}.
+     * @param method        The full method name.
+     * @param defaultValue  The setting used if neither the method nor its service has an entry.
+     * @return The compression to use or null if the messages are sent uncompressed.
+     */
+    public static MessageCompression lookup(Map<String, MessageCompression> compressions, String method,
+                                            MessageCompression defaultValue) {
+        MessageCompression compression = compressions.get(method);
+        if (compression == null) {
+            compression = compressions.get(MethodDescriptor.extractFullServiceName(method));
+        }
+        if (compression == null) {
+            compression = defaultValue;
+        }
+        return compression == null || Codec.Identity.NONE.getMessageEncoding().equals(compression.encoding) ?
+                null : compression;
+    }
+}
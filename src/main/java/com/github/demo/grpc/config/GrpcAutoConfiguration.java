@@ -1,20 +1,44 @@
 package com.github.demo.grpc.config;
 
 import com.github.demo.grpc.GrpcServer;
+import com.github.demo.grpc.annoation.GrpcGlobalInterceptor;
 import com.github.demo.grpc.annoation.GrpcService;
+import com.github.demo.grpc.compression.GrpcCodecRegistry;
+import com.github.demo.grpc.context.GrpcChannelRegistry;
+import com.github.demo.grpc.context.GrpcChannelWarmer;
 import com.github.demo.grpc.context.GrpcClientBeanPostProcessor;
-import io.grpc.services.HealthStatusManager;
+import com.github.demo.grpc.metrics.GrpcBatchMeterBinder;
+import com.github.demo.grpc.metrics.GrpcBatchMetrics;
+import com.github.demo.grpc.metrics.GrpcClientMetrics;
+import com.github.demo.grpc.metrics.GrpcConcurrencyLimitMeterBinder;
+import com.github.demo.grpc.metrics.GrpcMetricsMeterBinder;
+import com.github.demo.grpc.metrics.GrpcServerDrainerMeterBinder;
+import com.github.demo.grpc.metrics.GrpcServerExecutorMeterBinder;
+import com.github.demo.grpc.metrics.GrpcServerMetrics;
+import com.github.demo.grpc.server.GrpcConcurrencyLimitInterceptor;
+import com.github.demo.grpc.server.GrpcNettyServerConfigurer;
+import com.github.demo.grpc.server.GrpcServerCompressionInterceptor;
+import com.github.demo.grpc.server.GrpcServerDeadlineInterceptor;
+import com.github.demo.grpc.server.GrpcServerDrainer;
+import com.github.demo.grpc.server.GrpcServerExecutor;
+import io.grpc.Codec;
+import io.grpc.protobuf.services.HealthStatusManager;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureOrder;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.stream.Collectors;
 
 
 @AutoConfigureOrder
 @ConditionalOnBean(annotation = GrpcService.class)
-@EnableConfigurationProperties({GrpcServerProperties.class})
+@EnableConfigurationProperties({GrpcServerProperties.class, GrpcChannelsProperties.class})
 public class GrpcAutoConfiguration {
 
     @Autowired
@@ -26,15 +50,138 @@ public class GrpcAutoConfiguration {
         return new GrpcServer();
     }
 
+    @Bean
+    @ConditionalOnProperty(value = "grpc.enabled", havingValue = "true", matchIfMissing = true)
+    public GrpcServerExecutor grpcServerExecutor() {
+        return new GrpcServerExecutor(grpcServerProperties.getServer().getExecutor());
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "grpc.enabled", havingValue = "true", matchIfMissing = true)
+    public GrpcNettyServerConfigurer grpcNettyServerConfigurer() {
+        return new GrpcNettyServerConfigurer(grpcServerProperties.getServer().getNetty());
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "grpc.enabled", havingValue = "true", matchIfMissing = true)
+    public GrpcServerDrainer grpcServerDrainer() {
+        return new GrpcServerDrainer(grpcServerProperties.getServer().getShutdown());
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = {"grpc.enabled", "grpc.server.metrics.enabled"}, havingValue = "true", matchIfMissing = true)
+    public GrpcServerMetrics grpcServerMetrics() {
+        return new GrpcServerMetrics();
+    }
+
+    /**
+     * The limiter applied to every service.
+     */
+    @Bean
+    @GrpcGlobalInterceptor
+    @ConditionalOnProperty(value = "grpc.server.concurrency-limit.enabled", havingValue = "true")
+    public GrpcConcurrencyLimitInterceptor grpcConcurrencyLimitInterceptor() {
+        return new GrpcConcurrencyLimitInterceptor(grpcServerProperties.getServer().getConcurrencyLimit());
+    }
+
+    /**
+     * The limiter applied to the services listing it in {@link GrpcService#interceptors()}.
+     */
+    @Bean
+    @ConditionalOnProperty(value = "grpc.server.concurrency-limit.enabled", havingValue = "false", matchIfMissing = true)
+    public GrpcConcurrencyLimitInterceptor grpcServiceConcurrencyLimitInterceptor() {
+        return new GrpcConcurrencyLimitInterceptor(grpcServerProperties.getServer().getConcurrencyLimit());
+    }
+
+    @Bean
+    @GrpcGlobalInterceptor
+    @ConditionalOnProperty("grpc.server.max-deadline")
+    public GrpcServerDeadlineInterceptor grpcServerDeadlineInterceptor() {
+        return new GrpcServerDeadlineInterceptor(grpcServerProperties.getServer().getMaxDeadline());
+    }
+
+    /**
+     * The codecs of the server and the client channels: gzip, deflate and every {@link Codec} bean.
+     */
+    @Bean
+    public GrpcCodecRegistry grpcCodecRegistry(ObjectProvider<Codec> codecs) {
+        return new GrpcCodecRegistry(codecs.orderedStream().collect(Collectors.toList()));
+    }
+
+    /**
+     * The response compression, applied by the server to every service whether it applies the global interceptors or not.
+     */
+    @Bean
+    @ConditionalOnProperty(value = "grpc.enabled", havingValue = "true", matchIfMissing = true)
+    public GrpcServerCompressionInterceptor grpcServerCompressionInterceptor(GrpcCodecRegistry grpcCodecRegistry) {
+        return new GrpcServerCompressionInterceptor(grpcServerProperties.getServer().getCompression(), grpcCodecRegistry);
+    }
+
+    @Bean
+    public GrpcClientMetrics grpcClientMetrics() {
+        return new GrpcClientMetrics();
+    }
+
+    @Bean
+    public GrpcBatchMetrics grpcBatchMetrics() {
+        return new GrpcBatchMetrics();
+    }
+
     @Bean
     static GrpcClientBeanPostProcessor grpcClientBeanPostProcessor() {
         return new GrpcClientBeanPostProcessor();
     }
 
+    @Bean
+    public GrpcChannelRegistry grpcChannelRegistry() {
+        return new GrpcChannelRegistry();
+    }
+
+    @Bean
+    public GrpcChannelWarmer grpcChannelWarmer(GrpcChannelRegistry grpcChannelRegistry, GrpcChannelsProperties grpcChannelsProperties) {
+        return new GrpcChannelWarmer(grpcChannelRegistry, grpcChannelsProperties);
+    }
+
     @Bean
     public HealthStatusManager healthStatusManager() {
         return new HealthStatusManager();
     }
 
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    static class GrpcMetricsConfiguration {
 
+        @Bean
+        @ConditionalOnProperty(value = {"grpc.enabled", "grpc.server.metrics.enabled"}, havingValue = "true", matchIfMissing = true)
+        public GrpcMetricsMeterBinder grpcServerMeterBinder(GrpcServerMetrics grpcServerMetrics) {
+            return new GrpcMetricsMeterBinder("grpc.server", grpcServerMetrics);
+        }
+
+        @Bean
+        public GrpcMetricsMeterBinder grpcClientMeterBinder(GrpcClientMetrics grpcClientMetrics) {
+            return new GrpcMetricsMeterBinder("grpc.client", grpcClientMetrics);
+        }
+
+        @Bean
+        public GrpcBatchMeterBinder grpcBatchMeterBinder(GrpcBatchMetrics grpcBatchMetrics) {
+            return new GrpcBatchMeterBinder(grpcBatchMetrics);
+        }
+
+        @Bean
+        @ConditionalOnProperty(value = "grpc.enabled", havingValue = "true", matchIfMissing = true)
+        public GrpcServerExecutorMeterBinder grpcServerExecutorMeterBinder(GrpcServerExecutor grpcServerExecutor) {
+            return new GrpcServerExecutorMeterBinder(grpcServerExecutor);
+        }
+
+        @Bean
+        @ConditionalOnProperty(value = "grpc.enabled", havingValue = "true", matchIfMissing = true)
+        public GrpcServerDrainerMeterBinder grpcServerDrainerMeterBinder(GrpcServerDrainer grpcServerDrainer) {
+            return new GrpcServerDrainerMeterBinder(grpcServerDrainer);
+        }
+
+        @Bean
+        public GrpcConcurrencyLimitMeterBinder grpcConcurrencyLimitMeterBinder(GrpcConcurrencyLimitInterceptor interceptor) {
+            return new GrpcConcurrencyLimitMeterBinder(interceptor);
+        }
+    }
 }
@@ -0,0 +1,819 @@
+package com.github.demo.grpc.config;
+
+import com.github.demo.grpc.broadcast.GrpcBroadcaster;
+import io.grpc.Status;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of the channel to a single service.
+ */
+public class GrpcChannelProperties {
+
+    /**
+     * The load balancing policy, e.g. round_robin, pick_first, nacos_weighted, nacos_locality,
+     * nacos_least_latency or nacos_ring_hash.
+     */
+    private String loadBalancingPolicy = "round_robin";
+
+    /**
+     * The number of HTTP/2 connections opened to every instance. Raise it when a single connection is capped by the
+     * server's MAX_CONCURRENT_STREAMS.
+     */
+    private int connections = 1;
+
+    /**
+     * Settings of the nacos_locality load balancing policy.
+     */
+    private Locality locality = new Locality();
+
+    /**
+     * Settings of the nacos_ring_hash load balancing policy.
+     */
+    private RingHash ringHash = new RingHash();
+
+    /**
+     * Settings of {@code @GrpcClient(broadcast = true)} injection points.
+     */
+    private Broadcast broadcast = new Broadcast();
+
+    /**
+     * Settings of the Netty transport.
+     */
+    private Netty netty = new Netty();
+
+    /**
+     * Whether latency, errors and calls in flight are recorded per method and instance.
+     */
+    private boolean metrics = true;
+
+    /**
+     * Settings of the outlier detection of the nacos_* load balancing policies.
+     */
+    private OutlierDetection outlierDetection = new OutlierDetection();
+
+    /**
+     * Timeouts, retries and hedging, keyed by {@code package.Service} for all methods of a service or
+     * {@code package.Service/Method} for a single method.
+     */
+    private Map<String, MethodConfig> methods = new LinkedHashMap<>();
+
+    /**
+     * Stops retries and hedging while too many calls to the service fail.
+     */
+    private RetryThrottling retryThrottling = new RetryThrottling();
+
+    /**
+     * Ramps up the calls to newly started instances, for the nacos_weighted, nacos_locality and nacos_least_latency
+     * policies.
+     */
+    private SlowStart slowStart = new SlowStart();
+
+    /**
+     * Connects the channel while the application starts instead of on the first call.
+     */
+    private WarmUp warmUp = new WarmUp();
+
+    /**
+     * Compression of the requests of all methods, {@code methods[...].compression} overrides it.
+     */
+    private Compression compression = new Compression();
+
+    public String getLoadBalancingPolicy() {
+        return loadBalancingPolicy;
+    }
+
+    public void setLoadBalancingPolicy(String loadBalancingPolicy) {
+        this.loadBalancingPolicy = loadBalancingPolicy;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    public Locality getLocality() {
+        return locality;
+    }
+
+    public void setLocality(Locality locality) {
+        this.locality = locality;
+    }
+
+    public RingHash getRingHash() {
+        return ringHash;
+    }
+
+    public void setRingHash(RingHash ringHash) {
+        this.ringHash = ringHash;
+    }
+
+    public Broadcast getBroadcast() {
+        return broadcast;
+    }
+
+    public void setBroadcast(Broadcast broadcast) {
+        this.broadcast = broadcast;
+    }
+
+    public Netty getNetty() {
+        return netty;
+    }
+
+    public void setNetty(Netty netty) {
+        this.netty = netty;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public OutlierDetection getOutlierDetection() {
+        return outlierDetection;
+    }
+
+    public void setOutlierDetection(OutlierDetection outlierDetection) {
+        this.outlierDetection = outlierDetection;
+    }
+
+    public Map<String, MethodConfig> getMethods() {
+        return methods;
+    }
+
+    public void setMethods(Map<String, MethodConfig> methods) {
+        this.methods = methods;
+    }
+
+    public RetryThrottling getRetryThrottling() {
+        return retryThrottling;
+    }
+
+    public void setRetryThrottling(RetryThrottling retryThrottling) {
+        this.retryThrottling = retryThrottling;
+    }
+
+    public SlowStart getSlowStart() {
+        return slowStart;
+    }
+
+    public void setSlowStart(SlowStart slowStart) {
+        this.slowStart = slowStart;
+    }
+
+    public WarmUp getWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public static class Locality {
+
+        /**
+         * The cluster whose instances are preferred, defaults to the nacos cluster of this application.
+         */
+        private String cluster;
+
+        /**
+         * Calls spill over to other clusters once less than this share of the local instances is ready.
+         */
+        private double minReadyFraction = 0.5;
+
+        public String getCluster() {
+            return cluster;
+        }
+
+        public void setCluster(String cluster) {
+            this.cluster = cluster;
+        }
+
+        public double getMinReadyFraction() {
+            return minReadyFraction;
+        }
+
+        public void setMinReadyFraction(double minReadyFraction) {
+            this.minReadyFraction = minReadyFraction;
+        }
+    }
+
+    public static class RingHash {
+
+        /**
+         * The metadata header carrying the hash key of calls that don't set it as call option.
+         */
+        private String header = "x-hash-key";
+
+        /**
+         * The number of points every instance occupies on the hash ring.
+         */
+        private int virtualNodes = 100;
+
+        public String getHeader() {
+            return header;
+        }
+
+        public void setHeader(String header) {
+            this.header = header;
+        }
+
+        public int getVirtualNodes() {
+            return virtualNodes;
+        }
+
+        public void setVirtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+        }
+    }
+
+    public static class Broadcast {
+
+        /**
+         * The deadline shared by all calls of a broadcast.
+         */
+        private Duration deadline = Duration.ofSeconds(5);
+
+        /**
+         * Whether a broadcast fails with the first error or collects the errors of all instances.
+         */
+        private GrpcBroadcaster.FailureMode failureMode = GrpcBroadcaster.FailureMode.COLLECT;
+
+        public Duration getDeadline() {
+            return deadline;
+        }
+
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+
+        public GrpcBroadcaster.FailureMode getFailureMode() {
+            return failureMode;
+        }
+
+        public void setFailureMode(GrpcBroadcaster.FailureMode failureMode) {
+            this.failureMode = failureMode;
+        }
+    }
+
+    public static class MethodConfig {
+
+        /**
+         * The deadline of calls that don't set an own one.
+         */
+        private Duration timeout;
+
+        /**
+         * Retries failed calls, can't be combined with hedging.
+         */
+        private Retry retry = new Retry();
+
+        /**
+         * Sends further copies of a call when it didn't answer in time, only for idempotent methods.
+         */
+        private Hedging hedging = new Hedging();
+
+        /**
+         * Compression of the requests, overrides the one of the channel.
+         */
+        private Compression compression = new Compression();
+
+        /**
+         * Collects calls of this unary method and sends them as one call of a batch method.
+         */
+        private Batching batching = new Batching();
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public Retry getRetry() {
+            return retry;
+        }
+
+        public void setRetry(Retry retry) {
+            this.retry = retry;
+        }
+
+        public Hedging getHedging() {
+            return hedging;
+        }
+
+        public void setHedging(Hedging hedging) {
+            this.hedging = hedging;
+        }
+
+        public Compression getCompression() {
+            return compression;
+        }
+
+        public void setCompression(Compression compression) {
+            this.compression = compression;
+        }
+
+        public Batching getBatching() {
+            return batching;
+        }
+
+        public void setBatching(Batching batching) {
+            this.batching = batching;
+        }
+    }
+
+    public static class Batching {
+
+        /**
+         * The unary method of the same service taking the batches, {@code Method} or {@code package.Service/Method}.
+         * Its request and response each hold one repeated field of the batched method's request and response type,
+         * the responses in the order of the requests. Batching is disabled while unset.
+         */
+        private String batchMethod;
+
+        /**
+         * How long the first call of a batch waits for further ones.
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        /**
+         * A batch is sent as soon as it holds this many calls.
+         */
+        private int maxSize = 100;
+
+        public String getBatchMethod() {
+            return batchMethod;
+        }
+
+        public void setBatchMethod(String batchMethod) {
+            this.batchMethod = batchMethod;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class Compression {
+
+        /**
+         * The message encoding, e.g. gzip, deflate or the encoding of a registered {@code io.grpc.Codec} bean. Unset
+         * or identity sends messages uncompressed.
+         */
+        private String codec;
+
+        /**
+         * Messages below this size are sent uncompressed.
+         */
+        private DataSize minSize = DataSize.ofKilobytes(1);
+
+        public String getCodec() {
+            return codec;
+        }
+
+        public void setCodec(String codec) {
+            this.codec = codec;
+        }
+
+        public DataSize getMinSize() {
+            return minSize;
+        }
+
+        public void setMinSize(DataSize minSize) {
+            this.minSize = minSize;
+        }
+    }
+
+    public static class Retry {
+
+        /**
+         * Attempts including the first one, retries are disabled below 2.
+         */
+        private int maxAttempts;
+
+        private Duration initialBackoff = Duration.ofMillis(100);
+
+        private Duration maxBackoff = Duration.ofSeconds(1);
+
+        private double backoffMultiplier = 2;
+
+        private List<Status.Code> retryableStatusCodes = new ArrayList<>(Collections.singletonList(Status.Code.UNAVAILABLE));
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        public double getBackoffMultiplier() {
+            return backoffMultiplier;
+        }
+
+        public void setBackoffMultiplier(double backoffMultiplier) {
+            this.backoffMultiplier = backoffMultiplier;
+        }
+
+        public List<Status.Code> getRetryableStatusCodes() {
+            return retryableStatusCodes;
+        }
+
+        public void setRetryableStatusCodes(List<Status.Code> retryableStatusCodes) {
+            this.retryableStatusCodes = retryableStatusCodes;
+        }
+    }
+
+    public static class Hedging {
+
+        /**
+         * Copies sent including the first one, hedging is disabled below 2.
+         */
+        private int maxAttempts;
+
+        /**
+         * The time to wait for an answer before sending the next copy.
+         */
+        private Duration hedgingDelay = Duration.ofMillis(50);
+
+        /**
+         * Status codes that don't stop the remaining copies.
+         */
+        private List<Status.Code> nonFatalStatusCodes = new ArrayList<>(Collections.singletonList(Status.Code.UNAVAILABLE));
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getHedgingDelay() {
+            return hedgingDelay;
+        }
+
+        public void setHedgingDelay(Duration hedgingDelay) {
+            this.hedgingDelay = hedgingDelay;
+        }
+
+        public List<Status.Code> getNonFatalStatusCodes() {
+            return nonFatalStatusCodes;
+        }
+
+        public void setNonFatalStatusCodes(List<Status.Code> nonFatalStatusCodes) {
+            this.nonFatalStatusCodes = nonFatalStatusCodes;
+        }
+    }
+
+    public static class RetryThrottling {
+
+        /**
+         * The token bucket size, throttling is disabled at 0. Every failure takes a token, every success returns
+         * {@code token-ratio}, retries stop below half of the tokens.
+         */
+        private int maxTokens;
+
+        private double tokenRatio = 0.1;
+
+        public int getMaxTokens() {
+            return maxTokens;
+        }
+
+        public void setMaxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        public double getTokenRatio() {
+            return tokenRatio;
+        }
+
+        public void setTokenRatio(double tokenRatio) {
+            this.tokenRatio = tokenRatio;
+        }
+    }
+
+    public static class SlowStart {
+
+        /**
+         * Whether instances that published their start time get a growing share of the calls.
+         */
+        private boolean enabled;
+
+        /**
+         * The time after the start of an instance until it gets its full share.
+         */
+        private Duration window = Duration.ofSeconds(60);
+
+        /**
+         * The share of its normal calls an instance gets right after its start.
+         */
+        private double minWeightFraction = 0.1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public double getMinWeightFraction() {
+            return minWeightFraction;
+        }
+
+        public void setMinWeightFraction(double minWeightFraction) {
+            this.minWeightFraction = minWeightFraction;
+        }
+    }
+
+    public static class WarmUp {
+
+        /**
+         * Whether the channel connects to its instances while the application starts.
+         */
+        private boolean enabled;
+
+        /**
+         * How long the startup waits for the channel to become READY.
+         */
+        private Duration timeout = Duration.ofSeconds(10);
+
+        /**
+         * Whether the startup fails if the channel is not READY within the timeout, otherwise only a warning is logged.
+         */
+        private boolean required;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public boolean isRequired() {
+            return required;
+        }
+
+        public void setRequired(boolean required) {
+            this.required = required;
+        }
+    }
+
+    public static class OutlierDetection {
+
+        /**
+         * Whether instances that keep failing are ejected from picking.
+         */
+        private boolean enabled;
+
+        /**
+         * Failed calls in a row that eject an instance immediately, 0 disables it.
+         */
+        private int consecutiveFailures = 5;
+
+        /**
+         * The share of failed calls within an interval above which an instance is ejected.
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * The calls an instance must have received within an interval before its failure rate counts.
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * The interval failure rates are evaluated and ejections end in.
+         */
+        private Duration interval = Duration.ofSeconds(10);
+
+        /**
+         * The ejection time of the first ejection, every further ejection adds the same time.
+         */
+        private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+        /**
+         * The largest share of the instances that may be ejected at the same time.
+         */
+        private double maxEjectedFraction = 0.5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public void setConsecutiveFailures(int consecutiveFailures) {
+            this.consecutiveFailures = consecutiveFailures;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public Duration getBaseEjectionTime() {
+            return baseEjectionTime;
+        }
+
+        public void setBaseEjectionTime(Duration baseEjectionTime) {
+            this.baseEjectionTime = baseEjectionTime;
+        }
+
+        public Duration getMaxEjectionTime() {
+            return maxEjectionTime;
+        }
+
+        public void setMaxEjectionTime(Duration maxEjectionTime) {
+            this.maxEjectionTime = maxEjectionTime;
+        }
+
+        public double getMaxEjectedFraction() {
+            return maxEjectedFraction;
+        }
+
+        public void setMaxEjectedFraction(double maxEjectedFraction) {
+            this.maxEjectedFraction = maxEjectedFraction;
+        }
+    }
+
+    /**
+     * Netty settings of the channel, unset values keep the gRPC defaults.
+     */
+    public static class Netty {
+
+        /**
+         * The initial HTTP/2 flow-control window of every stream, grown by gRPC's auto-tuning. Raise it for large
+         * payloads.
+         */
+        private DataSize flowControlWindow;
+
+        /**
+         * The largest response message the channel accepts.
+         */
+        private DataSize maxInboundMessageSize;
+
+        /**
+         * The largest response metadata the channel accepts.
+         */
+        private DataSize maxInboundMetadataSize;
+
+        /**
+         * Pings the server after this time without reads.
+         */
+        private Duration keepAliveTime;
+
+        /**
+         * Closes the connection when a keepalive ping isn't answered within this time.
+         */
+        private Duration keepAliveTimeout;
+
+        /**
+         * Whether keepalive pings are sent without running calls, the server must permit it.
+         */
+        private boolean keepAliveWithoutCalls;
+
+        public DataSize getFlowControlWindow() {
+            return flowControlWindow;
+        }
+
+        public void setFlowControlWindow(DataSize flowControlWindow) {
+            this.flowControlWindow = flowControlWindow;
+        }
+
+        public DataSize getMaxInboundMessageSize() {
+            return maxInboundMessageSize;
+        }
+
+        public void setMaxInboundMessageSize(DataSize maxInboundMessageSize) {
+            this.maxInboundMessageSize = maxInboundMessageSize;
+        }
+
+        public DataSize getMaxInboundMetadataSize() {
+            return maxInboundMetadataSize;
+        }
+
+        public void setMaxInboundMetadataSize(DataSize maxInboundMetadataSize) {
+            this.maxInboundMetadataSize = maxInboundMetadataSize;
+        }
+
+        public Duration getKeepAliveTime() {
+            return keepAliveTime;
+        }
+
+        public void setKeepAliveTime(Duration keepAliveTime) {
+            this.keepAliveTime = keepAliveTime;
+        }
+
+        public Duration getKeepAliveTimeout() {
+            return keepAliveTimeout;
+        }
+
+        public void setKeepAliveTimeout(Duration keepAliveTimeout) {
+            this.keepAliveTimeout = keepAliveTimeout;
+        }
+
+        public boolean isKeepAliveWithoutCalls() {
+            return keepAliveWithoutCalls;
+        }
+
+        public void setKeepAliveWithoutCalls(boolean keepAliveWithoutCalls) {
+            this.keepAliveWithoutCalls = keepAliveWithoutCalls;
+        }
+    }
+}
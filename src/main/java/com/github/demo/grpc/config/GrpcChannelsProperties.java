@@ -0,0 +1,46 @@
+package com.github.demo.grpc.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per service settings of the channels created for {@code @GrpcClient} injection points, configured as
+ * {@code grpc.client.<service>.*}.
+ */
+@ConfigurationProperties("grpc")
+public class GrpcChannelsProperties {
+
+    /**
+     * The entry used by every service that has no entry of its own.
+     */
+    public static final String GLOBAL = "GLOBAL";
+
+    /**
+     * Channel settings keyed by the service name used in {@code @GrpcClient(service = ...)}.
+     */
+    private Map<String, GrpcChannelProperties> client = new ConcurrentHashMap<>();
+
+    public Map<String, GrpcChannelProperties> getClient() {
+        return client;
+    }
+
+    public void setClient(Map<String, GrpcChannelProperties> client) {
+        this.client = client;
+    }
+
+    /**
+     * Gets the settings of the given service, falling back to the {@link #GLOBAL} entry and then to the defaults.
+     *
+     * @param service The name of the service.
+     * @return The channel settings of the service.
+     */
+    public GrpcChannelProperties getChannel(String service) {
+        GrpcChannelProperties properties = client.get(service);
+        if (properties == null) {
+            properties = client.computeIfAbsent(GLOBAL, key -> new GrpcChannelProperties());
+        }
+        return properties;
+    }
+}
@@ -1,6 +1,15 @@
 package com.github.demo.grpc.config;
 
+import com.github.demo.grpc.server.GrpcServerExecutor;
+import io.grpc.Status;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -18,6 +27,11 @@ public class GrpcServerProperties {
      */
     private boolean enabled = true;
 
+    /**
+     * Settings of the embedded server.
+     */
+    private Server server = new Server();
+
     public int getPort() {
         return port;
     }
@@ -34,7 +48,570 @@ public class GrpcServerProperties {
         this.enabled = enabled;
     }
 
+    public Server getServer() {
+        return server;
+    }
+
+    public void setServer(Server server) {
+        this.server = server;
+    }
+
+    public static class Server {
+
+        /**
+         * The executor application code runs on.
+         */
+        private ServerExecutor executor = new ServerExecutor();
+
+        /**
+         * Settings of the Netty transport.
+         */
+        private Netty netty = new Netty();
+
+        /**
+         * Settings of the graceful shutdown.
+         */
+        private Shutdown shutdown = new Shutdown();
+
+        /**
+         * Settings of the built-in server metrics.
+         */
+        private Metrics metrics = new Metrics();
+
+        /**
+         * Settings of the adaptive concurrency limit.
+         */
+        private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+        /**
+         * The longest deadline calls are served under, also for calls without a deadline. Outbound calls made while
+         * serving a call inherit it. Unset means the caller's deadline is used as is.
+         */
+        private Duration maxDeadline;
+
+        /**
+         * Compression of the responses, for all services and per service or method.
+         */
+        private ServerCompression compression = new ServerCompression();
+
+        public ServerExecutor getExecutor() {
+            return executor;
+        }
+
+        public void setExecutor(ServerExecutor executor) {
+            this.executor = executor;
+        }
+
+        public Netty getNetty() {
+            return netty;
+        }
+
+        public void setNetty(Netty netty) {
+            this.netty = netty;
+        }
+
+        public Shutdown getShutdown() {
+            return shutdown;
+        }
+
+        public void setShutdown(Shutdown shutdown) {
+            this.shutdown = shutdown;
+        }
+
+        public Metrics getMetrics() {
+            return metrics;
+        }
+
+        public void setMetrics(Metrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public ConcurrencyLimit getConcurrencyLimit() {
+            return concurrencyLimit;
+        }
+
+        public void setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+            this.concurrencyLimit = concurrencyLimit;
+        }
+
+        public Duration getMaxDeadline() {
+            return maxDeadline;
+        }
+
+        public void setMaxDeadline(Duration maxDeadline) {
+            this.maxDeadline = maxDeadline;
+        }
+
+        public ServerCompression getCompression() {
+            return compression;
+        }
+
+        public void setCompression(ServerCompression compression) {
+            this.compression = compression;
+        }
+    }
+
+    public static class Compression {
+
+        /**
+         * The message encoding, e.g. gzip, deflate or the encoding of a registered {@code io.grpc.Codec} bean. Unset
+         * or identity sends messages uncompressed.
+         */
+        private String codec;
+
+        /**
+         * Messages below this size are sent uncompressed.
+         */
+        private DataSize minSize = DataSize.ofKilobytes(1);
+
+        public String getCodec() {
+            return codec;
+        }
+
+        public void setCodec(String codec) {
+            this.codec = codec;
+        }
+
+        public DataSize getMinSize() {
+            return minSize;
+        }
+
+        public void setMinSize(DataSize minSize) {
+            this.minSize = minSize;
+        }
+    }
+
+    public static class ServerCompression extends Compression {
+
+        /**
+         * Overrides keyed by {@code package.Service} or {@code package.Service/Method}.
+         */
+        private Map<String, Compression> methods = new LinkedHashMap<>();
+
+        public Map<String, Compression> getMethods() {
+            return methods;
+        }
+
+        public void setMethods(Map<String, Compression> methods) {
+            this.methods = methods;
+        }
+    }
+
+    public static class ConcurrencyLimit {
+
+        /**
+         * Whether the limit applies to all services, otherwise only to services listing the interceptor.
+         */
+        private boolean enabled;
+
+        /**
+         * The limit of a method before any latency was measured.
+         */
+        private int initialLimit = 20;
+
+        private int minLimit = 1;
+
+        private int maxLimit = 1000;
+
+        /**
+         * How much the latency may exceed the long-term average before the limit shrinks.
+         */
+        private double tolerance = 1.5;
+
+        /**
+         * The weight of a new limit against the current one.
+         */
+        private double smoothing = 0.2;
+
+        /**
+         * The number of windows the long-term latency average spans.
+         */
+        private int longWindow = 600;
+
+        /**
+         * The interval the limit is recomputed in.
+         */
+        private Duration window = Duration.ofMillis(100);
+
+        /**
+         * A header identifying the caller, every caller gets an own limit per method.
+         */
+        private String partitionHeader;
+
+        /**
+         * The header values that get an own limit, empty for any value. Other values share the {@code other} limit.
+         */
+        private List<String> partitions = new ArrayList<>();
+
+        /**
+         * The most header values that get an own limit per method, further values share the {@code other} limit.
+         */
+        private int maxPartitions = 50;
+
+        /**
+         * Limits no call used for this long are dropped together with their meters.
+         */
+        private Duration idleTimeout = Duration.ofMinutes(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        public void setTolerance(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public int getLongWindow() {
+            return longWindow;
+        }
+
+        public void setLongWindow(int longWindow) {
+            this.longWindow = longWindow;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public String getPartitionHeader() {
+            return partitionHeader;
+        }
 
+        public void setPartitionHeader(String partitionHeader) {
+            this.partitionHeader = partitionHeader;
+        }
 
+        public List<String> getPartitions() {
+            return partitions;
+        }
 
+        public void setPartitions(List<String> partitions) {
+            this.partitions = partitions;
+        }
+
+        public int getMaxPartitions() {
+            return maxPartitions;
+        }
+
+        public void setMaxPartitions(int maxPartitions) {
+            this.maxPartitions = maxPartitions;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+    }
+
+    public static class Metrics {
+
+        /**
+         * Whether latency, calls in flight, messages, bytes and status codes are recorded per method.
+         */
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class Shutdown {
+
+        /**
+         * How long the deregistered server keeps accepting calls so that clients learn it is gone.
+         */
+        private Duration propagationDelay = Duration.ofSeconds(2);
+
+        /**
+         * How long running calls may take to complete before they are cancelled.
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+
+        public Duration getPropagationDelay() {
+            return propagationDelay;
+        }
+
+        public void setPropagationDelay(Duration propagationDelay) {
+            this.propagationDelay = propagationDelay;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Netty settings of the server, unset values keep the gRPC defaults.
+     */
+    public static class Netty {
+
+        /**
+         * Use the native epoll transport, falls back to NIO when it isn't available. With false the server gets own
+         * NIO event loops even if no thread count is set.
+         */
+        private boolean epoll = true;
+
+        /**
+         * Threads accepting connections, 0 uses the shared gRPC event loops, or 1 thread if epoll is disabled.
+         */
+        private int bossThreads;
+
+        /**
+         * Threads serving connections, 0 uses the shared gRPC event loops, or twice the number of cores if epoll is
+         * disabled.
+         */
+        private int workerThreads;
+
+        /**
+         * The initial HTTP/2 flow-control window of every stream, grown by gRPC's auto-tuning. Raise it for large
+         * payloads.
+         */
+        private DataSize flowControlWindow;
+
+        /**
+         * The largest message the server accepts.
+         */
+        private DataSize maxInboundMessageSize;
+
+        /**
+         * The largest metadata the server accepts.
+         */
+        private DataSize maxInboundMetadataSize;
+
+        /**
+         * The HTTP/2 MAX_CONCURRENT_STREAMS advertised to clients.
+         */
+        private Integer maxConcurrentCallsPerConnection;
+
+        /**
+         * Pings idle clients after this time.
+         */
+        private Duration keepAliveTime;
+
+        /**
+         * Closes the connection when a keepalive ping isn't answered within this time.
+         */
+        private Duration keepAliveTimeout;
+
+        /**
+         * The shortest keepalive interval clients may use.
+         */
+        private Duration permitKeepAliveTime;
+
+        /**
+         * Whether clients may send keepalive pings without running calls.
+         */
+        private Boolean permitKeepAliveWithoutCalls;
+
+        /**
+         * Closes connections after this age so that clients rebalance.
+         */
+        private Duration maxConnectionAge;
+
+        public boolean isEpoll() {
+            return epoll;
+        }
+
+        public void setEpoll(boolean epoll) {
+            this.epoll = epoll;
+        }
+
+        public int getBossThreads() {
+            return bossThreads;
+        }
+
+        public void setBossThreads(int bossThreads) {
+            this.bossThreads = bossThreads;
+        }
+
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+
+        public void setWorkerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+        }
+
+        public DataSize getFlowControlWindow() {
+            return flowControlWindow;
+        }
+
+        public void setFlowControlWindow(DataSize flowControlWindow) {
+            this.flowControlWindow = flowControlWindow;
+        }
+
+        public DataSize getMaxInboundMessageSize() {
+            return maxInboundMessageSize;
+        }
+
+        public void setMaxInboundMessageSize(DataSize maxInboundMessageSize) {
+            this.maxInboundMessageSize = maxInboundMessageSize;
+        }
+
+        public DataSize getMaxInboundMetadataSize() {
+            return maxInboundMetadataSize;
+        }
+
+        public void setMaxInboundMetadataSize(DataSize maxInboundMetadataSize) {
+            this.maxInboundMetadataSize = maxInboundMetadataSize;
+        }
+
+        public Integer getMaxConcurrentCallsPerConnection() {
+            return maxConcurrentCallsPerConnection;
+        }
+
+        public void setMaxConcurrentCallsPerConnection(Integer maxConcurrentCallsPerConnection) {
+            this.maxConcurrentCallsPerConnection = maxConcurrentCallsPerConnection;
+        }
+
+        public Duration getKeepAliveTime() {
+            return keepAliveTime;
+        }
+
+        public void setKeepAliveTime(Duration keepAliveTime) {
+            this.keepAliveTime = keepAliveTime;
+        }
+
+        public Duration getKeepAliveTimeout() {
+            return keepAliveTimeout;
+        }
+
+        public void setKeepAliveTimeout(Duration keepAliveTimeout) {
+            this.keepAliveTimeout = keepAliveTimeout;
+        }
+
+        public Duration getPermitKeepAliveTime() {
+            return permitKeepAliveTime;
+        }
+
+        public void setPermitKeepAliveTime(Duration permitKeepAliveTime) {
+            this.permitKeepAliveTime = permitKeepAliveTime;
+        }
+
+        public Boolean getPermitKeepAliveWithoutCalls() {
+            return permitKeepAliveWithoutCalls;
+        }
+
+        public void setPermitKeepAliveWithoutCalls(Boolean permitKeepAliveWithoutCalls) {
+            this.permitKeepAliveWithoutCalls = permitKeepAliveWithoutCalls;
+        }
+
+        public Duration getMaxConnectionAge() {
+            return maxConnectionAge;
+        }
+
+        public void setMaxConnectionAge(Duration maxConnectionAge) {
+            this.maxConnectionAge = maxConnectionAge;
+        }
+    }
+
+    public static class ServerExecutor {
+
+        /**
+         * The executor model: default, bounded, direct, fork-join or virtual.
+         */
+        private GrpcServerExecutor.Type type = GrpcServerExecutor.Type.DEFAULT;
+
+        /**
+         * Threads of the bounded pool, parallelism of the fork-join pool.
+         */
+        private int threads = 200;
+
+        /**
+         * New calls are rejected once more tasks than this wait for a thread of the bounded pool.
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * The status code of calls rejected by the bounded pool.
+         */
+        private Status.Code rejectionStatus = Status.Code.RESOURCE_EXHAUSTED;
+
+        public GrpcServerExecutor.Type getType() {
+            return type;
+        }
+
+        public void setType(GrpcServerExecutor.Type type) {
+            this.type = type;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Status.Code getRejectionStatus() {
+            return rejectionStatus;
+        }
+
+        public void setRejectionStatus(Status.Code rejectionStatus) {
+            this.rejectionStatus = rejectionStatus;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package com.github.demo.grpc.context;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Holds the channels created for {@code @GrpcClient} injection points, one per target service, so that all stub
+ * types of a service share the same connections and name resolver. The channels are closed with the application
+ * context.
+ */
+public class GrpcChannelRegistry implements DisposableBean {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, Channel> channels = new ConcurrentHashMap<>();
+
+    private final List<ManagedChannel> managedChannels = new CopyOnWriteArrayList<>();
+
+    private final ConcurrentMap<String, List<ManagedChannel>> managedChannelsByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the channel registered for the given key or creates it.
+     *
+     * @param key         The key of the channel, usually the service name.
+     * @param connections The number of channels to create and spread calls over, each opens its own connection to
+     *                    every instance.
+     * @param factory     Creates a single managed channel.
+     * @return The shared channel.
+     */
+    public Channel getChannel(String key, int connections, Supplier<ManagedChannel> factory) {
+        return channels.computeIfAbsent(key, k -> {
+            ManagedChannel[] pool = new ManagedChannel[Math.max(connections, 1)];
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = factory.get();
+                managedChannels.add(pool[i]);
+            }
+            managedChannelsByKey.put(k, Collections.unmodifiableList(Arrays.asList(pool)));
+            logger.info("Created {} channel(s) for '{}'.", pool.length, k);
+            return pool.length == 1 ? pool[0] : new PooledChannel(pool);
+        });
+    }
+
+    /**
+     * @return The registered channels keyed as passed to {@link #getChannel(String, int, Supplier)}.
+     */
+    public Map<String, Channel> getChannels() {
+        return Collections.unmodifiableMap(channels);
+    }
+
+    /**
+     * @param key The key as passed to {@link #getChannel(String, int, Supplier)}.
+     * @return The managed channels behind the channel of the key, empty if there is none.
+     */
+    public List<ManagedChannel> getManagedChannels(String key) {
+        return managedChannelsByKey.getOrDefault(key, Collections.emptyList());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        managedChannels.forEach(ManagedChannel::shutdown);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        for (ManagedChannel channel : managedChannels) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !channel.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                channel.shutdownNow();
+            }
+        }
+        logger.info("Closed {} gRPC client channel(s).", managedChannels.size());
+        managedChannels.clear();
+        managedChannelsByKey.clear();
+        channels.clear();
+    }
+
+    /**
+     * Spreads calls round-robin over several channels to the same target.
+     */
+    static final class PooledChannel extends Channel {
+
+        private final ManagedChannel[] channels;
+
+        private final AtomicInteger index = new AtomicInteger();
+
+        PooledChannel(ManagedChannel[] channels) {
+            this.channels = channels;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+            int next = index.getAndIncrement() & Integer.MAX_VALUE;
+            return channels[next % channels.length].newCall(methodDescriptor, callOptions);
+        }
+
+        @Override
+        public String authority() {
+            return channels[0].authority();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.demo.grpc.context;
+
+import com.github.demo.grpc.config.GrpcChannelProperties;
+import com.github.demo.grpc.config.GrpcChannelsProperties;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects the channels of the services with {@code grpc.client.<service>.warm-up.enabled=true} while the application
+ * context starts, so that the first calls don't pay for name resolution and connection setup. The start waits until
+ * the channels are READY or their timeout passed, which keeps the gRPC server from registering in nacos and the
+ * application from reporting readiness before its dependencies are reachable.
+ */
+public class GrpcChannelWarmer implements SmartLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final GrpcChannelRegistry channelRegistry;
+
+    private final GrpcChannelsProperties channelsProperties;
+
+    private volatile boolean running;
+
+    public GrpcChannelWarmer(GrpcChannelRegistry channelRegistry, GrpcChannelsProperties channelsProperties) {
+        this.channelRegistry = channelRegistry;
+        this.channelsProperties = channelsProperties;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Map<String, CountDownLatch> pending = new LinkedHashMap<>();
+        for (String service : channelRegistry.getChannels().keySet()) {
+            List<ManagedChannel> channels = channelRegistry.getManagedChannels(service);
+            if (!channelsProperties.getChannel(service).getWarmUp().isEnabled() || channels.isEmpty()) {
+                continue;
+            }
+            CountDownLatch ready = new CountDownLatch(channels.size());
+            channels.forEach(channel -> connect(channel, ready));
+            pending.put(service, ready);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        List<String> notReady = new ArrayList<>();
+        for (Map.Entry<String, CountDownLatch> entry : pending.entrySet()) {
+            GrpcChannelProperties.WarmUp warmUp = channelsProperties.getChannel(entry.getKey()).getWarmUp();
+            long remainingNanos = warmUp.getTimeout().toNanos() - (System.nanoTime() - startNanos);
+            if (await(entry.getValue(), remainingNanos)) {
+                continue;
+            }
+            if (warmUp.isRequired()) {
+                throw new IllegalStateException("The channel to '" + entry.getKey() + "' did not become READY within "
+                        + warmUp.getTimeout());
+            }
+            notReady.add(entry.getKey());
+        }
+        if (notReady.isEmpty()) {
+            logger.info("Warmed up the channels to {} in {} ms.", pending.keySet(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } else {
+            logger.warn("The channels to {} did not become READY in time, their first calls may be slow.", notReady);
+        }
+    }
+
+    /**
+     * Asks the channel to connect and counts the latch down once it is READY.
+     */
+    private void connect(ManagedChannel channel, CountDownLatch ready) {
+        ConnectivityState state = channel.getState(true);
+        if (state == ConnectivityState.READY) {
+            ready.countDown();
+        } else if (state != ConnectivityState.SHUTDOWN) {
+            channel.notifyWhenStateChanged(state, () -> connect(channel, ready));
+        }
+    }
+
+    private boolean await(CountDownLatch latch, long timeoutNanos) {
+        try {
+            return latch.await(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
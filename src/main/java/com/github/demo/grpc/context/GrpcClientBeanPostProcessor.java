@@ -1,47 +1,102 @@
 package com.github.demo.grpc.context;
 
+import com.alibaba.cloud.nacos.NacosDiscoveryProperties;
 import com.alibaba.spring.beans.factory.annotation.AbstractAnnotationBeanPostProcessor;
+import com.github.demo.grpc.config.GrpcChannelProperties;
+import com.github.demo.grpc.config.GrpcChannelsProperties;
 import com.github.demo.grpc.nacos.NacosNameResolverProvider;
 import com.github.demo.grpc.annoation.GrpcClient;
+import com.github.demo.grpc.batching.GrpcBatcher;
+import com.github.demo.grpc.batching.GrpcClientBatchingInterceptor;
+import com.github.demo.grpc.broadcast.GrpcBroadcaster;
+import com.github.demo.grpc.compression.GrpcCodecRegistry;
+import com.github.demo.grpc.compression.MessageCompression;
+import com.github.demo.grpc.loadbalancer.NacosLeastLatencyLoadBalancerProvider;
+import com.github.demo.grpc.loadbalancer.NacosLocalityLoadBalancerProvider;
+import com.github.demo.grpc.loadbalancer.NacosRingHashLoadBalancerProvider;
+import com.github.demo.grpc.loadbalancer.NacosWeightedLoadBalancerProvider;
+import com.github.demo.grpc.loadbalancer.OutlierDetectionConfig;
+import com.github.demo.grpc.loadbalancer.SlowStartConfig;
+import com.github.demo.grpc.metrics.GrpcBatchMetrics;
+import com.github.demo.grpc.metrics.GrpcClientMetrics;
 import io.grpc.Channel;
+import io.grpc.ClientInterceptor;
+import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServiceDescriptor;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
 import io.grpc.stub.AbstractAsyncStub;
 import io.grpc.stub.AbstractBlockingStub;
 import io.grpc.stub.AbstractFutureStub;
 import io.grpc.stub.AbstractStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanInstantiationException;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.InjectionMetadata;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.ResolvableType;
 import org.springframework.core.annotation.AnnotationAttributes;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.alibaba.spring.util.AnnotationUtils.getAttributes;
 
 public class GrpcClientBeanPostProcessor extends AbstractAnnotationBeanPostProcessor implements
         ApplicationContextAware {
 
+    private static final List<String> NACOS_POLICIES = Arrays.asList(NacosWeightedLoadBalancerProvider.POLICY_NAME,
+            NacosLocalityLoadBalancerProvider.POLICY_NAME, NacosLeastLatencyLoadBalancerProvider.POLICY_NAME,
+            NacosRingHashLoadBalancerProvider.POLICY_NAME);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     /**
      * Cache size
      */
 
-    private final ConcurrentMap<String, AbstractStub<?>> beanCache =
+    private final ConcurrentMap<String, Object> beanCache =
             new ConcurrentHashMap<>(32);
 
-    private final ConcurrentMap<InjectionMetadata.InjectedElement, AbstractStub<?>> injectedFieldBeanCache =
+    private final ConcurrentMap<InjectionMetadata.InjectedElement, Object> injectedFieldBeanCache =
             new ConcurrentHashMap<>(32);
 
-    private final ConcurrentMap<InjectionMetadata.InjectedElement, AbstractStub<?>> injectedMethodBeanCache =
+    private final ConcurrentMap<InjectionMetadata.InjectedElement, Object> injectedMethodBeanCache =
             new ConcurrentHashMap<>(32);
 
+    /**
+     * The batchers by service and batched method, shared by all stubs of the service.
+     */
+    private final ConcurrentMap<String, GrpcBatcher<?, ?>> batchers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService batchScheduler;
+
     private ApplicationContext applicationContext;
 
     public GrpcClientBeanPostProcessor() {
@@ -50,6 +105,13 @@ public class GrpcClientBeanPostProcessor extends AbstractAnnotationBeanPostProce
 
     @Override
     protected Object doGetInjectedBean(AnnotationAttributes attributes, Object bean, String beanName, Class<?> injectedType, InjectionMetadata.InjectedElement injectedElement) throws Exception {
+        if (attributes.getBoolean("broadcast")) {
+            Class<?> stubType = resolveBroadcastStubType(injectedType, injectedElement);
+            String name = generateBeanName(attributes, stubType);
+            GrpcBroadcaster<?> broadcaster = buildGrpcBroadcasterIfAbsent(name, attributes, stubType);
+            cacheInjectedBean(broadcaster, injectedElement);
+            return broadcaster;
+        }
         String name = generateBeanName(attributes, injectedType);
         AbstractStub s = buildGrpcClientBeanIfAbsent(name, attributes, injectedType);
         cacheInjectedBean(s, injectedElement);
@@ -68,8 +130,18 @@ public class GrpcClientBeanPostProcessor extends AbstractAnnotationBeanPostProce
         this.applicationContext = applicationContext;
     }
 
+    @Override
+    public void destroy() throws Exception {
+        super.destroy();
+        synchronized (this) {
+            if (batchScheduler != null) {
+                batchScheduler.shutdown();
+            }
+        }
+    }
+
 
-    private void cacheInjectedBean(AbstractStub client,
+    private void cacheInjectedBean(Object client,
                                    InjectionMetadata.InjectedElement injectedElement) {
         if (injectedElement.getMember() instanceof Field) {
             injectedFieldBeanCache.put(injectedElement, client);
@@ -81,13 +153,169 @@ public class GrpcClientBeanPostProcessor extends AbstractAnnotationBeanPostProce
     private <T extends AbstractStub<T>> T buildGrpcClientBeanIfAbsent(String beanName, AnnotationAttributes attributes, Class<?> injectedType) {
         T s = (T) beanCache.get(beanName);
         if (s == null) {
-            s = createStub(injectedType, createChannel(attributes.getString("service")));
+            s = createStub(injectedType, getChannel(attributes.getString("service"), false));
+            // added first so that it sees the deadline set by the deadline interceptor
+            ClientInterceptor batchingInterceptor = createBatchingInterceptor(attributes.getString("service"), injectedType);
+            if (batchingInterceptor != null) {
+                s = s.withInterceptors(batchingInterceptor);
+            }
+            ClientInterceptor deadlineInterceptor = createDeadlineInterceptor(attributes);
+            if (deadlineInterceptor != null) {
+                s = s.withInterceptors(deadlineInterceptor);
+            }
             getBeanFactory().registerSingleton(beanName, s);
             beanCache.put(beanName, s);
         }
         return s;
     }
 
+    /**
+     * @return The interceptor applying the deadlines of the annotation, null if it declares none.
+     */
+    private ClientInterceptor createDeadlineInterceptor(AnnotationAttributes attributes) {
+        String deadline = attributes.getString("deadline");
+        String[] methodDeadlines = attributes.getStringArray("methodDeadlines");
+        if (!StringUtils.hasText(deadline) && methodDeadlines.length == 0) {
+            return null;
+        }
+        Map<String, Duration> deadlines = new HashMap<>();
+        for (String methodDeadline : methodDeadlines) {
+            int separator = methodDeadline.lastIndexOf('=');
+            Assert.isTrue(separator > 0, "Method deadlines must look like 'Method=500ms', but was " + methodDeadline);
+            deadlines.put(methodDeadline.substring(0, separator).trim(), DurationStyle.detectAndParse(methodDeadline.substring(separator + 1).trim()));
+        }
+        return new GrpcClientDeadlineInterceptor(StringUtils.hasText(deadline) ? DurationStyle.detectAndParse(deadline.trim()) : null, deadlines);
+    }
+
+    /**
+     * @return The interceptor batching the methods of the stub's service that are configured for it, null if there
+     * are none.
+     */
+    private ClientInterceptor createBatchingInterceptor(String service, Class<?> stubType) {
+        Map<String, GrpcChannelProperties.MethodConfig> methods = applicationContext.getBean(GrpcChannelsProperties.class).getChannel(service).getMethods();
+        if (methods.values().stream().noneMatch(methodConfig -> StringUtils.hasText(methodConfig.getBatching().getBatchMethod()))) {
+            return null;
+        }
+        ServiceDescriptor serviceDescriptor = getServiceDescriptor(stubType);
+        Map<String, GrpcBatcher<?, ?>> serviceBatchers = new HashMap<>();
+        methods.forEach((name, methodConfig) -> {
+            GrpcChannelProperties.Batching batching = methodConfig.getBatching();
+            if (!StringUtils.hasText(batching.getBatchMethod())) {
+                return;
+            }
+            Assert.isTrue(name.indexOf('/') > 0, "Batching is configured per method, e.g. package.Service/Method, but was " + name);
+            if (serviceDescriptor.getName().equals(MethodDescriptor.extractFullServiceName(name))) {
+                serviceBatchers.put(name, batchers.computeIfAbsent(service + "#" + name,
+                        key -> createBatcher(service, serviceDescriptor, name, batching)));
+            }
+        });
+        return serviceBatchers.isEmpty() ? null : new GrpcClientBatchingInterceptor(serviceBatchers);
+    }
+
+    private GrpcBatcher<?, ?> createBatcher(String service, ServiceDescriptor serviceDescriptor, String name, GrpcChannelProperties.Batching batching) {
+        String batchName = batching.getBatchMethod().indexOf('/') < 0 ?
+                serviceDescriptor.getName() + "/" + batching.getBatchMethod() : batching.getBatchMethod();
+        return createBatcher(service, getMethod(serviceDescriptor, name), getMethod(serviceDescriptor, batchName), batching);
+    }
+
+    private <ReqT, RespT> GrpcBatcher<ReqT, RespT> createBatcher(String service, MethodDescriptor<ReqT, RespT> method,
+                                                                 MethodDescriptor<?, ?> batchMethod, GrpcChannelProperties.Batching batching) {
+        GrpcBatchMetrics metrics = applicationContext.getBean(GrpcBatchMetrics.class);
+        return new GrpcBatcher<>(getChannel(service, false), method, batchMethod, batching.getWindow(), batching.getMaxSize(),
+                getBatchScheduler(), metrics.newBatchMetrics(service, method.getFullMethodName()));
+    }
+
+    private synchronized ScheduledExecutorService getBatchScheduler() {
+        if (batchScheduler == null) {
+            batchScheduler = Executors.newSingleThreadScheduledExecutor(GrpcUtil.getThreadFactory("grpc-client-batching-%d", true));
+        }
+        return batchScheduler;
+    }
+
+    private static MethodDescriptor<?, ?> getMethod(ServiceDescriptor serviceDescriptor, String fullMethodName) {
+        for (MethodDescriptor<?, ?> method : serviceDescriptor.getMethods()) {
+            if (method.getFullMethodName().equals(fullMethodName)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(serviceDescriptor.getName() + " has no method " + fullMethodName);
+    }
+
+    /**
+     * @return The descriptor of the service, from the static {@code getServiceDescriptor()} of the generated
+     * {@code XxxGrpc} class enclosing the stub.
+     */
+    private static ServiceDescriptor getServiceDescriptor(Class<?> stubType) {
+        try {
+            return (ServiceDescriptor) stubType.getEnclosingClass().getMethod("getServiceDescriptor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new BeanInstantiationException(stubType, "Failed to get the service descriptor of the gRPC client", e);
+        }
+    }
+
+    private GrpcBroadcaster<?> buildGrpcBroadcasterIfAbsent(String beanName, AnnotationAttributes attributes, Class<?> stubType) {
+        GrpcBroadcaster<?> broadcaster = (GrpcBroadcaster<?>) beanCache.get(beanName);
+        if (broadcaster == null) {
+            String service = attributes.getString("service");
+            broadcaster = createBroadcaster(service, stubType);
+            getBeanFactory().registerSingleton(beanName, broadcaster);
+            beanCache.put(beanName, broadcaster);
+        }
+        return broadcaster;
+    }
+
+    private <S extends AbstractFutureStub<S>> GrpcBroadcaster<S> createBroadcaster(String service, Class<?> stubType) {
+        GrpcChannelProperties.Broadcast properties = applicationContext.getBean(GrpcChannelsProperties.class).getChannel(service).getBroadcast();
+        S stub = createStub(stubType, getChannel(service, true));
+        return new GrpcBroadcaster<>(stub, broadcastTargets(service), properties.getDeadline().toNanos(),
+                TimeUnit.NANOSECONDS, properties.getFailureMode());
+    }
+
+    /**
+     * The addresses the resolver of the broadcast channel last reported, so every target has a subchannel in the
+     * channel's load balancer. Only until it reported any, right after startup, the instances are looked up.
+     */
+    private Supplier<List<SocketAddress>> broadcastTargets(String service) {
+        NacosNameResolverProvider nacosNameResolverProvider = applicationContext.getBean(NacosNameResolverProvider.class);
+        DiscoveryClient discoveryClient = applicationContext.getBean(DiscoveryClient.class);
+        URI target = URI.create(broadcastTarget(service));
+        return () -> {
+            List<SocketAddress> addresses = nacosNameResolverProvider.getAddresses(target);
+            if (!addresses.isEmpty()) {
+                return addresses;
+            }
+            return discoveryClient.getInstances(service).stream()
+                    .map(instance -> new InetSocketAddress(instance.getHost(), instance.getPort()))
+                    .collect(Collectors.toList());
+        };
+    }
+
+    /**
+     * @return The target of the broadcast channel, it has a resolver of its own to take the addresses from.
+     */
+    private static String broadcastTarget(String service) {
+        return NacosNameResolverProvider.NACOS + "://broadcast/" + service;
+    }
+
+    /**
+     * Resolves {@code XxxFutureStub} from an injection point declared as {@code GrpcBroadcaster<XxxFutureStub>}.
+     */
+    private Class<?> resolveBroadcastStubType(Class<?> injectedType, InjectionMetadata.InjectedElement injectedElement) {
+        if (!GrpcBroadcaster.class.isAssignableFrom(injectedType)) {
+            throw new IllegalArgumentException("@GrpcClient(broadcast = true) must be declared on a "
+                    + GrpcBroadcaster.class.getSimpleName() + ", but was " + injectedType.getName());
+        }
+        ResolvableType type = injectedElement.getMember() instanceof Field ?
+                ResolvableType.forField((Field) injectedElement.getMember()) :
+                ResolvableType.forMethodParameter((Method) injectedElement.getMember(), 0);
+        Class<?> stubType = type.as(GrpcBroadcaster.class).getGeneric(0).resolve();
+        if (stubType == null || !AbstractFutureStub.class.isAssignableFrom(stubType)) {
+            throw new IllegalArgumentException("Broadcasts require a future stub, e.g. GrpcBroadcaster<XxxFutureStub>, but was "
+                    + type);
+        }
+        return stubType;
+    }
+
     private String generateBeanName(AnnotationAttributes attributes, Class<?> injectedType) {
         StringBuilder beanNameBuilder = new StringBuilder("@GrpcClient");
 
@@ -107,10 +335,221 @@ public class GrpcClientBeanPostProcessor extends AbstractAnnotationBeanPostProce
         return beanNameBuilder.toString();
     }
 
-    private Channel createChannel(String service) {
+    /**
+     * Gets the channel shared by all stubs of the given service. Broadcasts use a channel of their own.
+     */
+    private Channel getChannel(String service, boolean broadcast) {
         Assert.hasText(service, "service must not be null");
+        GrpcChannelRegistry channelRegistry = applicationContext.getBean(GrpcChannelRegistry.class);
+        if (broadcast) {
+            return channelRegistry.getChannel(service + "#broadcast", 1, () -> createChannel(service, true));
+        }
+        int connections = applicationContext.getBean(GrpcChannelsProperties.class).getChannel(service).getConnections();
+        return channelRegistry.getChannel(service, connections, () -> createChannel(service, false));
+    }
+
+    /**
+     * Creates a channel to the given service. Broadcast channels always use the nacos_weighted policy, their calls
+     * are pinned to an instance anyway. They never go idle and connect right away, so their resolver keeps the
+     * broadcast targets up to date.
+     */
+    // nameResolverFactory is deprecated for NameResolverRegistry, but the registry is global: registering the provider
+    // there would make every channel of the JVM without a scheme resolve through nacos and outlive this context. The
+    // factory is the only way to scope the provider to the channels created here.
+    @SuppressWarnings("deprecation")
+    private ManagedChannel createChannel(String service, boolean broadcast) {
         NacosNameResolverProvider nacosNameResolverProvider = applicationContext.getBean(NacosNameResolverProvider.class);
-        return ManagedChannelBuilder.forTarget(service).nameResolverFactory(nacosNameResolverProvider).defaultLoadBalancingPolicy("round_robin").usePlaintext().build();
+        GrpcChannelProperties channelProperties = applicationContext.getBean(GrpcChannelsProperties.class).getChannel(service);
+        String policy = broadcast ? NacosWeightedLoadBalancerProvider.POLICY_NAME : channelProperties.getLoadBalancingPolicy();
+        NettyChannelBuilder builder = NettyChannelBuilder.forTarget(broadcast ? broadcastTarget(service) : service).nameResolverFactory(nacosNameResolverProvider).defaultLoadBalancingPolicy(policy).usePlaintext();
+        if (broadcast) {
+            // idle timeouts of 30 days and more disable the idle mode
+            builder.idleTimeout(30, TimeUnit.DAYS);
+        }
+        applyNettyProperties(builder, channelProperties.getNetty());
+        applyCompression(builder, channelProperties);
+        if (channelProperties.isMetrics()) {
+            applicationContext.getBeanProvider(GrpcClientMetrics.class)
+                    .ifAvailable(metrics -> builder.intercept(metrics.newInterceptor(service)));
+        }
+        Map<String, Object> serviceConfig = buildServiceConfig(channelProperties, policy);
+        if (!serviceConfig.isEmpty()) {
+            builder.defaultServiceConfig(serviceConfig);
+        }
+        int maxAttempts = getMaxAttempts(channelProperties);
+        if (maxAttempts > 1) {
+            builder.enableRetry().maxRetryAttempts(maxAttempts);
+        }
+        ManagedChannel channel = builder.build();
+        if (broadcast) {
+            channel.getState(true);
+        }
+        return channel;
+    }
+
+    /**
+     * Registers the codecs and compresses the requests of the methods configured for it.
+     */
+    private void applyCompression(NettyChannelBuilder builder, GrpcChannelProperties channelProperties) {
+        GrpcCodecRegistry codecRegistry = applicationContext.getBean(GrpcCodecRegistry.class);
+        codecRegistry.configure(builder);
+        MessageCompression defaultCompression = codecRegistry.getMessageCompression(channelProperties.getCompression().getCodec(),
+                channelProperties.getCompression().getMinSize().toBytes());
+        Map<String, MessageCompression> compressions = new HashMap<>();
+        channelProperties.getMethods().forEach((name, methodConfig) -> {
+            MessageCompression compression = codecRegistry.getMessageCompression(methodConfig.getCompression().getCodec(),
+                    methodConfig.getCompression().getMinSize().toBytes());
+            if (compression != null) {
+                compressions.put(name, compression);
+            }
+        });
+        if (defaultCompression != null || !compressions.isEmpty()) {
+            builder.intercept(new GrpcClientCompressionInterceptor(defaultCompression, compressions));
+        }
+    }
+
+    private void applyNettyProperties(NettyChannelBuilder builder, GrpcChannelProperties.Netty netty) {
+        if (netty.getFlowControlWindow() != null) {
+            builder.initialFlowControlWindow((int) Math.min(netty.getFlowControlWindow().toBytes(), Integer.MAX_VALUE));
+        }
+        if (netty.getMaxInboundMessageSize() != null) {
+            builder.maxInboundMessageSize((int) Math.min(netty.getMaxInboundMessageSize().toBytes(), Integer.MAX_VALUE));
+        }
+        if (netty.getMaxInboundMetadataSize() != null) {
+            builder.maxInboundMetadataSize((int) Math.min(netty.getMaxInboundMetadataSize().toBytes(), Integer.MAX_VALUE));
+        }
+        if (netty.getKeepAliveTime() != null) {
+            builder.keepAliveTime(netty.getKeepAliveTime().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (netty.getKeepAliveTimeout() != null) {
+            builder.keepAliveTimeout(netty.getKeepAliveTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        builder.keepAliveWithoutCalls(netty.isKeepAliveWithoutCalls());
+    }
+
+    /**
+     * Builds the default service config of a channel from its properties, used for everything that can't be set on
+     * the {@link ManagedChannelBuilder} directly.
+     */
+    private Map<String, Object> buildServiceConfig(GrpcChannelProperties channelProperties, String policy) {
+        Map<String, Object> serviceConfig = new HashMap<>();
+        Map<String, Object> policyConfig = new HashMap<>();
+        if (NacosLocalityLoadBalancerProvider.POLICY_NAME.equals(policy)) {
+            String cluster = channelProperties.getLocality().getCluster();
+            if (cluster == null) {
+                cluster = applicationContext.getBeanProvider(NacosDiscoveryProperties.class)
+                        .getIfAvailable(NacosDiscoveryProperties::new).getClusterName();
+            }
+            policyConfig.put(NacosLocalityLoadBalancerProvider.LOCAL_CLUSTER, cluster);
+            policyConfig.put(NacosLocalityLoadBalancerProvider.MIN_LOCAL_READY_FRACTION, channelProperties.getLocality().getMinReadyFraction());
+        } else if (NacosRingHashLoadBalancerProvider.POLICY_NAME.equals(policy)) {
+            policyConfig.put(NacosRingHashLoadBalancerProvider.HASH_HEADER, channelProperties.getRingHash().getHeader());
+            // service config numbers are doubles, like in parsed JSON
+            policyConfig.put(NacosRingHashLoadBalancerProvider.VIRTUAL_NODES, (double) channelProperties.getRingHash().getVirtualNodes());
+        }
+        if (channelProperties.getOutlierDetection().isEnabled()) {
+            if (NACOS_POLICIES.contains(policy)) {
+                policyConfig.put(OutlierDetectionConfig.OUTLIER_DETECTION, buildOutlierDetectionConfig(channelProperties.getOutlierDetection()));
+            } else {
+                logger.warn("Outlier detection needs one of the {} policies, it is disabled for {}.", NACOS_POLICIES, policy);
+            }
+        }
+        if (channelProperties.getSlowStart().isEnabled()) {
+            if (NACOS_POLICIES.contains(policy) && !NacosRingHashLoadBalancerProvider.POLICY_NAME.equals(policy)) {
+                Map<String, Object> slowStart = new HashMap<>();
+                slowStart.put(SlowStartConfig.WINDOW_MILLIS, (double) channelProperties.getSlowStart().getWindow().toMillis());
+                slowStart.put(SlowStartConfig.MIN_WEIGHT_FRACTION, channelProperties.getSlowStart().getMinWeightFraction());
+                policyConfig.put(SlowStartConfig.SLOW_START, slowStart);
+            } else {
+                logger.warn("Slow start is not supported by the {} policy, it is disabled.", policy);
+            }
+        }
+        if (!policyConfig.isEmpty()) {
+            serviceConfig.put("loadBalancingConfig", Collections.singletonList(Collections.singletonMap(policy, policyConfig)));
+        }
+        List<Map<String, Object>> methodConfigs = new ArrayList<>();
+        channelProperties.getMethods().forEach((name, methodConfig) -> methodConfigs.add(buildMethodConfig(name, methodConfig)));
+        if (!methodConfigs.isEmpty()) {
+            serviceConfig.put("methodConfig", methodConfigs);
+        }
+        GrpcChannelProperties.RetryThrottling retryThrottling = channelProperties.getRetryThrottling();
+        if (retryThrottling.getMaxTokens() > 0) {
+            Map<String, Object> throttling = new HashMap<>();
+            throttling.put("maxTokens", (double) retryThrottling.getMaxTokens());
+            throttling.put("tokenRatio", retryThrottling.getTokenRatio());
+            serviceConfig.put("retryThrottling", throttling);
+        }
+        return serviceConfig;
+    }
+
+    /**
+     * Builds the service config entry of a method, or of all methods of a service.
+     *
+     * @param name {@code package.Service} or {@code package.Service/Method}.
+     */
+    private Map<String, Object> buildMethodConfig(String name, GrpcChannelProperties.MethodConfig methodConfig) {
+        Map<String, Object> methodName = new HashMap<>();
+        int slash = name.indexOf('/');
+        methodName.put("service", slash < 0 ? name : name.substring(0, slash));
+        if (slash >= 0) {
+            methodName.put("method", name.substring(slash + 1));
+        }
+        Map<String, Object> config = new HashMap<>();
+        config.put("name", Collections.singletonList(methodName));
+        if (methodConfig.getTimeout() != null) {
+            config.put("timeout", toServiceConfigDuration(methodConfig.getTimeout()));
+        }
+        GrpcChannelProperties.Retry retry = methodConfig.getRetry();
+        GrpcChannelProperties.Hedging hedging = methodConfig.getHedging();
+        Assert.isTrue(retry.getMaxAttempts() < 2 || hedging.getMaxAttempts() < 2,
+                "Method " + name + " can either retry or hedge, not both.");
+        if (retry.getMaxAttempts() > 1) {
+            Map<String, Object> retryPolicy = new HashMap<>();
+            retryPolicy.put("maxAttempts", (double) retry.getMaxAttempts());
+            retryPolicy.put("initialBackoff", toServiceConfigDuration(retry.getInitialBackoff()));
+            retryPolicy.put("maxBackoff", toServiceConfigDuration(retry.getMaxBackoff()));
+            retryPolicy.put("backoffMultiplier", retry.getBackoffMultiplier());
+            retryPolicy.put("retryableStatusCodes", retry.getRetryableStatusCodes().stream().map(Enum::name).collect(Collectors.toList()));
+            config.put("retryPolicy", retryPolicy);
+        }
+        if (hedging.getMaxAttempts() > 1) {
+            Map<String, Object> hedgingPolicy = new HashMap<>();
+            hedgingPolicy.put("maxAttempts", (double) hedging.getMaxAttempts());
+            hedgingPolicy.put("hedgingDelay", toServiceConfigDuration(hedging.getHedgingDelay()));
+            hedgingPolicy.put("nonFatalStatusCodes", hedging.getNonFatalStatusCodes().stream().map(Enum::name).collect(Collectors.toList()));
+            config.put("hedgingPolicy", hedgingPolicy);
+        }
+        return config;
+    }
+
+    /**
+     * @return The largest retry or hedging attempts of any method, the channel caps attempts at this value.
+     */
+    private int getMaxAttempts(GrpcChannelProperties channelProperties) {
+        int maxAttempts = 0;
+        for (GrpcChannelProperties.MethodConfig methodConfig : channelProperties.getMethods().values()) {
+            maxAttempts = Math.max(maxAttempts, Math.max(methodConfig.getRetry().getMaxAttempts(), methodConfig.getHedging().getMaxAttempts()));
+        }
+        return maxAttempts;
+    }
+
+    /**
+     * Formats a duration like the JSON mapping of {@code google.protobuf.Duration}, e.g. {@code 1.500000000s}.
+     */
+    private static String toServiceConfigDuration(Duration duration) {
+        return String.format("%d.%09ds", duration.getSeconds(), duration.getNano());
+    }
+
+    private Map<String, Object> buildOutlierDetectionConfig(GrpcChannelProperties.OutlierDetection outlierDetection) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(OutlierDetectionConfig.CONSECUTIVE_FAILURES, (double) outlierDetection.getConsecutiveFailures());
+        config.put(OutlierDetectionConfig.FAILURE_RATE_THRESHOLD, outlierDetection.getFailureRateThreshold());
+        config.put(OutlierDetectionConfig.MINIMUM_CALLS, (double) outlierDetection.getMinimumCalls());
+        config.put(OutlierDetectionConfig.INTERVAL_MILLIS, (double) outlierDetection.getInterval().toMillis());
+        config.put(OutlierDetectionConfig.BASE_EJECTION_TIME_MILLIS, (double) outlierDetection.getBaseEjectionTime().toMillis());
+        config.put(OutlierDetectionConfig.MAX_EJECTION_TIME_MILLIS, (double) outlierDetection.getMaxEjectionTime().toMillis());
+        config.put(OutlierDetectionConfig.MAX_EJECTED_FRACTION, outlierDetection.getMaxEjectedFraction());
+        return config;
     }
 
     protected String deriveStubFactoryMethodName(final Class<?> stubType) {
@@ -0,0 +1,47 @@
+package com.github.demo.grpc.context;
+
+import com.github.demo.grpc.compression.MessageCompression;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.MethodDescriptor;
+
+import java.util.Map;
+
+/**
+ * Compresses the requests of the configured methods of a channel. Calls that already chose a compressor through their
+ * call options keep it, requests below the minimum size of their method are sent uncompressed.
+ */
+public class GrpcClientCompressionInterceptor implements ClientInterceptor {
+
+    private final MessageCompression defaultCompression;
+
+    private final Map<String, MessageCompression> compressions;
+
+    /**
+     * @param defaultCompression The compression of methods without an entry, null to send them uncompressed.
+     * @param compressions       The compressions keyed by {@code package.Service} or {@code package.Service/Method}.
+     */
+    public GrpcClientCompressionInterceptor(MessageCompression defaultCompression, Map<String, MessageCompression> compressions) {
+        this.defaultCompression = defaultCompression;
+        this.compressions = compressions;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        MessageCompression compression = MessageCompression.lookup(compressions, method.getFullMethodName(), defaultCompression);
+        if (compression == null || callOptions.getCompressor() != null) {
+            return next.newCall(method, callOptions);
+        }
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(
+                next.newCall(method, callOptions.withCompression(compression.getEncoding()))) {
+            @Override
+            public void sendMessage(ReqT message) {
+                delegate().setMessageCompression(compression.shouldCompress(message));
+                super.sendMessage(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.demo.grpc.context;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives the calls of a {@code @GrpcClient} stub a deadline unless the caller set one.
+ * <p>
+ * The deadline is relative to the start of every call, unlike {@code stub.withDeadlineAfter(...)} which fixes it when
+ * the stub is created. gRPC limits it further to the deadline of the current {@link io.grpc.Context}, so a call made
+ * while serving an inbound call never outlives that call and is cancelled together with it.
+ */
+public class GrpcClientDeadlineInterceptor implements ClientInterceptor {
+
+    private final long defaultDeadlineNanos;
+
+    private final Map<String, Long> methodDeadlineNanos;
+
+    /**
+     * @param defaultDeadline The deadline of all methods, null for none.
+     * @param methodDeadlines The deadlines of single methods, keyed by bare or full method name.
+     */
+    public GrpcClientDeadlineInterceptor(Duration defaultDeadline, Map<String, Duration> methodDeadlines) {
+        this.defaultDeadlineNanos = defaultDeadline == null ? 0 : defaultDeadline.toNanos();
+        this.methodDeadlineNanos = new HashMap<>(methodDeadlines.size() * 2);
+        methodDeadlines.forEach((method, deadline) -> this.methodDeadlineNanos.put(method, deadline.toNanos()));
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        if (callOptions.getDeadline() == null) {
+            long deadlineNanos = getDeadlineNanos(method.getFullMethodName());
+            if (deadlineNanos > 0) {
+                callOptions = callOptions.withDeadlineAfter(deadlineNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        return next.newCall(method, callOptions);
+    }
+
+    private long getDeadlineNanos(String fullMethodName) {
+        if (methodDeadlineNanos.isEmpty()) {
+            return defaultDeadlineNanos;
+        }
+        Long deadline = methodDeadlineNanos.get(fullMethodName);
+        if (deadline == null) {
+            deadline = methodDeadlineNanos.get(fullMethodName.substring(fullMethodName.lastIndexOf('/') + 1));
+        }
+        return deadline == null ? defaultDeadlineNanos : deadline;
+    }
+}
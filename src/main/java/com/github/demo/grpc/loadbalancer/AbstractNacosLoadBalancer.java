@@ -0,0 +1,612 @@
+package com.github.demo.grpc.loadbalancer;
+
+import com.github.demo.grpc.nacos.NacosAttributes;
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.SHUTDOWN;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Base class of the load balancers that work on the addresses resolved by the
+ * {@link com.github.demo.grpc.nacos.NacosNameResolver}. It keeps one subchannel per resolved address, tracks their
+ * connectivity and asks the subclass for a new picker whenever the set of READY subchannels changes. The attributes
+ * of a resolved address (see {@link com.github.demo.grpc.nacos.NacosAttributes}) stay available through
+ * {@link Subchannel#getAddresses()} and are updated in place when nacos reports new metadata.
+ * <p>
+ * Calls carrying the {@link #TARGET_ADDRESS} option bypass the policy and are sent to the subchannel of that address.
+ * <p>
+ * With an {@link OutlierDetectionConfig} the outcome of every call is counted per subchannel. A subchannel is ejected
+ * from picking after a number of consecutive failures or when its failure rate within an interval exceeds the
+ * threshold. Ejections last the base ejection time times the number of recent ejections, and never cover more than
+ * the configured share of the subchannels. Only UNAVAILABLE, DEADLINE_EXCEEDED, INTERNAL, UNKNOWN and DATA_LOSS count
+ * as failures, application errors don't.
+ * <p>
+ * With a {@link SlowStartConfig} instances that published their start time get a growing share of the calls until the
+ * slow start window has passed, see {@link #getSlowStartFactor(Subchannel)}. The picker is rebuilt regularly while
+ * any READY instance is still ramping up.
+ */
+public abstract class AbstractNacosLoadBalancer extends LoadBalancer {
+
+    /**
+     * Pins a call to the subchannel of the given resolved address, used e.g. for broadcasts to every instance.
+     */
+    public static final CallOptions.Key<SocketAddress> TARGET_ADDRESS = CallOptions.Key.create("nacos-target-address");
+
+    private static final Attributes.Key<Ref<ConnectivityStateInfo>> STATE_INFO = Attributes.Key.create("state-info");
+
+    private static final Attributes.Key<OutlierStats> OUTLIER_STATS = Attributes.Key.create("outlier-stats");
+
+    private static final Status EMPTY_OK = Status.OK.withDescription("no subchannels ready");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    protected final Helper helper;
+
+    private final Map<EquivalentAddressGroup, Subchannel> subchannels = new HashMap<>();
+
+    private ConnectivityState currentState;
+
+    private OutlierDetectionConfig outlierDetection;
+
+    private SynchronizationContext.ScheduledHandle outlierDetectionTimer;
+
+    private SlowStartConfig slowStart;
+
+    private SynchronizationContext.ScheduledHandle slowStartTimer;
+
+    protected AbstractNacosLoadBalancer(final Helper helper) {
+        this.helper = requireNonNull(helper, "helper");
+    }
+
+    /**
+     * Creates the picker for the given READY subchannels.
+     *
+     * @param readySubchannels The subchannels that can take calls, never empty.
+     * @return The picker that should be used by the channel.
+     */
+    protected abstract SubchannelPicker newPicker(List<Subchannel> readySubchannels);
+
+    @Override
+    public void handleResolvedAddresses(final ResolvedAddresses resolvedAddresses) {
+        final Object policyConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+        updateOutlierDetection(policyConfig instanceof NacosLoadBalancerConfig ?
+                ((NacosLoadBalancerConfig) policyConfig).getOutlierDetection() : null);
+        this.slowStart = policyConfig instanceof NacosLoadBalancerConfig ?
+                ((NacosLoadBalancerConfig) policyConfig).getSlowStart() : null;
+
+        final Map<EquivalentAddressGroup, EquivalentAddressGroup> latest = new LinkedHashMap<>();
+        for (final EquivalentAddressGroup group : resolvedAddresses.getAddresses()) {
+            latest.put(stripAttributes(group), group);
+        }
+
+        final List<Subchannel> removed = new ArrayList<>();
+        this.subchannels.entrySet().removeIf(entry -> {
+            if (latest.containsKey(entry.getKey())) {
+                return false;
+            }
+            removed.add(entry.getValue());
+            return true;
+        });
+
+        for (final Map.Entry<EquivalentAddressGroup, EquivalentAddressGroup> entry : latest.entrySet()) {
+            final Subchannel existing = this.subchannels.get(entry.getKey());
+            if (existing != null) {
+                if (!existing.getAddresses().getAttributes().equals(entry.getValue().getAttributes())) {
+                    existing.updateAddresses(Collections.singletonList(entry.getValue()));
+                }
+                continue;
+            }
+            final Subchannel subchannel = this.helper.createSubchannel(CreateSubchannelArgs.newBuilder()
+                    .setAddresses(entry.getValue())
+                    .setAttributes(Attributes.newBuilder()
+                            .set(STATE_INFO, new Ref<>(ConnectivityStateInfo.forNonError(IDLE)))
+                            .set(OUTLIER_STATS, new OutlierStats())
+                            .build())
+                    .build());
+            subchannel.getAttributes().get(OUTLIER_STATS).subchannel = subchannel;
+            subchannel.start(stateInfo -> processSubchannelState(subchannel, stateInfo));
+            this.subchannels.put(entry.getKey(), subchannel);
+            subchannel.requestConnection();
+        }
+
+        updateBalancingState();
+
+        for (final Subchannel subchannel : removed) {
+            shutdownSubchannel(subchannel);
+        }
+    }
+
+    @Override
+    public void handleNameResolutionError(final Status error) {
+        if (this.currentState != READY) {
+            updateBalancingState(TRANSIENT_FAILURE, new EmptyPicker(error));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        updateOutlierDetection(null);
+        if (this.slowStartTimer != null) {
+            this.slowStartTimer.cancel();
+            this.slowStartTimer = null;
+        }
+        for (final Subchannel subchannel : this.subchannels.values()) {
+            shutdownSubchannel(subchannel);
+        }
+        this.subchannels.clear();
+    }
+
+    /**
+     * @return All subchannels regardless of their state.
+     */
+    protected Collection<Subchannel> getSubchannels() {
+        return Collections.unmodifiableCollection(this.subchannels.values());
+    }
+
+    /**
+     * Called after a subchannel was removed because its address is no longer resolved or the balancer shuts down.
+     *
+     * @param subchannel The removed subchannel.
+     */
+    protected void onSubchannelShutdown(final Subchannel subchannel) {
+    }
+
+    /**
+     * The share of its normal traffic a subchannel should get while its instance is slow starting.
+     *
+     * @param subchannel The subchannel to check.
+     * @return A value above 0 and at most 1, 1 if slow start is disabled or the instance did not publish its start
+     * time.
+     */
+    protected double getSlowStartFactor(final Subchannel subchannel) {
+        final Long startTime = NacosAttributes.getStartTime(subchannel.getAddresses().getAttributes());
+        if (this.slowStart == null || startTime == null) {
+            return 1;
+        }
+        return this.slowStart.getFactor(startTime, System.currentTimeMillis());
+    }
+
+    /**
+     * @return The nacos weight of the subchannel's instance reduced by its {@link #getSlowStartFactor(Subchannel)}.
+     */
+    protected double getWeight(final Subchannel subchannel) {
+        return NacosAttributes.getWeight(subchannel.getAddresses().getAttributes()) * getSlowStartFactor(subchannel);
+    }
+
+    /**
+     * Recomputes the aggregated state and asks for a new picker if any subchannel is READY. Subclasses may call this
+     * whenever they want the picker to be rebuilt, e.g. after their own per-subchannel state changed.
+     */
+    protected void updateBalancingState() {
+        final List<Subchannel> ready = new ArrayList<>(this.subchannels.size());
+        final List<Subchannel> ejected = new ArrayList<>(0);
+        for (final Subchannel subchannel : this.subchannels.values()) {
+            if (getStateInfo(subchannel).getState() == READY) {
+                (getOutlierStats(subchannel).isEjected() ? ejected : ready).add(subchannel);
+            }
+        }
+        if (ready.isEmpty()) {
+            // ejected instances are still better than none
+            ready.addAll(ejected);
+        }
+        if (!ready.isEmpty()) {
+            updateBalancingState(READY, new TargetingPicker(newPicker(ready), this.subchannels.values(),
+                    this.outlierDetection != null));
+            scheduleSlowStartUpdate(ready);
+            return;
+        }
+        boolean connecting = false;
+        Status aggregatedStatus = EMPTY_OK;
+        for (final Subchannel subchannel : this.subchannels.values()) {
+            final ConnectivityStateInfo stateInfo = getStateInfo(subchannel);
+            if (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE) {
+                connecting = true;
+            }
+            if (aggregatedStatus == EMPTY_OK || !aggregatedStatus.isOk()) {
+                aggregatedStatus = stateInfo.getStatus();
+            }
+        }
+        updateBalancingState(connecting ? CONNECTING : TRANSIENT_FAILURE, new EmptyPicker(aggregatedStatus));
+    }
+
+    protected static ConnectivityStateInfo getStateInfo(final Subchannel subchannel) {
+        return requireNonNull(subchannel.getAttributes().get(STATE_INFO), "STATE_INFO").value;
+    }
+
+    private static OutlierStats getOutlierStats(final Subchannel subchannel) {
+        return requireNonNull(subchannel.getAttributes().get(OUTLIER_STATS), "OUTLIER_STATS");
+    }
+
+    /**
+     * Rebuilds the picker in steps of a tenth of the window, but at most once a second, while any of the given
+     * subchannels is ramping up.
+     */
+    private void scheduleSlowStartUpdate(final List<Subchannel> ready) {
+        if (this.slowStart == null || (this.slowStartTimer != null && this.slowStartTimer.isPending())) {
+            return;
+        }
+        boolean ramping = false;
+        for (final Subchannel subchannel : ready) {
+            if (getSlowStartFactor(subchannel) < 1) {
+                ramping = true;
+                break;
+            }
+        }
+        if (!ramping) {
+            return;
+        }
+        final long delayNanos = Math.max(this.slowStart.getWindowNanos() / 10, TimeUnit.SECONDS.toNanos(1));
+        this.slowStartTimer = this.helper.getSynchronizationContext().schedule(() -> {
+            this.slowStartTimer = null;
+            updateBalancingState();
+        }, delayNanos, TimeUnit.NANOSECONDS, this.helper.getScheduledExecutorService());
+    }
+
+    private void updateOutlierDetection(final OutlierDetectionConfig config) {
+        if (config == this.outlierDetection) {
+            // every resolution passes the same parsed config, keep the interval running
+            return;
+        }
+        if (this.outlierDetectionTimer != null) {
+            this.outlierDetectionTimer.cancel();
+            this.outlierDetectionTimer = null;
+        }
+        final boolean hadEjections = this.outlierDetection != null && config == null;
+        this.outlierDetection = config;
+        if (config != null) {
+            scheduleOutlierDetection();
+        } else if (hadEjections) {
+            for (final Subchannel subchannel : this.subchannels.values()) {
+                getOutlierStats(subchannel).reset();
+            }
+        }
+    }
+
+    private void scheduleOutlierDetection() {
+        this.outlierDetectionTimer = this.helper.getSynchronizationContext().schedule(() -> {
+            detectOutliers();
+            scheduleOutlierDetection();
+        }, this.outlierDetection.getIntervalNanos(), TimeUnit.NANOSECONDS, this.helper.getScheduledExecutorService());
+    }
+
+    /**
+     * Runs once per interval: ends expired ejections and ejects the subchannels whose failure rate is too high.
+     */
+    private void detectOutliers() {
+        final OutlierDetectionConfig config = this.outlierDetection;
+        final long now = System.nanoTime();
+        boolean changed = false;
+        for (final Subchannel subchannel : this.subchannels.values()) {
+            final OutlierStats stats = getOutlierStats(subchannel);
+            if (stats.isEjected()) {
+                if (now - stats.ejectedUntilNanos >= 0) {
+                    stats.ejectedUntilNanos = 0;
+                    changed = true;
+                }
+            } else if (stats.ejections > 0) {
+                // every healthy interval takes back one ejection
+                stats.ejections--;
+            }
+        }
+        for (final Subchannel subchannel : this.subchannels.values()) {
+            final OutlierStats stats = getOutlierStats(subchannel);
+            final long failures = stats.failures.sumThenReset();
+            final long calls = failures + stats.successes.sumThenReset();
+            if (!stats.isEjected() && calls > 0 && calls >= config.getMinimumCalls()
+                    && (double) failures / calls > config.getFailureRateThreshold()) {
+                changed |= eject(subchannel, stats, now, failures + " of " + calls + " calls failed");
+            }
+        }
+        if (changed) {
+            updateBalancingState();
+        }
+    }
+
+    private void onConsecutiveFailures(final OutlierStats stats) {
+        final OutlierDetectionConfig config = this.outlierDetection;
+        if (config == null || stats.isEjected() || this.subchannels.get(stripAttributes(stats.subchannel.getAddresses())) != stats.subchannel) {
+            return;
+        }
+        if (eject(stats.subchannel, stats, System.nanoTime(), config.getConsecutiveFailures() + " calls failed in a row")) {
+            updateBalancingState();
+        }
+    }
+
+    private boolean eject(final Subchannel subchannel, final OutlierStats stats, final long now, final String reason) {
+        final OutlierDetectionConfig config = this.outlierDetection;
+        int ejected = 0;
+        for (final Subchannel other : this.subchannels.values()) {
+            if (getOutlierStats(other).isEjected()) {
+                ejected++;
+            }
+        }
+        if (ejected + 1 > config.getMaxEjectedFraction() * this.subchannels.size()) {
+            return false;
+        }
+        stats.ejections++;
+        final long ejectionNanos = Math.min(config.getBaseEjectionTimeNanos() * stats.ejections,
+                Math.max(config.getMaxEjectionTimeNanos(), config.getBaseEjectionTimeNanos()));
+        // 0 means not ejected
+        stats.ejectedUntilNanos = (now + ejectionNanos) | 1;
+        stats.consecutiveFailures.set(0);
+        logger.warn("Ejected {} for {} ms, {}.", subchannel.getAddresses().getAddresses(),
+                TimeUnit.NANOSECONDS.toMillis(ejectionNanos), reason);
+        return true;
+    }
+
+    private void processSubchannelState(final Subchannel subchannel, final ConnectivityStateInfo stateInfo) {
+        if (this.subchannels.get(stripAttributes(subchannel.getAddresses())) != subchannel) {
+            return;
+        }
+        if (stateInfo.getState() == TRANSIENT_FAILURE || stateInfo.getState() == IDLE) {
+            this.helper.refreshNameResolution();
+        }
+        if (stateInfo.getState() == IDLE) {
+            subchannel.requestConnection();
+        }
+        final Ref<ConnectivityStateInfo> stateInfoRef = subchannel.getAttributes().get(STATE_INFO);
+        if (stateInfoRef.value.getState() == TRANSIENT_FAILURE
+                && (stateInfo.getState() == CONNECTING || stateInfo.getState() == IDLE)) {
+            // keep reporting the failure until the subchannel becomes READY again
+            return;
+        }
+        stateInfoRef.value = stateInfo;
+        updateBalancingState();
+    }
+
+    private void shutdownSubchannel(final Subchannel subchannel) {
+        subchannel.shutdown();
+        subchannel.getAttributes().get(STATE_INFO).value = ConnectivityStateInfo.forNonError(SHUTDOWN);
+        onSubchannelShutdown(subchannel);
+    }
+
+    private void updateBalancingState(final ConnectivityState state, final SubchannelPicker picker) {
+        this.currentState = state;
+        this.helper.updateBalancingState(state, picker);
+    }
+
+    private static EquivalentAddressGroup stripAttributes(final EquivalentAddressGroup group) {
+        return new EquivalentAddressGroup(group.getAddresses());
+    }
+
+    /**
+     * Picker used while no subchannel is READY.
+     */
+    static final class EmptyPicker extends SubchannelPicker {
+
+        private final Status status;
+
+        EmptyPicker(final Status status) {
+            this.status = requireNonNull(status, "status");
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            return this.status.isOk() ? PickResult.withNoResult() : PickResult.withError(this.status);
+        }
+    }
+
+    /**
+     * Serves calls with a {@link #TARGET_ADDRESS} from the subchannel of that address and delegates all others.
+     */
+    static final class TargetingPicker extends SubchannelPicker {
+
+        private final SubchannelPicker delegate;
+        private final Map<SocketAddress, Subchannel> subchannelsByAddress;
+        private final boolean countOutcomes;
+
+        TargetingPicker(final SubchannelPicker delegate, final Collection<Subchannel> subchannels,
+                        final boolean countOutcomes) {
+            this.delegate = delegate;
+            this.countOutcomes = countOutcomes;
+            this.subchannelsByAddress = new HashMap<>(subchannels.size() * 2);
+            for (final Subchannel subchannel : subchannels) {
+                for (final SocketAddress address : subchannel.getAddresses().getAddresses()) {
+                    this.subchannelsByAddress.put(address, subchannel);
+                }
+            }
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            final SocketAddress target = args.getCallOptions().getOption(TARGET_ADDRESS);
+            if (target == null) {
+                final PickResult result = this.delegate.pickSubchannel(args);
+                if (!this.countOutcomes || result.getSubchannel() == null) {
+                    return result;
+                }
+                final ClientStreamTracer.Factory outcomes = getOutlierStats(result.getSubchannel());
+                final ClientStreamTracer.Factory tracerFactory = result.getStreamTracerFactory();
+                return PickResult.withSubchannel(result.getSubchannel(), tracerFactory == null ? outcomes
+                        : new CompositeTracerFactory(tracerFactory, outcomes));
+            }
+            final Subchannel subchannel = this.subchannelsByAddress.get(target);
+            if (subchannel == null) {
+                return PickResult.withError(Status.UNAVAILABLE.withDescription(target + " is not resolved"));
+            }
+            final ConnectivityStateInfo stateInfo = getStateInfo(subchannel);
+            switch (stateInfo.getState()) {
+                case READY:
+                    return this.countOutcomes ? PickResult.withSubchannel(subchannel, getOutlierStats(subchannel))
+                            : PickResult.withSubchannel(subchannel);
+                case TRANSIENT_FAILURE:
+                    return PickResult.withError(stateInfo.getStatus());
+                default:
+                    // wait for the subchannel to connect
+                    return PickResult.withNoResult();
+            }
+        }
+    }
+
+    /**
+     * The outcome counters and ejection state of a subchannel. Counting happens on the transport threads, the
+     * ejection state is only changed in the synchronization context. Also the tracer factory counting the outcomes:
+     * counting keeps no per-call state, so one shared tracer serves all calls.
+     */
+    private final class OutlierStats extends ClientStreamTracer.Factory {
+
+        final LongAdder successes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        volatile Subchannel subchannel;
+        volatile long ejectedUntilNanos;
+        int ejections;
+
+        private final ClientStreamTracer tracer = new ClientStreamTracer() {
+            @Override
+            public void streamClosed(final Status status) {
+                record(status);
+            }
+        };
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(final ClientStreamTracer.StreamInfo info, final Metadata headers) {
+            return this.tracer;
+        }
+
+        boolean isEjected() {
+            return this.ejectedUntilNanos != 0;
+        }
+
+        void reset() {
+            this.successes.reset();
+            this.failures.reset();
+            this.consecutiveFailures.set(0);
+            this.ejectedUntilNanos = 0;
+            this.ejections = 0;
+        }
+
+        private void record(final Status status) {
+            if (!isFailure(status.getCode())) {
+                this.successes.increment();
+                if (this.consecutiveFailures.get() != 0) {
+                    this.consecutiveFailures.set(0);
+                }
+                return;
+            }
+            this.failures.increment();
+            final OutlierDetectionConfig config = outlierDetection;
+            if (config != null && config.getConsecutiveFailures() > 0
+                    && this.consecutiveFailures.incrementAndGet() == config.getConsecutiveFailures()) {
+                helper.getSynchronizationContext().execute(() -> onConsecutiveFailures(this));
+            }
+        }
+    }
+
+    /**
+     * @return Whether the status means the endpoint failed, as opposed to the application or the client.
+     */
+    static boolean isFailure(final Status.Code code) {
+        switch (code) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case INTERNAL:
+            case UNKNOWN:
+            case DATA_LOSS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Combines the tracer factory of the policy with the one counting outcomes.
+     */
+    private static final class CompositeTracerFactory extends ClientStreamTracer.Factory {
+
+        private final ClientStreamTracer.Factory first;
+        private final ClientStreamTracer.Factory second;
+
+        CompositeTracerFactory(final ClientStreamTracer.Factory first, final ClientStreamTracer.Factory second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(final ClientStreamTracer.StreamInfo info, final Metadata headers) {
+            final ClientStreamTracer firstTracer = this.first.newClientStreamTracer(info, headers);
+            final ClientStreamTracer secondTracer = this.second.newClientStreamTracer(info, headers);
+            return new ClientStreamTracer() {
+                @Override
+                public void streamClosed(final Status status) {
+                    firstTracer.streamClosed(status);
+                    secondTracer.streamClosed(status);
+                }
+
+                @Override
+                public void outboundHeaders() {
+                    firstTracer.outboundHeaders();
+                }
+
+                @Override
+                public void inboundHeaders() {
+                    firstTracer.inboundHeaders();
+                }
+
+                @Override
+                public void inboundTrailers(final Metadata trailers) {
+                    firstTracer.inboundTrailers(trailers);
+                }
+
+                @Override
+                public void outboundMessage(final int seqNo) {
+                    firstTracer.outboundMessage(seqNo);
+                }
+
+                @Override
+                public void inboundMessage(final int seqNo) {
+                    firstTracer.inboundMessage(seqNo);
+                }
+
+                @Override
+                public void outboundWireSize(final long bytes) {
+                    firstTracer.outboundWireSize(bytes);
+                }
+
+                @Override
+                public void inboundWireSize(final long bytes) {
+                    firstTracer.inboundWireSize(bytes);
+                }
+            };
+        }
+    }
+
+    /**
+     * A mutable holder, stored in the immutable subchannel attributes.
+     */
+    static final class Ref<T> {
+
+        volatile T value;
+
+        Ref(final T value) {
+            this.value = value;
+        }
+    }
+}
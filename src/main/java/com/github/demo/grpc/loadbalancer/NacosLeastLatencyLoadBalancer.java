@@ -0,0 +1,130 @@
+package com.github.demo.grpc.loadbalancer;
+
+import io.grpc.ClientStreamTracer;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Power-of-two-choices over the READY subchannels: every pick samples two subchannels at random and takes the one
+ * with the lower {@link PeakEwma#cost()}, which combines the calls in flight with the recent latency. Slow or stalled
+ * endpoints therefore get fewer calls without any coordination between callers. Picking is lock-free.
+ * <p>
+ * A fresh instance has no latency yet and would win most comparisons, so while it slow starts it only keeps a won
+ * pick with the probability of its {@link #getSlowStartFactor(Subchannel)}.
+ * <p>
+ * Only unary calls are measured. The duration of a streaming call is how long the stream was used rather than how
+ * fast the endpoint answered, so streaming calls are picked the same way but leave the estimates untouched. Calls
+ * failing with the statuses outlier detection counts as failures record a penalty, cancelled calls are not measured
+ * and application errors count with their latency.
+ */
+public class NacosLeastLatencyLoadBalancer extends AbstractNacosLoadBalancer {
+
+    static final long DECAY_SECONDS = 10;
+
+    private final Map<Subchannel, PeakEwma> stats = new HashMap<>();
+
+    public NacosLeastLatencyLoadBalancer(final Helper helper) {
+        super(helper);
+    }
+
+    @Override
+    protected SubchannelPicker newPicker(final List<Subchannel> readySubchannels) {
+        final Subchannel[] subchannels = readySubchannels.toArray(new Subchannel[0]);
+        final PeakEwma[] subchannelStats = new PeakEwma[subchannels.length];
+        final double[] slowStartFactors = new double[subchannels.length];
+        for (int i = 0; i < subchannels.length; i++) {
+            subchannelStats[i] = this.stats.computeIfAbsent(subchannels[i],
+                    key -> new PeakEwma(DECAY_SECONDS, TimeUnit.SECONDS));
+            slowStartFactors[i] = getSlowStartFactor(subchannels[i]);
+        }
+        return new PowerOfTwoChoicesPicker(subchannels, subchannelStats, slowStartFactors);
+    }
+
+    @Override
+    protected void onSubchannelShutdown(final Subchannel subchannel) {
+        this.stats.remove(subchannel);
+    }
+
+    static final class PowerOfTwoChoicesPicker extends SubchannelPicker {
+
+        private final Subchannel[] subchannels;
+        private final PeakEwma[] stats;
+        private final ClientStreamTracer.Factory[] tracerFactories;
+        private final double[] slowStartFactors;
+
+        PowerOfTwoChoicesPicker(final Subchannel[] subchannels, final PeakEwma[] stats,
+                                final double[] slowStartFactors) {
+            this.subchannels = subchannels;
+            this.stats = stats;
+            this.slowStartFactors = slowStartFactors;
+            this.tracerFactories = new ClientStreamTracer.Factory[stats.length];
+            for (int i = 0; i < stats.length; i++) {
+                this.tracerFactories[i] = new LatencyTracerFactory(stats[i]);
+            }
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            final int index = nextIndex();
+            if (args.getMethodDescriptor().getType() != MethodDescriptor.MethodType.UNARY) {
+                return PickResult.withSubchannel(this.subchannels[index]);
+            }
+            return PickResult.withSubchannel(this.subchannels[index], this.tracerFactories[index]);
+        }
+
+        private int nextIndex() {
+            final int size = this.subchannels.length;
+            if (size == 1) {
+                return 0;
+            }
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            final boolean firstWins = this.stats[first].cost() <= this.stats[second].cost();
+            final int winner = firstWins ? first : second;
+            final double factor = this.slowStartFactors[winner];
+            if (factor < 1 && random.nextDouble() >= factor) {
+                return firstWins ? second : first;
+            }
+            return winner;
+        }
+    }
+
+    private static final class LatencyTracerFactory extends ClientStreamTracer.Factory {
+
+        private final PeakEwma stats;
+
+        LatencyTracerFactory(final PeakEwma stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(final ClientStreamTracer.StreamInfo info,
+                                                        final Metadata headers) {
+            this.stats.callStarted();
+            final long startNanos = System.nanoTime();
+            return new ClientStreamTracer() {
+                @Override
+                public void streamClosed(final Status status) {
+                    if (isFailure(status.getCode())) {
+                        LatencyTracerFactory.this.stats.callFailed();
+                    } else if (status.getCode() == Status.Code.CANCELLED) {
+                        LatencyTracerFactory.this.stats.callAbandoned();
+                    } else {
+                        LatencyTracerFactory.this.stats.callFinished(System.nanoTime() - startNanos);
+                    }
+                }
+            };
+        }
+    }
+}
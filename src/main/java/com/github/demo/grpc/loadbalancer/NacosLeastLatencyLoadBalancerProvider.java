@@ -0,0 +1,48 @@
+package com.github.demo.grpc.loadbalancer;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+
+import java.util.Map;
+
+/**
+ * Registers the {@value #POLICY_NAME} policy, see {@link NacosLeastLatencyLoadBalancer}. Its
+ * {@code loadBalancingConfig} accepts {@link OutlierDetectionConfig} and {@link SlowStartConfig}.
+ */
+public class NacosLeastLatencyLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "nacos_least_latency";
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(final LoadBalancer.Helper helper) {
+        return new NacosLeastLatencyLoadBalancer(helper);
+    }
+
+    @Override
+    public NameResolver.ConfigOrError parseLoadBalancingPolicyConfig(final Map<String, ?> rawConfig) {
+        try {
+            return NameResolver.ConfigOrError.fromConfig(new NacosLoadBalancerConfig(
+                    OutlierDetectionConfig.parse(rawConfig), SlowStartConfig.parse(rawConfig)));
+        } catch (final RuntimeException e) {
+            return NameResolver.ConfigOrError.fromError(Status.UNAVAILABLE.withCause(e)
+                    .withDescription("Failed to parse " + POLICY_NAME + " config: " + rawConfig));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.demo.grpc.loadbalancer;
+
+/**
+ * The parsed {@code loadBalancingConfig} of a nacos policy, policies with own settings extend it.
+ */
+class NacosLoadBalancerConfig {
+
+    static final NacosLoadBalancerConfig DEFAULT = new NacosLoadBalancerConfig(null, null);
+
+    private final OutlierDetectionConfig outlierDetection;
+    private final SlowStartConfig slowStart;
+
+    NacosLoadBalancerConfig(final OutlierDetectionConfig outlierDetection, final SlowStartConfig slowStart) {
+        this.outlierDetection = outlierDetection;
+        this.slowStart = slowStart;
+    }
+
+    /**
+     * @return The outlier detection settings or null if outlier detection is disabled.
+     */
+    OutlierDetectionConfig getOutlierDetection() {
+        return this.outlierDetection;
+    }
+
+    /**
+     * @return The slow start settings or null if new instances get their full share at once.
+     */
+    SlowStartConfig getSlowStart() {
+        return this.slowStart;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.demo.grpc.loadbalancer;
+
+import com.github.demo.grpc.nacos.NacosAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prefers the instances in the caller's own nacos cluster. Calls stay inside the local cluster as long as the share of
+ * its instances that are READY is at least {@link LocalityConfig#getMinLocalReadyFraction()}, below that all READY
+ * instances take calls. Within the chosen set calls are distributed by nacos weight like
+ * {@link NacosWeightedLoadBalancer}, including its slow start.
+ */
+public class NacosLocalityLoadBalancer extends AbstractNacosLoadBalancer {
+
+    private LocalityConfig config = LocalityConfig.DEFAULT;
+
+    public NacosLocalityLoadBalancer(final Helper helper) {
+        super(helper);
+    }
+
+    @Override
+    public void handleResolvedAddresses(final ResolvedAddresses resolvedAddresses) {
+        final Object policyConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+        this.config = policyConfig instanceof LocalityConfig ? (LocalityConfig) policyConfig : LocalityConfig.DEFAULT;
+        super.handleResolvedAddresses(resolvedAddresses);
+    }
+
+    @Override
+    protected SubchannelPicker newPicker(final List<Subchannel> readySubchannels) {
+        final String localCluster = this.config.getLocalCluster();
+        if (localCluster == null) {
+            return new NacosWeightedLoadBalancer.WeightedRoundRobinPicker(readySubchannels, this::getWeight);
+        }
+        int localTotal = 0;
+        for (final Subchannel subchannel : getSubchannels()) {
+            if (isLocal(subchannel, localCluster)) {
+                localTotal++;
+            }
+        }
+        final List<Subchannel> localReady = new ArrayList<>(localTotal);
+        for (final Subchannel subchannel : readySubchannels) {
+            if (isLocal(subchannel, localCluster)) {
+                localReady.add(subchannel);
+            }
+        }
+        if (!localReady.isEmpty() && localReady.size() >= this.config.getMinLocalReadyFraction() * localTotal) {
+            return new NacosWeightedLoadBalancer.WeightedRoundRobinPicker(localReady, this::getWeight);
+        }
+        return new NacosWeightedLoadBalancer.WeightedRoundRobinPicker(readySubchannels, this::getWeight);
+    }
+
+    private static boolean isLocal(final Subchannel subchannel, final String localCluster) {
+        return localCluster.equals(NacosAttributes.getCluster(subchannel.getAddresses().getAttributes()));
+    }
+
+    /**
+     * The parsed {@code loadBalancingConfig} of the {@value NacosLocalityLoadBalancerProvider#POLICY_NAME} policy.
+     */
+    static final class LocalityConfig extends NacosLoadBalancerConfig {
+
+        static final LocalityConfig DEFAULT = new LocalityConfig(null, 0.5d, null, null);
+
+        private final String localCluster;
+        private final double minLocalReadyFraction;
+
+        LocalityConfig(final String localCluster, final double minLocalReadyFraction,
+                       final OutlierDetectionConfig outlierDetection, final SlowStartConfig slowStart) {
+            super(outlierDetection, slowStart);
+            this.localCluster = localCluster;
+            this.minLocalReadyFraction = minLocalReadyFraction;
+        }
+
+        /**
+         * @return The cluster of the caller or null if every instance is considered remote.
+         */
+        String getLocalCluster() {
+            return this.localCluster;
+        }
+
+        /**
+         * @return The share of local instances that must be READY to keep calls inside the local cluster.
+         */
+        double getMinLocalReadyFraction() {
+            return this.minLocalReadyFraction;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.demo.grpc.loadbalancer;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+
+import java.util.Map;
+
+/**
+ * Registers the {@value #POLICY_NAME} policy, see {@link NacosLocalityLoadBalancer}. Its {@code loadBalancingConfig}
+ * accepts {@value #LOCAL_CLUSTER}, {@value #MIN_LOCAL_READY_FRACTION}, {@link OutlierDetectionConfig} and
+ * {@link SlowStartConfig}.
+ */
+public class NacosLocalityLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "nacos_locality";
+
+    public static final String LOCAL_CLUSTER = "localCluster";
+    public static final String MIN_LOCAL_READY_FRACTION = "minLocalReadyFraction";
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(final LoadBalancer.Helper helper) {
+        return new NacosLocalityLoadBalancer(helper);
+    }
+
+    @Override
+    public NameResolver.ConfigOrError parseLoadBalancingPolicyConfig(final Map<String, ?> rawConfig) {
+        try {
+            final Object localCluster = rawConfig.get(LOCAL_CLUSTER);
+            final Object fraction = rawConfig.get(MIN_LOCAL_READY_FRACTION);
+            final double minLocalReadyFraction = fraction == null ?
+                    NacosLocalityLoadBalancer.LocalityConfig.DEFAULT.getMinLocalReadyFraction() :
+                    ((Number) fraction).doubleValue();
+            if (minLocalReadyFraction < 0 || minLocalReadyFraction > 1) {
+                return NameResolver.ConfigOrError.fromError(Status.UNAVAILABLE.withDescription(
+                        MIN_LOCAL_READY_FRACTION + " must be between 0 and 1, but was " + minLocalReadyFraction));
+            }
+            return NameResolver.ConfigOrError.fromConfig(new NacosLocalityLoadBalancer.LocalityConfig(
+                    (String) localCluster, minLocalReadyFraction, OutlierDetectionConfig.parse(rawConfig),
+                    SlowStartConfig.parse(rawConfig)));
+        } catch (final RuntimeException e) {
+            return NameResolver.ConfigOrError.fromError(Status.UNAVAILABLE.withCause(e)
+                    .withDescription("Failed to parse " + POLICY_NAME + " config: " + rawConfig));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.demo.grpc.loadbalancer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.grpc.CallOptions;
+import io.grpc.Metadata;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Consistent hashing over the resolved instances. Every instance is placed on a hash ring with a number of virtual
+ * nodes, a call is sent to the first READY instance at or after the hash of its key. The ring is built from all
+ * resolved instances rather than the READY ones, so a key only moves when nacos adds or removes the instance that
+ * owns it, or temporarily while that instance is not READY.
+ * <p>
+ * The key is taken from the {@link #HASH_KEY} call option, e.g. {@code stub.withOption(HASH_KEY, userId)}, or from
+ * the configured metadata header. Calls without a key go to a random READY instance.
+ */
+public class NacosRingHashLoadBalancer extends AbstractNacosLoadBalancer {
+
+    /**
+     * The call option carrying the hash key of a call.
+     */
+    public static final CallOptions.Key<String> HASH_KEY = CallOptions.Key.create("nacos-hash-key");
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private RingHashConfig config = RingHashConfig.DEFAULT;
+    private Metadata.Key<String> hashHeader = RingHashConfig.DEFAULT.getHashHeaderKey();
+    private Ring ring = Ring.EMPTY;
+    private boolean ringOutdated = true;
+
+    public NacosRingHashLoadBalancer(final Helper helper) {
+        super(helper);
+    }
+
+    @Override
+    public void handleResolvedAddresses(final ResolvedAddresses resolvedAddresses) {
+        final Object policyConfig = resolvedAddresses.getLoadBalancingPolicyConfig();
+        this.config = policyConfig instanceof RingHashConfig ? (RingHashConfig) policyConfig : RingHashConfig.DEFAULT;
+        this.hashHeader = this.config.getHashHeaderKey();
+        this.ringOutdated = true;
+        super.handleResolvedAddresses(resolvedAddresses);
+    }
+
+    @Override
+    protected SubchannelPicker newPicker(final List<Subchannel> readySubchannels) {
+        if (this.ringOutdated) {
+            this.ring = Ring.build(getSubchannels(), this.config.getVirtualNodes());
+            this.ringOutdated = false;
+        }
+        return new RingHashPicker(this.ring, readySubchannels, this.hashHeader);
+    }
+
+    static long hash(final String key) {
+        return HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static String endpointKey(final Subchannel subchannel) {
+        final List<SocketAddress> addresses = subchannel.getAddresses().getAddresses();
+        final SocketAddress address = addresses.get(0);
+        if (address instanceof InetSocketAddress) {
+            final InetSocketAddress inetAddress = (InetSocketAddress) address;
+            return inetAddress.getHostString() + ':' + inetAddress.getPort();
+        }
+        return address.toString();
+    }
+
+    /**
+     * The sorted virtual nodes of all resolved subchannels.
+     */
+    static final class Ring {
+
+        static final Ring EMPTY = new Ring(new long[0], new Subchannel[0]);
+
+        private final long[] hashes;
+        private final Subchannel[] owners;
+
+        private Ring(final long[] hashes, final Subchannel[] owners) {
+            this.hashes = hashes;
+            this.owners = owners;
+        }
+
+        static Ring build(final Collection<Subchannel> subchannels, final int virtualNodes) {
+            final int size = subchannels.size() * virtualNodes;
+            final long[][] nodes = new long[size][];
+            final Subchannel[] indexed = subchannels.toArray(new Subchannel[0]);
+            int n = 0;
+            for (int i = 0; i < indexed.length; i++) {
+                final String endpointKey = endpointKey(indexed[i]);
+                for (int v = 0; v < virtualNodes; v++) {
+                    nodes[n++] = new long[]{hash(endpointKey + '_' + v), i};
+                }
+            }
+            Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+            final long[] hashes = new long[size];
+            final Subchannel[] owners = new Subchannel[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = nodes[i][0];
+                owners[i] = indexed[(int) nodes[i][1]];
+            }
+            return new Ring(hashes, owners);
+        }
+
+        /**
+         * Walks the ring clockwise from the given hash and returns the first owner that is READY.
+         */
+        Subchannel lookup(final long hash, final Set<Subchannel> ready) {
+            int index = Arrays.binarySearch(this.hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            for (int i = 0; i < this.owners.length; i++) {
+                final Subchannel owner = this.owners[(index + i) % this.owners.length];
+                if (ready.contains(owner)) {
+                    return owner;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class RingHashPicker extends SubchannelPicker {
+
+        private final Ring ring;
+        private final Subchannel[] readySubchannels;
+        private final Set<Subchannel> ready;
+        private final Metadata.Key<String> hashHeader;
+
+        RingHashPicker(final Ring ring, final List<Subchannel> readySubchannels, final Metadata.Key<String> hashHeader) {
+            this.ring = ring;
+            this.readySubchannels = readySubchannels.toArray(new Subchannel[0]);
+            final Set<Subchannel> readySet = Collections.newSetFromMap(new IdentityHashMap<>());
+            readySet.addAll(readySubchannels);
+            this.ready = readySet;
+            this.hashHeader = hashHeader;
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            String key = args.getCallOptions().getOption(HASH_KEY);
+            if (key == null && this.hashHeader != null) {
+                key = args.getHeaders().get(this.hashHeader);
+            }
+            Subchannel subchannel = key == null ? null : this.ring.lookup(hash(key), this.ready);
+            if (subchannel == null) {
+                subchannel = this.readySubchannels[ThreadLocalRandom.current().nextInt(this.readySubchannels.length)];
+            }
+            return PickResult.withSubchannel(subchannel);
+        }
+    }
+
+    /**
+     * The parsed {@code loadBalancingConfig} of the {@value NacosRingHashLoadBalancerProvider#POLICY_NAME} policy.
+     */
+    static final class RingHashConfig extends NacosLoadBalancerConfig {
+
+        static final String DEFAULT_HASH_HEADER = "x-hash-key";
+
+        static final RingHashConfig DEFAULT = new RingHashConfig(DEFAULT_HASH_HEADER, 100, null);
+
+        private final String hashHeader;
+        private final int virtualNodes;
+
+        RingHashConfig(final String hashHeader, final int virtualNodes, final OutlierDetectionConfig outlierDetection) {
+            // moving load off a key's instance would break the affinity, so the ring never slow starts
+            super(outlierDetection, null);
+            this.hashHeader = hashHeader;
+            this.virtualNodes = virtualNodes;
+        }
+
+        int getVirtualNodes() {
+            return this.virtualNodes;
+        }
+
+        Metadata.Key<String> getHashHeaderKey() {
+            return this.hashHeader == null || this.hashHeader.isEmpty() ?
+                    null : Metadata.Key.of(this.hashHeader, Metadata.ASCII_STRING_MARSHALLER);
+        }
+    }
+}
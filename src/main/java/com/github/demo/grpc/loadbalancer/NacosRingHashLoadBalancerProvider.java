@@ -0,0 +1,60 @@
+package com.github.demo.grpc.loadbalancer;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+
+import java.util.Map;
+
+/**
+ * Registers the {@value #POLICY_NAME} policy, see {@link NacosRingHashLoadBalancer}. Its {@code loadBalancingConfig}
+ * accepts {@value #HASH_HEADER}, {@value #VIRTUAL_NODES} and {@link OutlierDetectionConfig}.
+ */
+public class NacosRingHashLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "nacos_ring_hash";
+
+    public static final String HASH_HEADER = "hashHeader";
+    public static final String VIRTUAL_NODES = "virtualNodes";
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(final LoadBalancer.Helper helper) {
+        return new NacosRingHashLoadBalancer(helper);
+    }
+
+    @Override
+    public NameResolver.ConfigOrError parseLoadBalancingPolicyConfig(final Map<String, ?> rawConfig) {
+        try {
+            final NacosRingHashLoadBalancer.RingHashConfig defaults = NacosRingHashLoadBalancer.RingHashConfig.DEFAULT;
+            final Object hashHeader = rawConfig.get(HASH_HEADER);
+            final Object virtualNodes = rawConfig.get(VIRTUAL_NODES);
+            final int nodes = virtualNodes == null ? defaults.getVirtualNodes() : ((Number) virtualNodes).intValue();
+            if (nodes < 1) {
+                return NameResolver.ConfigOrError.fromError(Status.UNAVAILABLE.withDescription(
+                        VIRTUAL_NODES + " must be positive, but was " + nodes));
+            }
+            return NameResolver.ConfigOrError.fromConfig(new NacosRingHashLoadBalancer.RingHashConfig(
+                    hashHeader == null ? NacosRingHashLoadBalancer.RingHashConfig.DEFAULT_HASH_HEADER : (String) hashHeader, nodes,
+                    OutlierDetectionConfig.parse(rawConfig)));
+        } catch (final RuntimeException e) {
+            return NameResolver.ConfigOrError.fromError(Status.UNAVAILABLE.withCause(e)
+                    .withDescription("Failed to parse " + POLICY_NAME + " config: " + rawConfig));
+        }
+    }
+}
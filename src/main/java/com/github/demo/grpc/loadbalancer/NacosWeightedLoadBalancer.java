@@ -0,0 +1,96 @@
+package com.github.demo.grpc.loadbalancer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Distributes calls over the READY subchannels in proportion to the nacos weight of their instance. The order is
+ * computed once per picker as an earliest-deadline-first schedule, so heavier instances are interleaved with lighter
+ * ones instead of receiving their share in bursts, and picking only advances an index into it without locking.
+ * Instances with a weight of 0 only receive calls if every instance has a weight of 0. Slow starting instances get
+ * their weight reduced by {@link #getSlowStartFactor(Subchannel)}.
+ */
+public class NacosWeightedLoadBalancer extends AbstractNacosLoadBalancer {
+
+    public NacosWeightedLoadBalancer(final Helper helper) {
+        super(helper);
+    }
+
+    @Override
+    protected SubchannelPicker newPicker(final List<Subchannel> readySubchannels) {
+        return new WeightedRoundRobinPicker(readySubchannels, this::getWeight);
+    }
+
+    static final class WeightedRoundRobinPicker extends SubchannelPicker {
+
+        /**
+         * The length the weights are scaled to, a share is accurate to about one slot of the schedule.
+         */
+        static final int SCHEDULE_LENGTH = 1000;
+
+        private final Subchannel[] subchannels;
+        private final int[] schedule;
+        private final AtomicInteger position;
+
+        WeightedRoundRobinPicker(final List<Subchannel> subchannels, final ToDoubleFunction<Subchannel> weight) {
+            this.subchannels = subchannels.toArray(new Subchannel[0]);
+            final double[] weights = new double[this.subchannels.length];
+            double total = 0;
+            for (int i = 0; i < this.subchannels.length; i++) {
+                weights[i] = Math.max(weight.applyAsDouble(this.subchannels[i]), 0d);
+                total += weights[i];
+            }
+            if (total <= 0) {
+                Arrays.fill(weights, 1.0d);
+                total = weights.length;
+            }
+            this.schedule = schedule(weights, total);
+            // start anywhere, so that clients don't all begin with the same subchannel
+            this.position = new AtomicInteger(ThreadLocalRandom.current().nextInt(Math.max(this.schedule.length, 1)));
+        }
+
+        @Override
+        public PickResult pickSubchannel(final PickSubchannelArgs args) {
+            final int index = (this.position.getAndIncrement() & Integer.MAX_VALUE) % this.schedule.length;
+            return PickResult.withSubchannel(this.subchannels[this.schedule[index]]);
+        }
+
+        /**
+         * Scales the weights to integer slots, at least one for a positive weight, and orders the slots by their
+         * deadline: the k-th slot of subchannel i is due at (k + 1) / slots(i).
+         */
+        private static int[] schedule(final double[] weights, final double total) {
+            final double scale = Math.max(SCHEDULE_LENGTH, weights.length) / total;
+            final int[] slots = new int[weights.length];
+            int length = 0;
+            for (int i = 0; i < weights.length; i++) {
+                slots[i] = weights[i] > 0 ? Math.max((int) Math.round(weights[i] * scale), 1) : 0;
+                length += slots[i];
+            }
+            final int[] schedule = new int[length];
+            final int[] taken = new int[weights.length];
+            final PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(weights.length, 1), (a, b) -> {
+                final int byDeadline = Double.compare((taken[a] + 1d) / slots[a], (taken[b] + 1d) / slots[b]);
+                return byDeadline != 0 ? byDeadline : Integer.compare(a, b);
+            });
+            for (int i = 0; i < weights.length; i++) {
+                if (slots[i] > 0) {
+                    queue.add(i);
+                }
+            }
+            for (int n = 0; n < length; n++) {
+                final int next = queue.poll();
+                schedule[n] = next;
+                taken[next]++;
+                if (taken[next] < slots[next]) {
+                    queue.add(next);
+                }
+            }
+            return schedule;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.demo.grpc.loadbalancer;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+
+import java.util.Map;
+
+/**
+ * Registers the {@value #POLICY_NAME} policy, see {@link NacosWeightedLoadBalancer}. Its {@code loadBalancingConfig} accepts
+ * {@link OutlierDetectionConfig} and {@link SlowStartConfig}.
+ */
+public class NacosWeightedLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "nacos_weighted";
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(final LoadBalancer.Helper helper) {
+        return new NacosWeightedLoadBalancer(helper);
+    }
+
+    @Override
+    public NameResolver.ConfigOrError parseLoadBalancingPolicyConfig(final Map<String, ?> rawConfig) {
+        try {
+            return NameResolver.ConfigOrError.fromConfig(new NacosLoadBalancerConfig(
+                    OutlierDetectionConfig.parse(rawConfig), SlowStartConfig.parse(rawConfig)));
+        } catch (final RuntimeException e) {
+            return NameResolver.ConfigOrError.fromError(Status.UNAVAILABLE.withCause(e)
+                    .withDescription("Failed to parse " + POLICY_NAME + " config: " + rawConfig));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.demo.grpc.loadbalancer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outlier detection settings shared by all nacos policies, parsed from the {@value #OUTLIER_DETECTION} entry of
+ * their {@code loadBalancingConfig}. See {@link AbstractNacosLoadBalancer} for how instances are ejected.
+ */
+public final class OutlierDetectionConfig {
+
+    public static final String OUTLIER_DETECTION = "outlierDetection";
+
+    public static final String CONSECUTIVE_FAILURES = "consecutiveFailures";
+    public static final String FAILURE_RATE_THRESHOLD = "failureRateThreshold";
+    public static final String MINIMUM_CALLS = "minimumCalls";
+    public static final String INTERVAL_MILLIS = "intervalMillis";
+    public static final String BASE_EJECTION_TIME_MILLIS = "baseEjectionTimeMillis";
+    public static final String MAX_EJECTION_TIME_MILLIS = "maxEjectionTimeMillis";
+    public static final String MAX_EJECTED_FRACTION = "maxEjectedFraction";
+
+    private final int consecutiveFailures;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long intervalNanos;
+    private final long baseEjectionTimeNanos;
+    private final long maxEjectionTimeNanos;
+    private final double maxEjectedFraction;
+
+    OutlierDetectionConfig(final int consecutiveFailures, final double failureRateThreshold, final int minimumCalls,
+                           final long intervalMillis, final long baseEjectionTimeMillis,
+                           final long maxEjectionTimeMillis, final double maxEjectedFraction) {
+        this.consecutiveFailures = consecutiveFailures;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.baseEjectionTimeNanos = TimeUnit.MILLISECONDS.toNanos(baseEjectionTimeMillis);
+        this.maxEjectionTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxEjectionTimeMillis);
+        this.maxEjectedFraction = maxEjectedFraction;
+    }
+
+    /**
+     * Parses the {@value #OUTLIER_DETECTION} entry of a raw policy config.
+     *
+     * @param rawConfig The raw {@code loadBalancingConfig} of a nacos policy.
+     * @return The parsed config or null if outlier detection is disabled.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    static OutlierDetectionConfig parse(final Map<String, ?> rawConfig) {
+        final Object raw = rawConfig.get(OUTLIER_DETECTION);
+        if (raw == null) {
+            return null;
+        }
+        final Map<?, ?> config = (Map<?, ?>) raw;
+        final OutlierDetectionConfig parsed = new OutlierDetectionConfig(
+                getNumber(config, CONSECUTIVE_FAILURES, 5).intValue(),
+                getNumber(config, FAILURE_RATE_THRESHOLD, 0.5d).doubleValue(),
+                getNumber(config, MINIMUM_CALLS, 20).intValue(),
+                getNumber(config, INTERVAL_MILLIS, 10_000).longValue(),
+                getNumber(config, BASE_EJECTION_TIME_MILLIS, 30_000).longValue(),
+                getNumber(config, MAX_EJECTION_TIME_MILLIS, 300_000).longValue(),
+                getNumber(config, MAX_EJECTED_FRACTION, 0.5d).doubleValue());
+        if (parsed.intervalNanos <= 0 || parsed.baseEjectionTimeNanos <= 0) {
+            throw new IllegalArgumentException(INTERVAL_MILLIS + " and " + BASE_EJECTION_TIME_MILLIS + " must be positive");
+        }
+        if (parsed.failureRateThreshold < 0 || parsed.failureRateThreshold > 1
+                || parsed.maxEjectedFraction < 0 || parsed.maxEjectedFraction > 1) {
+            throw new IllegalArgumentException(FAILURE_RATE_THRESHOLD + " and " + MAX_EJECTED_FRACTION
+                    + " must be between 0 and 1");
+        }
+        return parsed;
+    }
+
+    private static Number getNumber(final Map<?, ?> config, final String key, final Number defaultValue) {
+        final Object value = config.get(key);
+        return value == null ? defaultValue : (Number) value;
+    }
+
+    /**
+     * @return Failed calls in a row that eject an instance immediately, 0 disables it.
+     */
+    int getConsecutiveFailures() {
+        return this.consecutiveFailures;
+    }
+
+    /**
+     * @return The share of failed calls within an interval above which an instance is ejected.
+     */
+    double getFailureRateThreshold() {
+        return this.failureRateThreshold;
+    }
+
+    /**
+     * @return The calls an instance must have received within an interval before its failure rate counts.
+     */
+    int getMinimumCalls() {
+        return this.minimumCalls;
+    }
+
+    long getIntervalNanos() {
+        return this.intervalNanos;
+    }
+
+    /**
+     * @return How long an instance is ejected the first time, every further ejection adds the same time.
+     */
+    long getBaseEjectionTimeNanos() {
+        return this.baseEjectionTimeNanos;
+    }
+
+    long getMaxEjectionTimeNanos() {
+        return this.maxEjectionTimeNanos;
+    }
+
+    /**
+     * @return The largest share of the instances that may be ejected at the same time.
+     */
+    double getMaxEjectedFraction() {
+        return this.maxEjectedFraction;
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.demo.grpc.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free load estimate of a single endpoint: the number of calls in flight and a peak-sensitive exponentially
+ * weighted moving average of the call latency. A latency above the current average replaces it immediately, lower
+ * latencies decay it with the configured time constant, so a stalling endpoint is avoided at once and recovers
+ * gradually. The average also decays while no call finishes, an endpoint that is avoided after a slow call gets calls
+ * again once its estimate fell below the latency of its peers.
+ * <p>
+ * A failed call may fail fast, its duration would make a broken endpoint look like the best one. Failures record a
+ * penalty latency instead, the decay time or the current average if that is higher.
+ */
+final class PeakEwma {
+
+    private final double decayNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The bits of the average latency in nanoseconds and the time of its last update. Concurrent updates may decay
+     * from a slightly outdated timestamp, which only affects the estimate marginally.
+     */
+    private final AtomicLong averageBits = new AtomicLong(Double.doubleToRawLongBits(0d));
+    private final AtomicLong lastUpdateNanos = new AtomicLong(System.nanoTime());
+
+    PeakEwma(final long decayTime, final TimeUnit unit) {
+        this.decayNanos = unit.toNanos(decayTime);
+    }
+
+    void callStarted() {
+        this.inFlight.incrementAndGet();
+    }
+
+    void callFinished(final long latencyNanos) {
+        this.inFlight.decrementAndGet();
+        record(latencyNanos);
+    }
+
+    void callFailed() {
+        this.inFlight.decrementAndGet();
+        record((long) Math.max(getAverage(System.nanoTime()), this.decayNanos));
+    }
+
+    /**
+     * A call that ended without telling anything about the endpoint, e.g. because the client cancelled it.
+     */
+    void callAbandoned() {
+        this.inFlight.decrementAndGet();
+    }
+
+    private void record(final long latencyNanos) {
+        final long now = System.nanoTime();
+        while (true) {
+            final long currentBits = this.averageBits.get();
+            final double current = Double.longBitsToDouble(currentBits);
+            final double next;
+            if (latencyNanos > current) {
+                next = latencyNanos;
+            } else {
+                final long elapsed = Math.max(now - this.lastUpdateNanos.get(), 0L);
+                final double weight = Math.exp(-elapsed / this.decayNanos);
+                next = current * weight + latencyNanos * (1d - weight);
+            }
+            if (this.averageBits.compareAndSet(currentBits, Double.doubleToRawLongBits(next))) {
+                this.lastUpdateNanos.set(now);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The expected cost of sending another call to the endpoint, lower is better.
+     */
+    double cost() {
+        return (getAverage(System.nanoTime()) + 1d) * (this.inFlight.get() + 1);
+    }
+
+    /**
+     * @return The average latency in nanoseconds, decayed by the time since its last update.
+     */
+    double getAverage(final long now) {
+        final double average = Double.longBitsToDouble(this.averageBits.get());
+        final long elapsed = Math.max(now - this.lastUpdateNanos.get(), 0L);
+        return average * Math.exp(-elapsed / this.decayNanos);
+    }
+}
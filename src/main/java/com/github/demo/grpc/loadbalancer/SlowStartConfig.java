@@ -0,0 +1,74 @@
+package com.github.demo.grpc.loadbalancer;
+
+import com.github.demo.grpc.nacos.NacosAttributes;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The slow start settings shared by the nacos policies, parsed from the {@value #SLOW_START} entry of their
+ * {@code loadBalancingConfig}. An instance whose {@link NacosAttributes#START_TIME_METADATA} lies within the window
+ * gets a share of its normal traffic that grows linearly from the minimum weight fraction to 1 over the window.
+ */
+public final class SlowStartConfig {
+
+    public static final String SLOW_START = "slowStart";
+
+    public static final String WINDOW_MILLIS = "windowMillis";
+    public static final String MIN_WEIGHT_FRACTION = "minWeightFraction";
+
+    private final long windowMillis;
+    private final double minWeightFraction;
+
+    SlowStartConfig(final long windowMillis, final double minWeightFraction) {
+        this.windowMillis = windowMillis;
+        this.minWeightFraction = minWeightFraction;
+    }
+
+    /**
+     * Parses the {@value #SLOW_START} entry of a raw policy config.
+     *
+     * @param rawConfig The raw {@code loadBalancingConfig} of a nacos policy.
+     * @return The parsed config or null if slow start is disabled.
+     * @throws IllegalArgumentException If a value is out of range.
+     */
+    static SlowStartConfig parse(final Map<String, ?> rawConfig) {
+        final Object raw = rawConfig.get(SLOW_START);
+        if (raw == null) {
+            return null;
+        }
+        final Map<?, ?> config = (Map<?, ?>) raw;
+        final Object window = config.get(WINDOW_MILLIS);
+        final Object fraction = config.get(MIN_WEIGHT_FRACTION);
+        final SlowStartConfig parsed = new SlowStartConfig(
+                window == null ? 60_000 : ((Number) window).longValue(),
+                fraction == null ? 0.1d : ((Number) fraction).doubleValue());
+        if (parsed.windowMillis <= 0) {
+            throw new IllegalArgumentException(WINDOW_MILLIS + " must be positive");
+        }
+        if (parsed.minWeightFraction <= 0 || parsed.minWeightFraction > 1) {
+            throw new IllegalArgumentException(MIN_WEIGHT_FRACTION + " must be above 0 and at most 1");
+        }
+        return parsed;
+    }
+
+    long getWindowNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(this.windowMillis);
+    }
+
+    /**
+     * Computes the share of its normal traffic an instance gets.
+     *
+     * @param startTimeMillis The time the instance started, in milliseconds since the epoch.
+     * @param nowMillis       The current time in milliseconds since the epoch.
+     * @return A value between the minimum weight fraction and 1.
+     */
+    double getFactor(final long startTimeMillis, final long nowMillis) {
+        // a start time in the future means the clocks are skewed, ramp from the beginning
+        final long elapsed = Math.max(0, nowMillis - startTimeMillis);
+        if (elapsed >= this.windowMillis) {
+            return 1;
+        }
+        return Math.max(this.minWeightFraction, (double) elapsed / this.windowMillis);
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.demo.grpc.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The batches sent for one batched method: how many calls each batch held and how long the calls waited for their
+ * batch to be sent. Sizes are kept in power-of-two buckets like {@link LatencyHistogram}.
+ */
+public final class BatchMetrics {
+
+    private static final int BUCKETS = 17;
+
+    private final String service;
+
+    private final String method;
+
+    private final LongAdder[] sizeBuckets = new LongAdder[BUCKETS];
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder failedBatches = new LongAdder();
+
+    private final LatencyHistogram queueDelay = new LatencyHistogram();
+
+    public BatchMetrics(String service, String method) {
+        this.service = service;
+        this.method = method;
+        for (int i = 0; i < BUCKETS; i++) {
+            sizeBuckets[i] = new LongAdder();
+        }
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    /**
+     * @return The full name of the batched method.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public void recordBatch(int size) {
+        // bucket i holds sizes up to 2^i
+        int bucket = Math.min(32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1), BUCKETS - 1);
+        sizeBuckets[bucket].increment();
+        batches.increment();
+        calls.add(size);
+    }
+
+    public void recordFailedBatch() {
+        failedBatches.increment();
+    }
+
+    /**
+     * @param nanos The time from the call being started to its batch being sent.
+     */
+    public void recordQueueDelay(long nanos) {
+        queueDelay.record(nanos);
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    public LatencyHistogram getQueueDelay() {
+        return queueDelay;
+    }
+
+    /**
+     * @param quantile The quantile, e.g. 0.99.
+     * @return The upper bound of the bucket holding the quantile, 0 if no batch was sent.
+     */
+    public double getSizePercentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = sizeBuckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.demo.grpc.metrics;
+
+import io.grpc.Status;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live counters of the calls sharing one set of tags, e.g. one server method. All recording methods are
+ * lock-free and allocation-free, the getters read the current sums.
+ */
+public final class CallMetrics {
+
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    private final Map<String, String> tags;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final LongAdder messagesReceived = new LongAdder();
+
+    private final LongAdder messagesSent = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LongAdder[] statusCounts = new LongAdder[CODES.length];
+
+    public CallMetrics(Map<String, String> tags) {
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    public void callStarted() {
+        inFlight.increment();
+    }
+
+    public void callFinished(Status.Code code, long latencyNanos) {
+        inFlight.decrement();
+        statusCounts[code.ordinal()].increment();
+        latency.record(latencyNanos);
+    }
+
+    public void messageReceived() {
+        messagesReceived.increment();
+    }
+
+    public void messageSent() {
+        messagesSent.increment();
+    }
+
+    public void bytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    public void bytesSent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    /**
+     * @return The tags identifying these calls, e.g. {@code method}.
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getStatusCount(Status.Code code) {
+        return statusCounts[code.ordinal()].sum();
+    }
+
+    /**
+     * @return The number of finished calls that didn't end with OK.
+     */
+    public long getErrors() {
+        long errors = 0;
+        for (int i = 1; i < statusCounts.length; i++) {
+            errors += statusCounts[i].sum();
+        }
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return "CallMetrics " + tags + " [calls=" + latency.getCount() + ", inFlight=" + getInFlight()
+                + ", errors=" + getErrors() + ", p99=" + latency.getPercentile(0.99, TimeUnit.MILLISECONDS) + "ms]";
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.demo.grpc.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the {@link BatchMetrics} of the batched client methods as {@code grpc.client.batch.*} meters tagged with
+ * the service and method. The meters read the live counters.
+ */
+public class GrpcBatchMeterBinder implements MeterBinder {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final GrpcBatchMetrics metrics;
+
+    public GrpcBatchMeterBinder(GrpcBatchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        metrics.addListener(batchMetrics -> bind(registry, batchMetrics));
+    }
+
+    private void bind(MeterRegistry registry, BatchMetrics batchMetrics) {
+        Tags tags = Tags.of("service", batchMetrics.getService(), "method", batchMetrics.getMethod());
+        FunctionCounter.builder("grpc.client.batch.batches", batchMetrics, BatchMetrics::getBatches).tags(tags).register(registry);
+        FunctionCounter.builder("grpc.client.batch.calls", batchMetrics, BatchMetrics::getCalls).tags(tags).register(registry);
+        FunctionCounter.builder("grpc.client.batch.failed", batchMetrics, BatchMetrics::getFailedBatches).tags(tags).register(registry);
+        FunctionTimer.builder("grpc.client.batch.queue", batchMetrics,
+                m -> m.getQueueDelay().getCount(), m -> m.getQueueDelay().getTotal(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)
+                .tags(tags).register(registry);
+        for (double quantile : QUANTILES) {
+            Gauge.builder("grpc.client.batch.size", batchMetrics, m -> m.getSizePercentile(quantile))
+                    .tags(tags).tag("quantile", Double.toString(quantile)).register(registry);
+            Gauge.builder("grpc.client.batch.queue.delay", batchMetrics, m -> m.getQueueDelay().getPercentile(quantile, TimeUnit.SECONDS))
+                    .tags(tags).tag("quantile", Double.toString(quantile)).baseUnit("seconds").register(registry);
+        }
+    }
+}
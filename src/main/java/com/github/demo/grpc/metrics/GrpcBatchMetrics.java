@@ -0,0 +1,42 @@
+package com.github.demo.grpc.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the {@link BatchMetrics} of every batched client method and tells listeners, e.g. the Micrometer binder,
+ * about new ones.
+ */
+public class GrpcBatchMetrics {
+
+    private final List<BatchMetrics> all = new ArrayList<>();
+
+    private final List<Consumer<BatchMetrics>> listeners = new ArrayList<>();
+
+    /**
+     * @return New metrics for the batches of the given method.
+     */
+    public synchronized BatchMetrics newBatchMetrics(String service, String method) {
+        BatchMetrics batchMetrics = new BatchMetrics(service, method);
+        all.add(batchMetrics);
+        listeners.forEach(listener -> listener.accept(batchMetrics));
+        return batchMetrics;
+    }
+
+    /**
+     * @return A snapshot of all batch metrics created so far.
+     */
+    public synchronized List<BatchMetrics> getBatchMetrics() {
+        return Collections.unmodifiableList(new ArrayList<>(all));
+    }
+
+    /**
+     * Calls the listener for every existing and future {@link BatchMetrics}.
+     */
+    public synchronized void addListener(Consumer<BatchMetrics> listener) {
+        listeners.add(listener);
+        all.forEach(listener);
+    }
+}
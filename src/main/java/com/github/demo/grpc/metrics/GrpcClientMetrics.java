@@ -0,0 +1,248 @@
+package com.github.demo.grpc.metrics;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records latency, errors, calls in flight, messages and wire bytes per target service, method and instance. The
+ * instance is the remote address of the transport the call was sent on, so every retry or hedge attempt is
+ * recorded against the instance that served it.
+ * <p>
+ * Lookups after the first call of a method and instance are plain map reads, recording only adds to striped
+ * counters. The only per-call allocations are the tracer and the call options carrying it.
+ * <p>
+ * Instances come and go with deployments, so the metrics of an instance that had no calls for the idle timeout are
+ * removed together with their meters.
+ */
+public class GrpcClientMetrics extends GrpcMetrics {
+
+    private static final String UNKNOWN_ENDPOINT = "unknown";
+
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, MethodTracerFactory>> services = new ConcurrentHashMap<>();
+
+    private final long idleNanos;
+
+    private final AtomicLong nextExpiryNanos;
+
+    public GrpcClientMetrics() {
+        this(DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param idleTimeout The time after which the metrics of an instance without calls are removed.
+     */
+    public GrpcClientMetrics(Duration idleTimeout) {
+        this.idleNanos = idleTimeout.toNanos();
+        this.nextExpiryNanos = new AtomicLong(System.nanoTime() + idleNanos);
+    }
+
+    /**
+     * @param service The target service of the channel.
+     * @return The interceptor recording the calls of a channel to the given service.
+     */
+    public ClientInterceptor newInterceptor(String service) {
+        ConcurrentHashMap<String, MethodTracerFactory> methods = services.computeIfAbsent(service, key -> new ConcurrentHashMap<>());
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                long now = System.nanoTime();
+                long nextExpiry = nextExpiryNanos.get();
+                if (now - nextExpiry >= 0 && nextExpiryNanos.compareAndSet(nextExpiry, now + idleNanos)) {
+                    expireIdleEndpoints(now);
+                }
+                MethodTracerFactory factory = methods.get(method.getFullMethodName());
+                if (factory == null) {
+                    factory = methods.computeIfAbsent(method.getFullMethodName(), name -> new MethodTracerFactory(service, name));
+                }
+                return next.newCall(method, callOptions.withStreamTracerFactory(factory));
+            }
+        };
+    }
+
+    /**
+     * @return The metrics of the given service, method and instance address, null if there was no such call.
+     */
+    public CallMetrics getCallMetrics(String service, String fullMethodName, SocketAddress endpoint) {
+        Map<String, MethodTracerFactory> methods = services.get(service);
+        MethodTracerFactory factory = methods == null ? null : methods.get(fullMethodName);
+        Endpoint found = factory == null ? null : factory.endpoints.get(endpoint);
+        return found == null ? null : found.callMetrics;
+    }
+
+    private synchronized void expireIdleEndpoints(long now) {
+        for (Map<String, MethodTracerFactory> methods : services.values()) {
+            for (MethodTracerFactory factory : methods.values()) {
+                for (Map.Entry<Object, Endpoint> entry : factory.endpoints.entrySet()) {
+                    Endpoint endpoint = entry.getValue();
+                    if (!endpoint.isIdle(now) || !factory.endpoints.remove(entry.getKey(), endpoint)) {
+                        continue;
+                    }
+                    unregister(endpoint.callMetrics);
+                }
+            }
+        }
+    }
+
+    private final class MethodTracerFactory extends ClientStreamTracer.Factory {
+
+        private final String service;
+
+        private final String method;
+
+        private final ConcurrentHashMap<Object, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+        MethodTracerFactory(String service, String method) {
+            this.service = service;
+            this.method = method;
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+            return new MetricsTracer(this);
+        }
+
+        CallMetrics getEndpoint(SocketAddress address) {
+            Object key = address == null ? UNKNOWN_ENDPOINT : address;
+            Endpoint endpoint = endpoints.get(key);
+            return endpoint != null ? endpoint.callMetrics : getOrCreate(key);
+        }
+
+        private CallMetrics getOrCreate(Object key) {
+            synchronized (GrpcClientMetrics.this) {
+                Endpoint endpoint = endpoints.get(key);
+                if (endpoint == null) {
+                    Map<String, String> tags = new LinkedHashMap<>();
+                    tags.put("service", service);
+                    tags.put("method", method);
+                    tags.put("endpoint", toEndpoint(key));
+                    endpoint = new Endpoint(new CallMetrics(tags), idleNanos);
+                    endpoints.put(key, endpoint);
+                    register(endpoint.callMetrics);
+                }
+                return endpoint.callMetrics;
+            }
+        }
+    }
+
+    /**
+     * The metrics of one method and instance. Whether the instance is idle is told by its call count, so recording
+     * needs no timestamp; the count is only compared when idle endpoints are expired.
+     */
+    private static final class Endpoint {
+
+        private final CallMetrics callMetrics;
+
+        private final long idleNanos;
+
+        private long lastCalls;
+
+        private long lastActiveNanos = System.nanoTime();
+
+        Endpoint(CallMetrics callMetrics, long idleNanos) {
+            this.callMetrics = callMetrics;
+            this.idleNanos = idleNanos;
+        }
+
+        boolean isIdle(long now) {
+            long calls = callMetrics.getLatency().getCount();
+            if (calls != lastCalls || callMetrics.getInFlight() > 0) {
+                lastCalls = calls;
+                lastActiveNanos = now;
+                return false;
+            }
+            return now - lastActiveNanos >= idleNanos;
+        }
+    }
+
+    private static String toEndpoint(Object key) {
+        if (key instanceof InetSocketAddress) {
+            InetSocketAddress address = (InetSocketAddress) key;
+            return address.getHostString() + ":" + address.getPort();
+        }
+        return key.toString();
+    }
+
+    /**
+     * Records against the instance of the transport the stream is created on. A stream that never got a transport,
+     * e.g. because its deadline expired while waiting for one, is recorded against the unknown instance.
+     */
+    private static final class MetricsTracer extends ClientStreamTracer {
+
+        private final MethodTracerFactory factory;
+
+        private final long startNanos = System.nanoTime();
+
+        private volatile CallMetrics callMetrics;
+
+        MetricsTracer(MethodTracerFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void streamCreated(Attributes transportAttrs, Metadata headers) {
+            CallMetrics created = factory.getEndpoint(transportAttrs.get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR));
+            created.callStarted();
+            callMetrics = created;
+        }
+
+        @Override
+        public void inboundMessage(int seqNo) {
+            CallMetrics current = callMetrics;
+            if (current != null) {
+                current.messageReceived();
+            }
+        }
+
+        @Override
+        public void outboundMessage(int seqNo) {
+            CallMetrics current = callMetrics;
+            if (current != null) {
+                current.messageSent();
+            }
+        }
+
+        @Override
+        public void inboundWireSize(long bytes) {
+            CallMetrics current = callMetrics;
+            if (current != null) {
+                current.bytesReceived(bytes);
+            }
+        }
+
+        @Override
+        public void outboundWireSize(long bytes) {
+            CallMetrics current = callMetrics;
+            if (current != null) {
+                current.bytesSent(bytes);
+            }
+        }
+
+        @Override
+        public void streamClosed(Status status) {
+            CallMetrics current = callMetrics;
+            if (current == null) {
+                current = factory.getEndpoint(null);
+                current.callStarted();
+            }
+            current.callFinished(status.getCode(), System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.demo.grpc.metrics;
+
+import com.github.demo.grpc.server.GrpcConcurrencyLimitInterceptor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exposes the limits of a {@link GrpcConcurrencyLimitInterceptor} as {@code grpc.server.concurrency.*} meters. The
+ * meters of idle limits are removed together with the limits.
+ */
+public class GrpcConcurrencyLimitMeterBinder implements MeterBinder {
+
+    private final GrpcConcurrencyLimitInterceptor interceptor;
+
+    private final Map<GrpcConcurrencyLimitInterceptor.Limit, List<Meter>> meters = new ConcurrentHashMap<>();
+
+    public GrpcConcurrencyLimitMeterBinder(GrpcConcurrencyLimitInterceptor interceptor) {
+        this.interceptor = interceptor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        interceptor.addRemovalListener(limit -> {
+            List<Meter> removed = meters.remove(limit);
+            if (removed != null) {
+                removed.forEach(registry::remove);
+            }
+        });
+        interceptor.addListener(limit -> {
+            Tags tags = Tags.of("method", limit.getMethod());
+            if (limit.getPartition() != null) {
+                tags = tags.and("partition", limit.getPartition());
+            }
+            meters.put(limit, Arrays.asList(
+                    Gauge.builder("grpc.server.concurrency.limit", limit, GrpcConcurrencyLimitInterceptor.Limit::getLimit)
+                            .tags(tags).register(registry),
+                    Gauge.builder("grpc.server.concurrency.in-flight", limit, GrpcConcurrencyLimitInterceptor.Limit::getInFlight)
+                            .tags(tags).register(registry),
+                    FunctionCounter.builder("grpc.server.concurrency.accepted", limit, GrpcConcurrencyLimitInterceptor.Limit::getAccepted)
+                            .tags(tags).register(registry),
+                    FunctionCounter.builder("grpc.server.concurrency.rejected", limit, GrpcConcurrencyLimitInterceptor.Limit::getRejected)
+                            .tags(tags).register(registry)));
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.demo.grpc.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Base class of the metric sources, keeps every live {@link CallMetrics} and tells listeners, e.g. the Micrometer
+ * binder, about new and removed ones.
+ */
+public abstract class GrpcMetrics {
+
+    private final List<CallMetrics> all = new ArrayList<>();
+
+    private final List<Consumer<CallMetrics>> listeners = new ArrayList<>();
+
+    private final List<Consumer<CallMetrics>> removalListeners = new ArrayList<>();
+
+    /**
+     * @return A snapshot of all live call metrics.
+     */
+    public synchronized List<CallMetrics> getCallMetrics() {
+        return Collections.unmodifiableList(new ArrayList<>(all));
+    }
+
+    /**
+     * Calls the listener for every existing and future {@link CallMetrics}.
+     */
+    public synchronized void addListener(Consumer<CallMetrics> listener) {
+        listeners.add(listener);
+        all.forEach(listener);
+    }
+
+    /**
+     * Calls the listener for every {@link CallMetrics} that is removed, e.g. because it was idle.
+     */
+    public synchronized void addRemovalListener(Consumer<CallMetrics> listener) {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * Publishes a newly created {@link CallMetrics}, subclasses call it once per instance on their slow path.
+     */
+    protected synchronized void register(CallMetrics callMetrics) {
+        all.add(callMetrics);
+        listeners.forEach(listener -> listener.accept(callMetrics));
+    }
+
+    /**
+     * Removes a {@link CallMetrics} published by {@link #register(CallMetrics)}.
+     */
+    protected synchronized void unregister(CallMetrics callMetrics) {
+        if (all.remove(callMetrics)) {
+            removalListeners.forEach(listener -> listener.accept(callMetrics));
+        }
+    }
+}
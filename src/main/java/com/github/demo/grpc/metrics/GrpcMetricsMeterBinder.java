@@ -0,0 +1,76 @@
+package com.github.demo.grpc.metrics;
+
+import io.grpc.Status;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the {@link CallMetrics} of a {@link GrpcMetrics} source as Micrometer meters named {@code <prefix>.*},
+ * tagged with the tags of the call metrics. The meters read the live counters, nothing is recorded twice. The
+ * {@code calls.latency} quantiles cover the last minute like the percentiles Micrometer publishes, see
+ * {@link LatencyHistogram}. The meters of removed call metrics are removed as well.
+ */
+public class GrpcMetricsMeterBinder implements MeterBinder {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final String prefix;
+
+    private final GrpcMetrics metrics;
+
+    private final Map<CallMetrics, List<Meter>> meters = new ConcurrentHashMap<>();
+
+    public GrpcMetricsMeterBinder(String prefix, GrpcMetrics metrics) {
+        this.prefix = prefix;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        metrics.addRemovalListener(callMetrics -> {
+            List<Meter> removed = meters.remove(callMetrics);
+            if (removed != null) {
+                removed.forEach(registry::remove);
+            }
+        });
+        metrics.addListener(callMetrics -> meters.put(callMetrics, bind(registry, callMetrics)));
+    }
+
+    private List<Meter> bind(MeterRegistry registry, CallMetrics callMetrics) {
+        List<Tag> tagList = new ArrayList<>();
+        for (Map.Entry<String, String> tag : callMetrics.getTags().entrySet()) {
+            tagList.add(Tag.of(tag.getKey(), tag.getValue()));
+        }
+        Tags tags = Tags.of(tagList);
+        List<Meter> bound = new ArrayList<>();
+        bound.add(FunctionTimer.builder(prefix + ".calls", callMetrics,
+                m -> m.getLatency().getCount(), m -> m.getLatency().getTotal(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)
+                .tags(tags).register(registry));
+        for (double quantile : QUANTILES) {
+            bound.add(Gauge.builder(prefix + ".calls.latency", callMetrics, m -> m.getLatency().getPercentile(quantile, TimeUnit.SECONDS))
+                    .tags(tags).tag("quantile", Double.toString(quantile)).baseUnit("seconds").register(registry));
+        }
+        bound.add(Gauge.builder(prefix + ".calls.active", callMetrics, CallMetrics::getInFlight).tags(tags).register(registry));
+        bound.add(FunctionCounter.builder(prefix + ".messages.received", callMetrics, CallMetrics::getMessagesReceived).tags(tags).register(registry));
+        bound.add(FunctionCounter.builder(prefix + ".messages.sent", callMetrics, CallMetrics::getMessagesSent).tags(tags).register(registry));
+        bound.add(FunctionCounter.builder(prefix + ".bytes.received", callMetrics, CallMetrics::getBytesReceived).tags(tags).baseUnit("bytes").register(registry));
+        bound.add(FunctionCounter.builder(prefix + ".bytes.sent", callMetrics, CallMetrics::getBytesSent).tags(tags).baseUnit("bytes").register(registry));
+        for (Status.Code code : Status.Code.values()) {
+            bound.add(FunctionCounter.builder(prefix + ".calls.completed", callMetrics, m -> m.getStatusCount(code))
+                    .tags(tags).tag("status", code.name()).register(registry));
+        }
+        return bound;
+    }
+}
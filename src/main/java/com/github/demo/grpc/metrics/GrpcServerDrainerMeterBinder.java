@@ -0,0 +1,27 @@
+package com.github.demo.grpc.metrics;
+
+import com.github.demo.grpc.server.GrpcServerDrainer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes the calls in flight and the outcome of the graceful shutdown of the {@link GrpcServerDrainer} as
+ * {@code grpc.server.drain.*} meters.
+ */
+public class GrpcServerDrainerMeterBinder implements MeterBinder {
+
+    private final GrpcServerDrainer drainer;
+
+    public GrpcServerDrainerMeterBinder(GrpcServerDrainer drainer) {
+        this.drainer = drainer;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("grpc.server.drain.in-flight", drainer, GrpcServerDrainer::getInFlightCalls).register(registry);
+        FunctionCounter.builder("grpc.server.drain.drained", drainer, GrpcServerDrainer::getDrainedCalls).register(registry);
+        FunctionCounter.builder("grpc.server.drain.cut-off", drainer, GrpcServerDrainer::getCutOffCalls).register(registry);
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.demo.grpc.metrics;
+
+import com.github.demo.grpc.server.GrpcServerExecutor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes the load of the {@link GrpcServerExecutor} as {@code grpc.server.executor.*} meters tagged with the
+ * executor type. Queue depth and active threads are only bound for executors that expose them.
+ */
+public class GrpcServerExecutorMeterBinder implements MeterBinder {
+
+    private final GrpcServerExecutor executor;
+
+    public GrpcServerExecutorMeterBinder(GrpcServerExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("type", executor.getType().name());
+        if (executor.getQueueDepth() >= 0) {
+            Gauge.builder("grpc.server.executor.queued", executor, GrpcServerExecutor::getQueueDepth)
+                    .tags(tags).register(registry);
+        }
+        if (executor.getActiveThreads() >= 0) {
+            Gauge.builder("grpc.server.executor.active", executor, GrpcServerExecutor::getActiveThreads)
+                    .tags(tags).register(registry);
+        }
+        FunctionCounter.builder("grpc.server.executor.rejected", executor, GrpcServerExecutor::getRejectedCalls)
+                .tags(tags).register(registry);
+    }
+}
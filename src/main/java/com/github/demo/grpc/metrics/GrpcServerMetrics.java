@@ -0,0 +1,126 @@
+package com.github.demo.grpc.metrics;
+
+import io.grpc.Metadata;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records latency, calls in flight, messages, wire bytes and status codes per server method. Enabled by
+ * {@code grpc.server.metrics.enabled}.
+ * <p>
+ * Installed as stream tracer rather than interceptor, only tracers see the wire sizes of the messages. It applies to
+ * every service of the server, including the ones that don't apply global interceptors.
+ * <p>
+ * Tracers see the method name the client sent before the server looks it up, so only the methods of the services
+ * passed to {@link #registerService(ServerServiceDefinition)} are recorded by name. Calls of any other method are
+ * recorded as method {@value #UNKNOWN_METHOD}.
+ */
+public class GrpcServerMetrics extends GrpcMetrics {
+
+    /**
+     * The method of the calls to methods that aren't registered.
+     */
+    public static final String UNKNOWN_METHOD = "unknown";
+
+    private final ConcurrentHashMap<String, CallMetrics> methods = new ConcurrentHashMap<>();
+
+    private final CallMetrics unknown = new CallMetrics(Collections.singletonMap("method", UNKNOWN_METHOD));
+
+    private final ServerStreamTracer.Factory tracerFactory = new ServerStreamTracer.Factory() {
+        @Override
+        public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+            return new MetricsTracer(getMethodMetrics(fullMethodName));
+        }
+    };
+
+    public GrpcServerMetrics() {
+        register(unknown);
+    }
+
+    public ServerStreamTracer.Factory getStreamTracerFactory() {
+        return tracerFactory;
+    }
+
+    /**
+     * Records the calls of the methods of the given service by name.
+     */
+    public synchronized void registerService(ServerServiceDefinition service) {
+        for (ServerMethodDefinition<?, ?> method : service.getMethods()) {
+            String fullMethodName = method.getMethodDescriptor().getFullMethodName();
+            if (!methods.containsKey(fullMethodName)) {
+                CallMetrics callMetrics = new CallMetrics(Collections.singletonMap("method", fullMethodName));
+                methods.put(fullMethodName, callMetrics);
+                register(callMetrics);
+            }
+        }
+    }
+
+    /**
+     * @return The metrics of the given method, e.g. {@code helloworld.Greeter/SayHello}, null if it isn't registered.
+     */
+    public CallMetrics getMethod(String fullMethodName) {
+        return methods.get(fullMethodName);
+    }
+
+    /**
+     * @return The metrics of all registered methods, keyed by full method name.
+     */
+    public Map<String, CallMetrics> getMethods() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    /**
+     * @return The metrics of the calls to unregistered methods.
+     */
+    public CallMetrics getUnknownMethod() {
+        return unknown;
+    }
+
+    private CallMetrics getMethodMetrics(String fullMethodName) {
+        CallMetrics callMetrics = methods.get(fullMethodName);
+        return callMetrics != null ? callMetrics : unknown;
+    }
+
+    private static final class MetricsTracer extends ServerStreamTracer {
+
+        private final CallMetrics callMetrics;
+
+        private final long startNanos = System.nanoTime();
+
+        MetricsTracer(CallMetrics callMetrics) {
+            this.callMetrics = callMetrics;
+            callMetrics.callStarted();
+        }
+
+        @Override
+        public void inboundMessage(int seqNo) {
+            callMetrics.messageReceived();
+        }
+
+        @Override
+        public void outboundMessage(int seqNo) {
+            callMetrics.messageSent();
+        }
+
+        @Override
+        public void inboundWireSize(long bytes) {
+            callMetrics.bytesReceived(bytes);
+        }
+
+        @Override
+        public void outboundWireSize(long bytes) {
+            callMetrics.bytesSent(bytes);
+        }
+
+        @Override
+        public void streamClosed(Status status) {
+            callMetrics.callFinished(status.getCode(), System.nanoTime() - startNanos);
+        }
+    }
+}
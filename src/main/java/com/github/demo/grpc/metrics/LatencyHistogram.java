@@ -0,0 +1,136 @@
+package com.github.demo.grpc.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with power-of-two microsecond buckets, from 1 µs up to about 36 minutes. Recording
+ * is a few striped adds and doesn't allocate, percentiles are accurate to a factor of two.
+ * <p>
+ * The count and total cover all latencies ever recorded, the buckets and thus the percentiles only the latencies of
+ * the last window, one minute by default. The window is kept as a ring of slices, the oldest slice is dropped once a
+ * new one starts.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private static final int SLICES = 4;
+
+    private final long sliceNanos;
+
+    /**
+     * The buckets of every slice.
+     */
+    private final LongAdder[][] slices = new LongAdder[SLICES][BUCKETS];
+
+    /**
+     * The number of the slice each ring entry currently holds.
+     */
+    private final AtomicLongArray sliceNumbers = new AtomicLongArray(SLICES);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        this(TimeUnit.MINUTES.toNanos(1));
+    }
+
+    /**
+     * @param windowNanos The time the percentiles look back.
+     */
+    public LatencyHistogram(long windowNanos) {
+        // the current slice is still filling up, the others make up the window
+        this.sliceNanos = Math.max(windowNanos / (SLICES - 1), 1);
+        long current = currentSlice();
+        for (int i = 0; i < SLICES; i++) {
+            for (int j = 0; j < BUCKETS; j++) {
+                slices[i][j] = new LongAdder();
+            }
+            sliceNumbers.set(i, current);
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(nanos, 0) / 1000;
+        // bucket i holds latencies below 2^i µs
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        slice(currentSlice())[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotal(TimeUnit unit) {
+        return unit.convert(totalNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param quantile The quantile, e.g. 0.99.
+     * @param unit     The unit of the result.
+     * @return The upper bound of the bucket holding the quantile, 0 if nothing was recorded within the window.
+     */
+    public double getPercentile(double quantile, TimeUnit unit) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        int bucket = BUCKETS - 1;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                bucket = i;
+                break;
+            }
+        }
+        double micros = 1L << bucket;
+        return micros * TimeUnit.MICROSECONDS.toNanos(1) / unit.toNanos(1);
+    }
+
+    /**
+     * @return The number of latencies per bucket within the window, bucket i holds latencies below 2^i µs.
+     */
+    public long[] getBucketCounts() {
+        long current = currentSlice();
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < SLICES; i++) {
+            if (current - sliceNumbers.get(i) >= SLICES) {
+                continue;
+            }
+            for (int j = 0; j < BUCKETS; j++) {
+                counts[j] += slices[i][j].sum();
+            }
+        }
+        return counts;
+    }
+
+    private long currentSlice() {
+        return Math.floorDiv(System.nanoTime(), sliceNanos);
+    }
+
+    /**
+     * @return The buckets of the given slice, cleared first if they still hold an older slice.
+     */
+    private LongAdder[] slice(long sliceNumber) {
+        int index = (int) Math.floorMod(sliceNumber, (long) SLICES);
+        long held = sliceNumbers.get(index);
+        if (held != sliceNumber && sliceNumbers.compareAndSet(index, held, sliceNumber)) {
+            // latencies recorded while clearing may get lost, the percentiles don't need to be exact
+            for (LongAdder bucket : slices[index]) {
+                bucket.reset();
+            }
+        }
+        return slices[index];
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.demo.grpc.metrics;
+
+import com.github.demo.grpc.nacos.NacosNameResolverProvider;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the refresh counters and the per service stale address age of a {@link NacosNameResolverProvider} as
+ * {@code grpc.nacos.resolver.*} meters. The provider is a lazy bean, it is only looked up once the meters are bound.
+ */
+public class NacosNameResolverMeterBinder implements MeterBinder {
+
+    private final ObjectProvider<NacosNameResolverProvider> providers;
+
+    public NacosNameResolverMeterBinder(ObjectProvider<NacosNameResolverProvider> providers) {
+        this.providers = providers;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        NacosNameResolverProvider provider = providers.getIfAvailable();
+        if (provider == null) {
+            return;
+        }
+        FunctionCounter.builder("grpc.nacos.resolver.refreshes", provider, NacosNameResolverProvider::getRefreshesDone)
+                .tag("result", "done").register(registry);
+        FunctionCounter.builder("grpc.nacos.resolver.refreshes", provider, NacosNameResolverProvider::getRefreshesSkipped)
+                .tag("result", "skipped").register(registry);
+        FunctionCounter.builder("grpc.nacos.resolver.refreshes", provider, NacosNameResolverProvider::getRefreshesCoalesced)
+                .tag("result", "coalesced").register(registry);
+        provider.addServiceListener(service ->
+                TimeGauge.builder("grpc.nacos.resolver.stale-age", provider, TimeUnit.MILLISECONDS,
+                        p -> p.getStaleAge(service).toMillis())
+                        .tag("service", service)
+                        .description("How long the addresses of the service were not confirmed by nacos")
+                        .register(registry));
+    }
+}
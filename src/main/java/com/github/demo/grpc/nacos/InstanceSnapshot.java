@@ -0,0 +1,192 @@
+package com.github.demo.grpc.nacos;
+
+import io.grpc.EquivalentAddressGroup;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable view of the addresses a {@link NacosNameResolver} last reported, indexed by endpoint so that a new
+ * instance list can be compared against it in linear time.
+ */
+public final class InstanceSnapshot {
+
+    public static final InstanceSnapshot EMPTY = new InstanceSnapshot(Collections.emptyMap(), Collections.emptyList());
+
+    private final Map<Endpoint, Entry> addressGroupsByEndpoint;
+    private final List<EquivalentAddressGroup> addressGroups;
+
+    private InstanceSnapshot(final Map<Endpoint, Entry> addressGroupsByEndpoint,
+                             final List<EquivalentAddressGroup> addressGroups) {
+        this.addressGroupsByEndpoint = addressGroupsByEndpoint;
+        this.addressGroups = addressGroups;
+    }
+
+    public int size() {
+        return this.addressGroups.size();
+    }
+
+    public boolean isEmpty() {
+        return this.addressGroups.isEmpty();
+    }
+
+    /**
+     * @return The address groups in the order the instances were reported.
+     */
+    public List<EquivalentAddressGroup> getAddressGroups() {
+        return this.addressGroups;
+    }
+
+    /**
+     * Compares the given instances with this snapshot. Address groups of endpoints that are still present with the
+     * same metadata are reused, endpoints whose metadata changed keep their socket address but get new
+     * {@link NacosAttributes}, only added endpoints get new address objects. Duplicate endpoints are reported once.
+     *
+     * @param instances The new instances of the service.
+     * @return The differences and the snapshot representing the new instances.
+     */
+    public Diff diff(final List<ServiceInstance> instances) {
+        final Map<Endpoint, Entry> next = new HashMap<>(capacityFor(instances.size()));
+        final List<EquivalentAddressGroup> nextGroups = new ArrayList<>(instances.size());
+        final List<EquivalentAddressGroup> added = new ArrayList<>();
+        final List<EquivalentAddressGroup> updated = new ArrayList<>();
+        final List<EquivalentAddressGroup> unchanged = new ArrayList<>(Math.min(instances.size(), size()));
+        int retained = 0;
+
+        for (final ServiceInstance instance : instances) {
+            final Endpoint endpoint = new Endpoint(instance.getHost(), instance.getPort());
+            if (next.containsKey(endpoint)) {
+                continue;
+            }
+            final Entry existing = this.addressGroupsByEndpoint.get(endpoint);
+            final Entry entry;
+            if (existing == null) {
+                entry = new Entry(instance.getMetadata(), new EquivalentAddressGroup(
+                        new InetSocketAddress(instance.getHost(), instance.getPort()), NacosAttributes.of(instance)));
+                added.add(entry.group);
+            } else if (Objects.equals(existing.metadata, instance.getMetadata())) {
+                entry = existing;
+                unchanged.add(entry.group);
+                retained++;
+            } else {
+                entry = new Entry(instance.getMetadata(), new EquivalentAddressGroup(
+                        existing.group.getAddresses(), NacosAttributes.of(instance)));
+                updated.add(entry.group);
+                retained++;
+            }
+            next.put(endpoint, entry);
+            nextGroups.add(entry.group);
+        }
+
+        final List<EquivalentAddressGroup> removed = new ArrayList<>();
+        if (retained != size()) {
+            for (final Map.Entry<Endpoint, Entry> entry : this.addressGroupsByEndpoint.entrySet()) {
+                if (!next.containsKey(entry.getKey())) {
+                    removed.add(entry.getValue().group);
+                }
+            }
+        }
+
+        final InstanceSnapshot snapshot = new InstanceSnapshot(
+                Collections.unmodifiableMap(next), Collections.unmodifiableList(nextGroups));
+        return new Diff(snapshot, added, removed, updated, unchanged);
+    }
+
+    private static int capacityFor(final int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    /**
+     * The result of comparing a snapshot with a new instance list.
+     */
+    public static final class Diff {
+
+        private final InstanceSnapshot snapshot;
+        private final List<EquivalentAddressGroup> added;
+        private final List<EquivalentAddressGroup> removed;
+        private final List<EquivalentAddressGroup> updated;
+        private final List<EquivalentAddressGroup> unchanged;
+
+        Diff(final InstanceSnapshot snapshot, final List<EquivalentAddressGroup> added,
+             final List<EquivalentAddressGroup> removed, final List<EquivalentAddressGroup> updated,
+             final List<EquivalentAddressGroup> unchanged) {
+            this.snapshot = snapshot;
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.updated = Collections.unmodifiableList(updated);
+            this.unchanged = Collections.unmodifiableList(unchanged);
+        }
+
+        public InstanceSnapshot getSnapshot() {
+            return this.snapshot;
+        }
+
+        public List<EquivalentAddressGroup> getAdded() {
+            return this.added;
+        }
+
+        public List<EquivalentAddressGroup> getRemoved() {
+            return this.removed;
+        }
+
+        /**
+         * @return The address groups of endpoints that are still present but whose metadata changed.
+         */
+        public List<EquivalentAddressGroup> getUpdated() {
+            return this.updated;
+        }
+
+        public List<EquivalentAddressGroup> getUnchanged() {
+            return this.unchanged;
+        }
+
+        public boolean hasChanges() {
+            return !this.added.isEmpty() || !this.removed.isEmpty() || !this.updated.isEmpty();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Map<String, String> metadata;
+        private final EquivalentAddressGroup group;
+
+        Entry(final Map<String, String> metadata, final EquivalentAddressGroup group) {
+            this.metadata = metadata;
+            this.group = group;
+        }
+    }
+
+    private static final class Endpoint {
+
+        private final String host;
+        private final int port;
+
+        Endpoint(final String host, final int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Endpoint)) {
+                return false;
+            }
+            final Endpoint other = (Endpoint) o;
+            return this.port == other.port && this.host.equals(other.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.host.hashCode() + this.port;
+        }
+    }
+}
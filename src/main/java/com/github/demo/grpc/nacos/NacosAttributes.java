@@ -0,0 +1,117 @@
+package com.github.demo.grpc.nacos;
+
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The nacos instance details that {@link NacosNameResolver} attaches to every resolved {@link EquivalentAddressGroup}.
+ */
+public final class NacosAttributes {
+
+    public static final String WEIGHT_METADATA = "nacos.weight";
+    public static final String CLUSTER_METADATA = "nacos.cluster";
+    /**
+     * Published by {@link NacosGrpcRegistry}: the time the gRPC server started, in milliseconds since the epoch.
+     */
+    public static final String START_TIME_METADATA = "grpc.start-time";
+
+    /**
+     * The nacos weight of the instance, 1.0 if the instance did not specify one.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<Double> WEIGHT = Attributes.Key.create("nacos.weight");
+
+    /**
+     * The nacos cluster of the instance, absent if the instance did not specify one.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<String> CLUSTER = Attributes.Key.create("nacos.cluster");
+
+    /**
+     * The start time of the instance's gRPC server, absent if the instance did not publish one.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<Long> START_TIME = Attributes.Key.create("grpc.start-time");
+
+    /**
+     * The complete metadata of the instance.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<Map<String, String>> METADATA = Attributes.Key.create("nacos.metadata");
+
+    private static final double DEFAULT_WEIGHT = 1.0d;
+
+    private NacosAttributes() {
+    }
+
+    /**
+     * Creates the address attributes for the given instance.
+     *
+     * @param instance The instance to describe.
+     * @return The attributes carrying the weight, cluster and metadata of the instance.
+     */
+    public static Attributes of(final ServiceInstance instance) {
+        final Map<String, String> metadata = instance.getMetadata() == null ?
+                Collections.emptyMap() : Collections.unmodifiableMap(instance.getMetadata());
+        final Attributes.Builder builder = Attributes.newBuilder()
+                .set(WEIGHT, parseWeight(metadata.get(WEIGHT_METADATA)))
+                .set(METADATA, metadata);
+        final String cluster = metadata.get(CLUSTER_METADATA);
+        if (cluster != null) {
+            builder.set(CLUSTER, cluster);
+        }
+        final Long startTime = parseStartTime(metadata.get(START_TIME_METADATA));
+        if (startTime != null) {
+            builder.set(START_TIME, startTime);
+        }
+        return builder.build();
+    }
+
+    public static double getWeight(final Attributes attributes) {
+        final Double weight = attributes.get(WEIGHT);
+        return weight == null ? DEFAULT_WEIGHT : weight;
+    }
+
+    public static String getCluster(final Attributes attributes) {
+        return attributes.get(CLUSTER);
+    }
+
+    /**
+     * @return The start time of the instance in milliseconds since the epoch or null if it is unknown.
+     */
+    public static Long getStartTime(final Attributes attributes) {
+        return attributes.get(START_TIME);
+    }
+
+    public static Map<String, String> getMetadata(final Attributes attributes) {
+        final Map<String, String> metadata = attributes.get(METADATA);
+        return metadata == null ? Collections.emptyMap() : metadata;
+    }
+
+    private static Long parseStartTime(final String startTime) {
+        if (startTime == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(startTime);
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static double parseWeight(final String weight) {
+        if (weight == null) {
+            return DEFAULT_WEIGHT;
+        }
+        try {
+            final double parsed = Double.parseDouble(weight);
+            return parsed < 0 || Double.isNaN(parsed) ? DEFAULT_WEIGHT : parsed;
+        } catch (final NumberFormatException e) {
+            return DEFAULT_WEIGHT;
+        }
+    }
+}
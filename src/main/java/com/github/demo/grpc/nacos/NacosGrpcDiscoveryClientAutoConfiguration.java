@@ -17,10 +17,15 @@
 
 package com.github.demo.grpc.nacos;
 
+import com.alibaba.cloud.nacos.NacosDiscoveryProperties;
 import com.alibaba.cloud.nacos.discovery.NacosDiscoveryClientConfiguration;
+import com.github.demo.grpc.metrics.NacosNameResolverMeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -29,13 +34,26 @@ import org.springframework.context.annotation.Lazy;
 @Configuration
 @ConditionalOnBean(DiscoveryClient.class)
 @AutoConfigureAfter(NacosDiscoveryClientConfiguration.class)
+@EnableConfigurationProperties(NacosNameResolverProperties.class)
 public class NacosGrpcDiscoveryClientAutoConfiguration {
 
     @ConditionalOnMissingBean
     @Lazy // Not needed for InProcessChannelFactories
     @Bean
-    NacosNameResolverProvider grpcDiscoveryClientResolverFactory(final DiscoveryClient client) {
-        return new NacosNameResolverProvider(client);
+    NacosNameResolverProvider grpcDiscoveryClientResolverFactory(final DiscoveryClient client,
+                                                                  final ObjectProvider<NacosDiscoveryProperties> discoveryProperties,
+                                                                  final NacosNameResolverProperties resolverProperties) {
+        return new NacosNameResolverProvider(client, discoveryProperties.getIfAvailable(), resolverProperties);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    static class NacosNameResolverMetricsConfiguration {
+
+        @Bean
+        public NacosNameResolverMeterBinder grpcNacosNameResolverMeterBinder(ObjectProvider<NacosNameResolverProvider> provider) {
+            return new NacosNameResolverMeterBinder(provider);
+        }
     }
 
 }
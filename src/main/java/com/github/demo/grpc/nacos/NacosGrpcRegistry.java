@@ -10,6 +10,9 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.context.event.EventListener;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class NacosGrpcRegistry implements SmartLifecycle {
 
     public static final String GRPC_PREFIX = "grpc-";
@@ -39,6 +42,11 @@ public class NacosGrpcRegistry implements SmartLifecycle {
         BeanUtils.copyProperties(this.nacosDiscoveryProperties, properties);
         properties.setPort(grpcServerProperties.getPort());
         properties.setService(GRPC_PREFIX + nacosDiscoveryProperties.getService());
+        // the copy shares the metadata map with the registration of the application itself
+        Map<String, String> metadata = new HashMap<>(nacosDiscoveryProperties.getMetadata());
+        // lets the client load balancers slow start this instance
+        metadata.put(NacosAttributes.START_TIME_METADATA, Long.toString(System.currentTimeMillis()));
+        properties.setMetadata(metadata);
         return new NacosRegistration(properties, event.getApplicationContext());
     }
 
@@ -60,6 +68,9 @@ public class NacosGrpcRegistry implements SmartLifecycle {
 
     @Override
     public synchronized void stop() {
+        if (registration == null) {
+            return;
+        }
         nacosServiceRegistry.deregister(registration);
         nacosServiceRegistry.close();
         registration = null;
@@ -1,5 +1,11 @@
 package com.github.demo.grpc.nacos;
 
+import com.alibaba.cloud.nacos.discovery.NacosServiceDiscovery;
+import com.alibaba.nacos.api.exception.NacosException;
+import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.listener.EventListener;
+import com.alibaba.nacos.api.naming.listener.NamingEvent;
+import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.google.common.collect.Lists;
 import io.grpc.*;
 import io.grpc.internal.SharedResourceHolder;
@@ -9,10 +15,15 @@ import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.util.CollectionUtils;
 
-import java.net.InetSocketAddress;
+import javax.annotation.Nullable;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -22,7 +33,7 @@ public class NacosNameResolver extends NameResolver {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private static final List<ServiceInstance> KEEP_PREVIOUS = null;
+    private static final InstanceSnapshot KEEP_PREVIOUS = null;
 
     private final String name;
     private final DiscoveryClient client;
@@ -30,6 +41,9 @@ public class NacosNameResolver extends NameResolver {
     private final Runnable externalCleaner;
     private final SharedResourceHolder.Resource<Executor> executorResource;
     private final boolean usingExecutorResource;
+    private final NamingService namingService;
+    private final String group;
+    private final NacosSnapshotStore snapshotStore;
 
     // The field must be accessed from syncContext, although the methods on an Listener2 can be called
     // from any thread.
@@ -37,7 +51,16 @@ public class NacosNameResolver extends NameResolver {
     // Following fields must be accessed from syncContext
     private Executor executor;
     private boolean resolving;
-    private List<ServiceInstance> instanceList = Lists.newArrayList();
+    private InstanceSnapshot snapshot = InstanceSnapshot.EMPTY;
+    private List<ServiceInstance> pendingInstances;
+    private boolean restorePending;
+    // Written by the resolve tasks, read by the metrics
+    private volatile long confirmedAt;
+    private volatile boolean stale;
+    // Set from syncContext once the nacos subscription is active, read by the provider to skip heartbeat refreshes
+    private volatile EventListener subscription;
+    // The snapshot last reported to the listener, published for other threads
+    private volatile InstanceSnapshot published = InstanceSnapshot.EMPTY;
 
     /**
      * Creates a new DiscoveryClientNameResolver.
@@ -50,6 +73,44 @@ public class NacosNameResolver extends NameResolver {
      */
     public NacosNameResolver(final String name, final DiscoveryClient client, final Args args,
                              final SharedResourceHolder.Resource<Executor> executorResource, final Runnable externalCleaner) {
+        this(name, client, args, executorResource, externalCleaner, null, null);
+    }
+
+    /**
+     * Creates a new DiscoveryClientNameResolver that additionally subscribes to instance changes pushed by nacos.
+     *
+     * @param name             The name of the service to look up.
+     * @param client           The client used for the initial look up and as fallback.
+     * @param args             The name resolver args.
+     * @param executorResource The executor resource.
+     * @param externalCleaner  The optional cleaner used during {@link #shutdown()}
+     * @param namingService    The optional naming service to subscribe to, null to rely on external refreshes.
+     * @param group            The nacos group of the service.
+     */
+    public NacosNameResolver(final String name, final DiscoveryClient client, final Args args,
+                             final SharedResourceHolder.Resource<Executor> executorResource, final Runnable externalCleaner,
+                             final NamingService namingService, final String group) {
+        this(name, client, args, executorResource, externalCleaner, namingService, group, null);
+    }
+
+    /**
+     * Creates a new DiscoveryClientNameResolver that keeps serving its last known good addresses while nacos fails
+     * and optionally restores them from a local snapshot on start. Stale addresses are confirmed by the next external
+     * refresh.
+     *
+     * @param name               The name of the service to look up.
+     * @param client             The client used for the initial look up and as fallback.
+     * @param args               The name resolver args.
+     * @param executorResource   The executor resource.
+     * @param externalCleaner    The optional cleaner used during {@link #shutdown()}
+     * @param namingService      The optional naming service to subscribe to, null to rely on external refreshes.
+     * @param group              The nacos group of the service.
+     * @param snapshotStore      The optional store the instances are saved to and restored from.
+     */
+    public NacosNameResolver(final String name, final DiscoveryClient client, final Args args,
+                             final SharedResourceHolder.Resource<Executor> executorResource, final Runnable externalCleaner,
+                             final NamingService namingService, final String group,
+                             @Nullable final NacosSnapshotStore snapshotStore) {
         this.name = name;
         this.client = client;
         this.syncContext = requireNonNull(args.getSynchronizationContext(), "syncContext");
@@ -57,6 +118,9 @@ public class NacosNameResolver extends NameResolver {
         this.executor = args.getOffloadExecutor();
         this.usingExecutorResource = this.executor == null;
         this.executorResource = executorResource;
+        this.namingService = namingService;
+        this.group = group;
+        this.snapshotStore = snapshotStore;
     }
 
     @Override
@@ -71,7 +135,9 @@ public class NacosNameResolver extends NameResolver {
             this.executor = SharedResourceHolder.get(this.executorResource);
         }
         this.listener = checkNotNull(listener, "listener");
+        this.restorePending = this.snapshotStore != null;
         resolve();
+        subscribe();
     }
 
     @Override
@@ -94,22 +160,149 @@ public class NacosNameResolver extends NameResolver {
         });
     }
 
+    /**
+     * Applies an instance list that was already looked up by the caller, e.g. because it was pushed by nacos or
+     * fetched once for all resolvers of the same service. This method can safely be called from non-grpc threads.
+     *
+     * @param instances The current instances of the service.
+     */
+    public void refreshFromExternal(final List<ServiceInstance> instances) {
+        requireNonNull(instances, "instances");
+        this.syncContext.execute(() -> {
+            if (this.listener != null) {
+                this.pendingInstances = instances;
+                resolve();
+            }
+        });
+    }
+
+    /**
+     * Whether this resolver receives instance changes pushed by nacos and therefore does not need external refreshes.
+     *
+     * @return True, if the nacos subscription is active.
+     */
+    public boolean isSubscribed() {
+        return this.subscription != null;
+    }
+
+    /**
+     * Whether the reported addresses are not confirmed by nacos, see {@link #getStaleAge()}.
+     *
+     * @return True, if the last look up failed or the addresses were restored and not looked up yet.
+     */
+    public boolean isStale() {
+        return this.stale;
+    }
+
+    /**
+     * How long the reported addresses have not been confirmed by nacos, because look ups fail or return no instances
+     * or because they were restored from a snapshot and nacos did not answer yet.
+     *
+     * @return The age of the stale addresses or zero if the last look up succeeded.
+     */
+    public Duration getStaleAge() {
+        if (!this.stale) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis(Math.max(0, System.currentTimeMillis() - this.confirmedAt));
+    }
+
+    /**
+     * The addresses this resolver last reported to its channel, i.e. the addresses the channel's load balancer holds.
+     * This method can safely be called from any thread.
+     *
+     * @return The addresses, empty before the first result and after shutdown.
+     */
+    public List<SocketAddress> getAddresses() {
+        final List<SocketAddress> addresses = new ArrayList<>();
+        for (final EquivalentAddressGroup group : this.published.getAddressGroups()) {
+            addresses.addAll(group.getAddresses());
+        }
+        return addresses;
+    }
+
+    private void subscribe() {
+        if (this.namingService == null) {
+            return;
+        }
+        final EventListener eventListener = event -> {
+            if (event instanceof NamingEvent) {
+                onInstancesPushed(((NamingEvent) event).getInstances());
+            }
+        };
+        final Executor executor = this.executor;
+        // subscribing queries nacos, which must not block the syncContext
+        executor.execute(() -> {
+            try {
+                this.namingService.subscribe(this.name, this.group, eventListener);
+            } catch (final NacosException e) {
+                logger.warn("Failed to subscribe to {}, falling back to heartbeat refreshes", this.name, e);
+                return;
+            }
+            this.syncContext.execute(() -> onSubscribed(executor, eventListener));
+        });
+    }
+
+    private void onSubscribed(final Executor executor, final EventListener eventListener) {
+        if (this.listener == null) {
+            // shut down while subscribing
+            unsubscribe(executor, eventListener);
+            return;
+        }
+        this.subscription = eventListener;
+        logger.debug("Subscribed to instance changes of {}", this.name);
+    }
+
+    private void unsubscribe(final Executor executor, final EventListener eventListener) {
+        final Runnable unsubscribe = () -> {
+            try {
+                this.namingService.unsubscribe(this.name, this.group, eventListener);
+            } catch (final NacosException e) {
+                logger.warn("Failed to unsubscribe from {}", this.name, e);
+            }
+        };
+        try {
+            executor.execute(unsubscribe);
+        } catch (final RejectedExecutionException e) {
+            // the executor was already released by the shutdown
+            unsubscribe.run();
+        }
+    }
+
+    private void onInstancesPushed(final List<Instance> instances) {
+        final List<Instance> available = instances == null ? Lists.newArrayList() : instances.stream()
+                .filter(instance -> instance.isHealthy() && instance.isEnabled())
+                .collect(Collectors.toList());
+        refreshFromExternal(NacosServiceDiscovery.hostToServiceInstanceList(available, this.name));
+    }
+
     private void resolve() {
         logger.debug("Scheduled resolve for {}", this.name);
         if (this.resolving) {
             return;
         }
         this.resolving = true;
-        this.executor.execute(new Resolve(this.listener, this.instanceList));
+        final List<ServiceInstance> provided = this.pendingInstances;
+        this.pendingInstances = null;
+        final boolean restore = this.restorePending && this.snapshot.isEmpty();
+        this.restorePending = false;
+        this.executor.execute(new Resolve(this.listener, this.snapshot, provided, restore));
     }
 
     @Override
     public void shutdown() {
+        final EventListener eventListener = this.subscription;
+        if (eventListener != null) {
+            this.subscription = null;
+            unsubscribe(this.executor, eventListener);
+        }
         this.listener = null;
+        this.pendingInstances = null;
         if (this.executor != null && this.usingExecutorResource) {
             this.executor = SharedResourceHolder.release(this.executorResource, this.executor);
         }
-        this.instanceList = Lists.newArrayList();
+        this.snapshot = InstanceSnapshot.EMPTY;
+        this.published = InstanceSnapshot.EMPTY;
         if (this.externalCleaner != null) {
             this.externalCleaner.run();
         }
@@ -126,104 +319,136 @@ public class NacosNameResolver extends NameResolver {
     private final class Resolve implements Runnable {
 
         private final Listener2 savedListener;
-        private final List<ServiceInstance> savedInstanceList;
+        private final InstanceSnapshot savedSnapshot;
+        private final List<ServiceInstance> providedInstanceList;
+        private final boolean restore;
 
         /**
          * Creates a new Resolve that stores a snapshot of the relevant states of the resolver.
          *
-         * @param listener     The listener to send the results to.
-         * @param instanceList The current server instance list.
+         * @param listener             The listener to send the results to.
+         * @param snapshot             The currently reported addresses.
+         * @param providedInstanceList The already known instances or null if they should be looked up.
+         * @param restore              Whether the saved snapshot should be reported before nacos is asked.
          */
-        Resolve(final Listener2 listener, final List<ServiceInstance> instanceList) {
+        Resolve(final Listener2 listener, final InstanceSnapshot snapshot,
+                final List<ServiceInstance> providedInstanceList, final boolean restore) {
             this.savedListener = requireNonNull(listener, "listener");
-            this.savedInstanceList = requireNonNull(instanceList, "instanceList");
+            this.savedSnapshot = requireNonNull(snapshot, "snapshot");
+            this.providedInstanceList = providedInstanceList;
+            this.restore = restore;
         }
 
         @Override
         public void run() {
-            final AtomicReference<List<ServiceInstance>> resultContainer = new AtomicReference<>();
+            final AtomicReference<InstanceSnapshot> resultContainer = new AtomicReference<>();
+            InstanceSnapshot current = this.savedSnapshot;
             try {
-                resultContainer.set(resolveInternal());
+                if (this.restore) {
+                    final InstanceSnapshot restored = restoreInternal();
+                    if (restored != null) {
+                        current = restored;
+                        resultContainer.set(restored);
+                    }
+                }
+                final InstanceSnapshot result = resolveInternal(current);
+                if (result != KEEP_PREVIOUS) {
+                    resultContainer.set(result);
+                }
             } catch (final Exception e) {
-                this.savedListener.onError(Status.UNAVAILABLE.withCause(e)
+                onLookupFailed(current, Status.UNAVAILABLE.withCause(e)
                         .withDescription("Failed to update server list for " + NacosNameResolver.this.name));
-                resultContainer.set(Lists.newArrayList());
             } finally {
                 NacosNameResolver.this.syncContext.execute(() -> {
                     NacosNameResolver.this.resolving = false;
-                    final List<ServiceInstance> result = resultContainer.get();
+                    final InstanceSnapshot result = resultContainer.get();
                     if (result != KEEP_PREVIOUS && NacosNameResolver.this.listener != null) {
-                        NacosNameResolver.this.instanceList = result;
+                        NacosNameResolver.this.snapshot = result;
+                        NacosNameResolver.this.published = result;
+                    }
+                    if (NacosNameResolver.this.pendingInstances != null && NacosNameResolver.this.listener != null) {
+                        resolve();
                     }
                 });
             }
         }
 
         /**
-         * Do the actual update checks and resolving logic.
+         * Reports the addresses saved by the last run of the application, so that calls can be routed before nacos
+         * answers.
          *
-         * @return The new service instance list that is used to connect to the gRPC server or null if the old ones
-         * should be used.
+         * @return The restored snapshot or null if there is none.
          */
-        private List<ServiceInstance> resolveInternal() {
+        @Nullable
+        private InstanceSnapshot restoreInternal() {
             final String name = NacosNameResolver.this.name;
-            final List<ServiceInstance> newInstanceList =
-                    NacosNameResolver.this.client.getInstances(name);
-            logger.debug("Got {} candidate servers for {}", newInstanceList.size(), name);
-            if (CollectionUtils.isEmpty(newInstanceList)) {
-                logger.error("No servers found for {}", name);
-                this.savedListener.onError(Status.UNAVAILABLE.withDescription("No servers found for " + name));
-                return Lists.newArrayList();
-            }
-            if (!needsToUpdateConnections(newInstanceList)) {
-                logger.debug("Nothing has changed... skipping update for {}", name);
-                return KEEP_PREVIOUS;
-            }
-            logger.debug("Ready to update server list for {}", name);
-            final List<EquivalentAddressGroup> targets = Lists.newArrayList();
-            for (final ServiceInstance instance : newInstanceList) {
-                logger.debug("Found gRPC server {}:{} for {}", instance.getHost(), instance.getPort(), name);
-                targets.add(new EquivalentAddressGroup(
-                        new InetSocketAddress(instance.getHost(), instance.getPort()), Attributes.EMPTY));
+            final NacosSnapshotStore.Snapshot saved = NacosNameResolver.this.snapshotStore.load(name);
+            if (saved == null || saved.getInstances().isEmpty()) {
+                return null;
             }
-            if (targets.isEmpty()) {
-                logger.error("None of the servers for {} specified a gRPC port", name);
-                this.savedListener.onError(Status.UNAVAILABLE
-                        .withDescription("None of the servers for " + name + " specified a gRPC port"));
-                return Lists.newArrayList();
-            } else {
-                this.savedListener.onResult(ResolutionResult.newBuilder()
-                        .setAddresses(targets)
-                        .build());
-                logger.info("Done updating server list for {}", name);
-                return newInstanceList;
+            final InstanceSnapshot restored = InstanceSnapshot.EMPTY.diff(saved.getInstances()).getSnapshot();
+            NacosNameResolver.this.confirmedAt = saved.getTimestamp();
+            NacosNameResolver.this.stale = true;
+            this.savedListener.onResult(ResolutionResult.newBuilder()
+                    .setAddresses(restored.getAddressGroups())
+                    .build());
+            logger.info("Restored {} servers for {} from the snapshot saved {} ago", restored.size(), name,
+                    getStaleAge());
+            return restored;
+        }
+
+        /**
+         * Keeps the last known good addresses if there are any, reports the error to the channel otherwise.
+         */
+        private void onLookupFailed(final InstanceSnapshot current, final Status status) {
+            if (current.isEmpty()) {
+                logger.error(status.getDescription(), status.getCause());
+                this.savedListener.onError(status);
+                return;
             }
+            NacosNameResolver.this.stale = true;
+            logger.warn("{}, keeping the {} last known good servers", status.getDescription(), current.size(),
+                    status.getCause());
         }
 
         /**
-         * Checks whether this instance should update its connections.
+         * Do the actual update checks and resolving logic.
          *
-         * @param newInstanceList The new instances that should be compared to the stored ones.
-         * @return True, if the given instance list contains different entries than the stored ones.
+         * @param current The addresses that are currently reported.
+         * @return The snapshot of the addresses that are used to connect to the gRPC server or null if the old ones
+         * should be used.
          */
-        private boolean needsToUpdateConnections(final List<ServiceInstance> newInstanceList) {
-            if (this.savedInstanceList.size() != newInstanceList.size()) {
-                return true;
+        private InstanceSnapshot resolveInternal(final InstanceSnapshot current) {
+            final String name = NacosNameResolver.this.name;
+            final List<ServiceInstance> newInstanceList = this.providedInstanceList != null ?
+                    this.providedInstanceList : NacosNameResolver.this.client.getInstances(name);
+            if (CollectionUtils.isEmpty(newInstanceList)) {
+                onLookupFailed(current, Status.UNAVAILABLE.withDescription("No servers found for " + name));
+                return KEEP_PREVIOUS;
             }
-            for (final ServiceInstance instance : this.savedInstanceList) {
-                boolean isSame = false;
-                for (final ServiceInstance newInstance : newInstanceList) {
-                    if (newInstance.getHost().equals(instance.getHost())
-                            && instance.getPort() == newInstance.getPort()) {
-                        isSame = true;
-                        break;
-                    }
-                }
-                if (!isSame) {
-                    return true;
+            logger.debug("Got {} candidate servers for {}", newInstanceList.size(), name);
+            NacosNameResolver.this.confirmedAt = System.currentTimeMillis();
+            NacosNameResolver.this.stale = false;
+            final InstanceSnapshot.Diff diff = current.diff(newInstanceList);
+            if (!diff.hasChanges()) {
+                logger.debug("Nothing has changed... skipping update for {}", name);
+                if (this.restore && NacosNameResolver.this.snapshotStore != null) {
+                    NacosNameResolver.this.snapshotStore.save(name, newInstanceList);
                 }
+                return KEEP_PREVIOUS;
+            }
+            logger.debug("Ready to update server list for {}: {} added, {} removed, {} updated, {} unchanged", name,
+                    diff.getAdded().size(), diff.getRemoved().size(), diff.getUpdated().size(),
+                    diff.getUnchanged().size());
+            final InstanceSnapshot snapshot = diff.getSnapshot();
+            this.savedListener.onResult(ResolutionResult.newBuilder()
+                    .setAddresses(snapshot.getAddressGroups())
+                    .build());
+            if (NacosNameResolver.this.snapshotStore != null) {
+                NacosNameResolver.this.snapshotStore.save(name, newInstanceList);
             }
-            return false;
+            logger.info("Done updating server list for {}", name);
+            return snapshot;
         }
 
     }
@@ -0,0 +1,78 @@
+package com.github.demo.grpc.nacos;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the nacos based name resolution used by {@code @GrpcClient} channels.
+ */
+@ConfigurationProperties("grpc.nacos")
+public class NacosNameResolverProperties {
+
+    /**
+     * How the name resolvers learn about instance changes.
+     */
+    private Mode resolverMode = Mode.HEARTBEAT;
+
+    /**
+     * Heartbeat changes arriving within this window are merged into a single refresh.
+     */
+    private Duration refreshCoalesceWindow = Duration.ofMillis(200);
+
+    /**
+     * Directory the last known instances of every resolved service are saved to, so that they can be used right after
+     * a restart until nacos answers. Not set disables the snapshots.
+     */
+    private String snapshotDir;
+
+    /**
+     * How often a service is looked up again while its last known good instances are served because nacos failed.
+     * All services are retried together on one thread, services subscribed to nacos wait for the next push instead.
+     * Zero disables the retries.
+     */
+    private Duration staleRetryInterval = Duration.ofSeconds(5);
+
+    public Mode getResolverMode() {
+        return resolverMode;
+    }
+
+    public void setResolverMode(Mode resolverMode) {
+        this.resolverMode = resolverMode;
+    }
+
+    public Duration getRefreshCoalesceWindow() {
+        return refreshCoalesceWindow;
+    }
+
+    public void setRefreshCoalesceWindow(Duration refreshCoalesceWindow) {
+        this.refreshCoalesceWindow = refreshCoalesceWindow;
+    }
+
+    public String getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public void setSnapshotDir(String snapshotDir) {
+        this.snapshotDir = snapshotDir;
+    }
+
+    public Duration getStaleRetryInterval() {
+        return staleRetryInterval;
+    }
+
+    public void setStaleRetryInterval(Duration staleRetryInterval) {
+        this.staleRetryInterval = staleRetryInterval;
+    }
+
+    public enum Mode {
+        /**
+         * Re-query the discovery client whenever a {@code HeartbeatEvent} reports a change.
+         */
+        HEARTBEAT,
+        /**
+         * Subscribe to the nacos {@code NamingService} and apply pushed instance changes directly.
+         */
+        PUSH
+    }
+}
@@ -1,10 +1,13 @@
 package com.github.demo.grpc.nacos;
 
+import com.alibaba.cloud.nacos.NacosDiscoveryProperties;
+import com.alibaba.nacos.api.naming.NamingService;
 import io.grpc.NameResolver;
 import io.grpc.NameResolverProvider;
 import io.grpc.internal.GrpcUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
 import org.springframework.cloud.client.discovery.event.HeartbeatMonitor;
@@ -12,10 +15,26 @@ import org.springframework.context.event.EventListener;
 
 import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
+import java.net.SocketAddress;
 import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
 
@@ -29,9 +48,24 @@ public class NacosNameResolverProvider extends NameResolverProvider {
     public static final String NACOS = "nacos";
 
     private final Set<NacosNameResolver> discoveryClientNameResolvers = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<NacosNameResolver, URI> resolverTargets = new ConcurrentHashMap<>();
     private final HeartbeatMonitor monitor = new HeartbeatMonitor();
+    private final ConcurrentMap<String, Long> serviceChecksums = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService refreshExecutor =
+            Executors.newSingleThreadScheduledExecutor(GrpcUtil.getThreadFactory("grpc-nacos-refresh-%d", true));
+
+    private final LongAdder refreshesDone = new LongAdder();
+    private final LongAdder refreshesSkipped = new LongAdder();
+    private final LongAdder refreshesCoalesced = new LongAdder();
+
+    private final Set<String> services = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<String>> serviceListeners = new ArrayList<>();
 
     private final DiscoveryClient client;
+    private final NacosDiscoveryProperties discoveryProperties;
+    private final NacosNameResolverProperties resolverProperties;
+    private final NacosSnapshotStore snapshotStore;
 
     /**
      * Creates a new discovery client based name resolver factory.
@@ -39,7 +73,28 @@ public class NacosNameResolverProvider extends NameResolverProvider {
      * @param client The client to use for the address discovery.
      */
     public NacosNameResolverProvider(final DiscoveryClient client) {
+        this(client, null, new NacosNameResolverProperties());
+    }
+
+    /**
+     * Creates a new discovery client based name resolver factory.
+     *
+     * @param client              The client to use for the address discovery.
+     * @param discoveryProperties The nacos properties used to subscribe in push mode, may be null.
+     * @param resolverProperties  The resolver settings.
+     */
+    public NacosNameResolverProvider(final DiscoveryClient client, @Nullable final NacosDiscoveryProperties discoveryProperties,
+                                     final NacosNameResolverProperties resolverProperties) {
         this.client = requireNonNull(client, "client");
+        this.discoveryProperties = discoveryProperties;
+        this.resolverProperties = requireNonNull(resolverProperties, "resolverProperties");
+        this.snapshotStore = resolverProperties.getSnapshotDir() == null ? null :
+                new NacosSnapshotStore(Paths.get(resolverProperties.getSnapshotDir()));
+        final long staleRetryMillis = resolverProperties.getStaleRetryInterval().toMillis();
+        if (staleRetryMillis > 0) {
+            this.refreshExecutor.scheduleWithFixedDelay(this::retryStaleServices, staleRetryMillis, staleRetryMillis,
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
     @Nullable
@@ -56,14 +111,34 @@ public class NacosNameResolverProvider extends NameResolverProvider {
             final NacosNameResolver discoveryClientNameResolver =
                     new NacosNameResolver(serviceName.substring(1), this.client, args,
                             GrpcUtil.SHARED_CHANNEL_EXECUTOR,
-                            () -> this.discoveryClientNameResolvers.remove(reference.get()));
+                            () -> {
+                                this.discoveryClientNameResolvers.remove(reference.get());
+                                this.resolverTargets.remove(reference.get());
+                            },
+                            getNamingService(), getGroup(), this.snapshotStore);
             reference.set(discoveryClientNameResolver);
             this.discoveryClientNameResolvers.add(discoveryClientNameResolver);
+            this.resolverTargets.put(discoveryClientNameResolver, targetUri);
+            addService(discoveryClientNameResolver.getServiceAuthority());
             return discoveryClientNameResolver;
         }
         return null;
     }
 
+    @Nullable
+    private NamingService getNamingService() {
+        if (this.discoveryProperties == null
+                || this.resolverProperties.getResolverMode() != NacosNameResolverProperties.Mode.PUSH) {
+            return null;
+        }
+        return this.discoveryProperties.namingServiceInstance();
+    }
+
+    @Nullable
+    private String getGroup() {
+        return this.discoveryProperties == null ? null : this.discoveryProperties.getGroup();
+    }
+
     @Override
     public String getDefaultScheme() {
         return NACOS;
@@ -80,15 +155,181 @@ public class NacosNameResolverProvider extends NameResolverProvider {
     }
 
     /**
-     * Triggers a refresh of the registered name resolvers.
+     * Schedules a refresh of the registered name resolvers. Heartbeats arriving while a refresh is pending are merged
+     * into it.
      *
      * @param event The event that triggered the update.
      */
     @EventListener(HeartbeatEvent.class)
     public void heartbeat(final HeartbeatEvent event) {
         if (this.monitor.update(event.getValue())) {
-            for (final NacosNameResolver nacosNameResolver : this.discoveryClientNameResolvers) {
-                nacosNameResolver.refreshFromExternal();
+            if (!this.refreshScheduled.compareAndSet(false, true)) {
+                this.refreshesCoalesced.increment();
+                return;
+            }
+            this.refreshExecutor.schedule(this::refreshChangedServices,
+                    this.resolverProperties.getRefreshCoalesceWindow().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Looks up every service that has a name resolver once and refreshes only the resolvers whose instances changed
+     * since the last refresh. Resolvers that are subscribed to nacos are skipped, they receive their updates directly.
+     */
+    void refreshChangedServices() {
+        this.refreshScheduled.set(false);
+        final Map<String, List<NacosNameResolver>> resolversByService = this.discoveryClientNameResolvers.stream()
+                .filter(resolver -> !resolver.isSubscribed())
+                .collect(Collectors.groupingBy(NacosNameResolver::getServiceAuthority));
+        this.serviceChecksums.keySet().retainAll(resolversByService.keySet());
+
+        for (final Map.Entry<String, List<NacosNameResolver>> entry : resolversByService.entrySet()) {
+            final String service = entry.getKey();
+            final List<NacosNameResolver> resolvers = entry.getValue();
+            final List<ServiceInstance> instances;
+            try {
+                instances = this.client.getInstances(service);
+            } catch (final RuntimeException e) {
+                logger.warn("Failed to look up instances of {}, refreshing its resolvers individually", service, e);
+                this.serviceChecksums.remove(service);
+                resolvers.forEach(NacosNameResolver::refreshFromExternal);
+                this.refreshesDone.add(resolvers.size());
+                continue;
+            }
+            final Long checksum = checksum(instances);
+            if (checksum.equals(this.serviceChecksums.put(service, checksum))) {
+                logger.debug("Instances of {} are unchanged, skipping refresh", service);
+                this.refreshesSkipped.add(resolvers.size());
+                continue;
+            }
+            for (final NacosNameResolver resolver : resolvers) {
+                resolver.refreshFromExternal(instances);
+            }
+            this.refreshesDone.add(resolvers.size());
+        }
+    }
+
+    /**
+     * Looks up every service with stale resolvers once and hands the instances to them. Resolvers that are subscribed
+     * to nacos are skipped, they are confirmed by the next push.
+     */
+    void retryStaleServices() {
+        final Map<String, List<NacosNameResolver>> staleByService = this.discoveryClientNameResolvers.stream()
+                .filter(resolver -> resolver.isStale() && !resolver.isSubscribed())
+                .collect(Collectors.groupingBy(NacosNameResolver::getServiceAuthority));
+        for (final Map.Entry<String, List<NacosNameResolver>> entry : staleByService.entrySet()) {
+            final String service = entry.getKey();
+            final List<ServiceInstance> instances;
+            try {
+                instances = this.client.getInstances(service);
+            } catch (final RuntimeException e) {
+                logger.debug("Failed to look up instances of {} again, keeping the stale servers", service, e);
+                continue;
+            }
+            if (instances == null || instances.isEmpty()) {
+                continue;
+            }
+            this.serviceChecksums.put(service, checksum(instances));
+            entry.getValue().forEach(resolver -> resolver.refreshFromExternal(instances));
+        }
+    }
+
+    /**
+     * Computes an order independent checksum over the address and metadata of the given instances.
+     */
+    private static long checksum(final List<ServiceInstance> instances) {
+        long checksum = instances.size();
+        for (final ServiceInstance instance : instances) {
+            long hash = Objects.hash(instance.getHost(), instance.getPort(), instance.getMetadata());
+            // spread the bits so that the sum does not cancel out for similar addresses
+            hash *= 0x9E3779B97F4A7C15L;
+            checksum += hash ^ (hash >>> 32);
+        }
+        return checksum;
+    }
+
+    /**
+     * @return The number of resolver refreshes that were triggered by heartbeats.
+     */
+    public long getRefreshesDone() {
+        return this.refreshesDone.sum();
+    }
+
+    /**
+     * @return The number of resolver refreshes that were skipped because their service did not change.
+     */
+    public long getRefreshesSkipped() {
+        return this.refreshesSkipped.sum();
+    }
+
+    /**
+     * @return The number of heartbeat changes that were merged into an already pending refresh.
+     */
+    public long getRefreshesCoalesced() {
+        return this.refreshesCoalesced.sum();
+    }
+
+    /**
+     * The age of the oldest stale address list of the given service, see {@link NacosNameResolver#getStaleAge()}.
+     *
+     * @param service The name of the service.
+     * @return The stale age or zero if every resolver of the service is up to date.
+     */
+    public Duration getStaleAge(final String service) {
+        Duration max = Duration.ZERO;
+        for (final NacosNameResolver resolver : this.discoveryClientNameResolvers) {
+            if (service.equals(resolver.getServiceAuthority())) {
+                final Duration age = resolver.getStaleAge();
+                if (age.compareTo(max) > 0) {
+                    max = age;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The addresses the resolver of the given channel target last reported, see
+     * {@link NacosNameResolver#getAddresses()}. Meant for targets used by a single channel, e.g.
+     * {@code nacos://broadcast/<service>}, the service part alone is shared by the resolvers of all its channels.
+     *
+     * @param target The target the channel was created for, including the scheme.
+     * @return The addresses, empty if no running resolver of the target reported any yet.
+     */
+    public List<SocketAddress> getAddresses(final URI target) {
+        for (final Map.Entry<NacosNameResolver, URI> entry : this.resolverTargets.entrySet()) {
+            if (target.equals(entry.getValue())) {
+                final List<SocketAddress> addresses = entry.getKey().getAddresses();
+                if (!addresses.isEmpty()) {
+                    return addresses;
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return The names of all services a name resolver was created for so far.
+     */
+    public Set<String> getServices() {
+        return Collections.unmodifiableSet(this.services);
+    }
+
+    /**
+     * Calls the listener for every existing and future service a name resolver is created for.
+     */
+    public synchronized void addServiceListener(final Consumer<String> listener) {
+        this.serviceListeners.add(listener);
+        this.services.forEach(listener);
+    }
+
+    private void addService(final String service) {
+        if (this.services.contains(service)) {
+            return;
+        }
+        synchronized (this) {
+            if (this.services.add(service)) {
+                this.serviceListeners.forEach(listener -> listener.accept(service));
             }
         }
     }
@@ -98,7 +339,10 @@ public class NacosNameResolverProvider extends NameResolverProvider {
      */
     @PreDestroy
     public void destroy() {
+        this.refreshExecutor.shutdownNow();
         this.discoveryClientNameResolvers.clear();
+        this.resolverTargets.clear();
+        this.serviceChecksums.clear();
     }
 
     @Override
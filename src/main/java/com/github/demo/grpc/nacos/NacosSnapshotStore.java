@@ -0,0 +1,215 @@
+package com.github.demo.grpc.nacos;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the last instance list a {@link NacosNameResolver} received from nacos in one file per service, so that a
+ * restarted application can route calls before nacos answers for the first time.
+ */
+public class NacosSnapshotStore {
+
+    private static final String TIMESTAMP = "timestamp";
+    private static final String COUNT = "count";
+    private static final String INSTANCE = "instance.";
+    private static final String METADATA = ".metadata.";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path directory;
+
+    /**
+     * Creates a new snapshot store.
+     *
+     * @param directory The directory the snapshot files are written to, it is created on the first save.
+     */
+    public NacosSnapshotStore(final Path directory) {
+        this.directory = requireNonNull(directory, "directory");
+    }
+
+    /**
+     * Reads the last saved instances of the given service.
+     *
+     * @param service The name of the service.
+     * @return The saved instances or null if there is no readable snapshot.
+     */
+    @Nullable
+    public Snapshot load(final String service) {
+        final Path file = fileOf(service);
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            logger.warn("Failed to read the instance snapshot of {} from {}", service, file, e);
+            return null;
+        }
+        try {
+            final int count = Integer.parseInt(properties.getProperty(COUNT));
+            final List<Map<String, String>> metadata = readMetadata(properties, count);
+            final List<ServiceInstance> instances = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                instances.add(readInstance(service, properties, INSTANCE + i, metadata.get(i)));
+            }
+            return new Snapshot(Collections.unmodifiableList(instances),
+                    Long.parseLong(properties.getProperty(TIMESTAMP)));
+        } catch (final RuntimeException e) {
+            logger.warn("Ignoring the corrupt instance snapshot of {} in {}", service, file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the saved instances of the given service. The file is written next to the old one and moved over it,
+     * so readers never see a partially written snapshot.
+     *
+     * @param service   The name of the service.
+     * @param instances The instances nacos reported for it.
+     */
+    public void save(final String service, final List<ServiceInstance> instances) {
+        final Properties properties = new Properties();
+        properties.setProperty(TIMESTAMP, Long.toString(System.currentTimeMillis()));
+        properties.setProperty(COUNT, Integer.toString(instances.size()));
+        for (int i = 0; i < instances.size(); i++) {
+            writeInstance(properties, INSTANCE + i, instances.get(i));
+        }
+        final Path file = fileOf(service);
+        try {
+            Files.createDirectories(this.directory);
+            final Path temp = Files.createTempFile(this.directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    properties.store(out, "nacos instances of " + service);
+                }
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            logger.debug("Saved {} instances of {} to {}", instances.size(), service, file);
+        } catch (final IOException e) {
+            logger.warn("Failed to save the instance snapshot of {} to {}", service, file, e);
+        }
+    }
+
+    private Path fileOf(final String service) {
+        return this.directory.resolve(service.replaceAll("[^A-Za-z0-9._-]", "_") + ".properties");
+    }
+
+    /**
+     * Groups the metadata entries by instance in a single pass over the keys.
+     *
+     * @return The metadata of every instance, by index.
+     */
+    private static List<Map<String, String>> readMetadata(final Properties properties, final int count) {
+        final List<Map<String, String>> metadata = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            metadata.add(new HashMap<>());
+        }
+        for (final String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(INSTANCE)) {
+                continue;
+            }
+            final int end = key.indexOf('.', INSTANCE.length());
+            if (end < 0 || !key.startsWith(METADATA, end)) {
+                continue;
+            }
+            final int index = parseIndex(key, INSTANCE.length(), end);
+            if (index >= 0 && index < count) {
+                metadata.get(index).put(key.substring(end + METADATA.length()), properties.getProperty(key));
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * @return The non-negative number in the given part of the key, -1 if it isn't one.
+     */
+    private static int parseIndex(final String key, final int begin, final int end) {
+        if (begin == end || end - begin > 9) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = begin; i < end; i++) {
+            final char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    private static ServiceInstance readInstance(final String service, final Properties properties, final String prefix,
+                                                final Map<String, String> metadata) {
+        final String host = requireNonNull(properties.getProperty(prefix + ".host"), prefix + ".host");
+        final int port = Integer.parseInt(properties.getProperty(prefix + ".port"));
+        return new DefaultServiceInstance(properties.getProperty(prefix + ".id"), service, host, port,
+                Boolean.parseBoolean(properties.getProperty(prefix + ".secure")), metadata);
+    }
+
+    private static void writeInstance(final Properties properties, final String prefix, final ServiceInstance instance) {
+        if (instance.getInstanceId() != null) {
+            properties.setProperty(prefix + ".id", instance.getInstanceId());
+        }
+        properties.setProperty(prefix + ".host", instance.getHost());
+        properties.setProperty(prefix + ".port", Integer.toString(instance.getPort()));
+        properties.setProperty(prefix + ".secure", Boolean.toString(instance.isSecure()));
+        if (instance.getMetadata() != null) {
+            for (final Map.Entry<String, String> entry : instance.getMetadata().entrySet()) {
+                if (entry.getValue() != null) {
+                    properties.setProperty(prefix + METADATA + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * The instances of a service as they were saved.
+     */
+    public static final class Snapshot {
+
+        private final List<ServiceInstance> instances;
+        private final long timestamp;
+
+        Snapshot(final List<ServiceInstance> instances, final long timestamp) {
+            this.instances = instances;
+            this.timestamp = timestamp;
+        }
+
+        public List<ServiceInstance> getInstances() {
+            return this.instances;
+        }
+
+        /**
+         * @return The time in milliseconds since the epoch at which nacos last reported these instances.
+         */
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+    }
+}
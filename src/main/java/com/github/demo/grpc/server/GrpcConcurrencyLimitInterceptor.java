@@ -0,0 +1,361 @@
+package com.github.demo.grpc.server;
+
+import com.github.demo.grpc.config.GrpcServerProperties;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Limits the calls a method serves concurrently to a limit that adapts to the measured latency, configured by
+ * {@code grpc.server.concurrency-limit.*}. Calls above the limit are rejected immediately with RESOURCE_EXHAUSTED
+ * instead of queueing up in the executor.
+ * <p>
+ * The limit follows the gradient algorithm: once per window the average latency of the window is compared with a
+ * long-term average. While they are close the limit grows by about its square root, when the latency rises the limit
+ * shrinks in proportion. The limit only grows while at least half of it is used. Every completed call is measured
+ * whatever its status, only cancelled calls aren't.
+ * <p>
+ * Every method has its own limit. With a {@code partition-header} every value of that header, e.g. the calling
+ * application, gets its own limit as well. Values that aren't listed in {@code partitions}, or that exceed
+ * {@code max-partitions} per method, share the {@value #OTHER_PARTITION} limit so callers can't create limits without
+ * bound. Limits that weren't used for {@code idle-timeout} are dropped. Attach it to all services with
+ * {@code grpc.server.concurrency-limit.enabled=true} or to single ones through {@code @GrpcService(interceptors = ...)}.
+ */
+public class GrpcConcurrencyLimitInterceptor implements ServerInterceptor {
+
+    /**
+     * The partition shared by the header values that don't get an own limit.
+     */
+    public static final String OTHER_PARTITION = "other";
+
+    private final GrpcServerProperties.ConcurrencyLimit properties;
+
+    private final Metadata.Key<String> partitionKey;
+
+    private final Set<String> partitions;
+
+    private final long windowNanos;
+
+    private final long idleNanos;
+
+    private final ConcurrentHashMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * The number of own partitions per method.
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> partitionCounts = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextExpiryNanos;
+
+    private final List<Consumer<Limit>> listeners = new ArrayList<>();
+
+    private final List<Consumer<Limit>> removalListeners = new ArrayList<>();
+
+    public GrpcConcurrencyLimitInterceptor() {
+        this(new GrpcServerProperties.ConcurrencyLimit());
+    }
+
+    public GrpcConcurrencyLimitInterceptor(GrpcServerProperties.ConcurrencyLimit properties) {
+        this.properties = properties;
+        this.partitionKey = properties.getPartitionHeader() == null ? null
+                : Metadata.Key.of(properties.getPartitionHeader(), Metadata.ASCII_STRING_MARSHALLER);
+        this.partitions = new HashSet<>(properties.getPartitions());
+        this.windowNanos = properties.getWindow().toNanos();
+        this.idleNanos = properties.getIdleTimeout().toNanos();
+        this.nextExpiryNanos = new AtomicLong(System.nanoTime() + idleNanos);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        final Limit limit = getLimit(call.getMethodDescriptor().getFullMethodName(), headers);
+        if (!limit.tryAcquire()) {
+            call.close(limit.rejection, new Metadata());
+            return new ServerCall.Listener<ReqT>() {
+            };
+        }
+        final long startNanos = System.nanoTime();
+        final AtomicBoolean released = new AtomicBoolean();
+        ServerCall<ReqT, RespT> limitedCall = new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (released.compareAndSet(false, true)) {
+                    // failed calls hold their slot as well, a server that slows down while failing must shed load
+                    limit.release(System.nanoTime() - startNanos, status.getCode() != Status.Code.CANCELLED);
+                }
+                super.close(status, trailers);
+            }
+        };
+        final ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(limitedCall, headers);
+        } catch (RuntimeException e) {
+            if (released.compareAndSet(false, true)) {
+                limit.release(0, false);
+            }
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onCancel() {
+                // cancelled calls say nothing about the latency
+                if (released.compareAndSet(false, true)) {
+                    limit.release(0, false);
+                }
+                super.onCancel();
+            }
+        };
+    }
+
+    /**
+     * @return The limits created so far, keyed by method and, when partitioned, caller.
+     */
+    public Map<String, Limit> getLimits() {
+        return Collections.unmodifiableMap(limits);
+    }
+
+    /**
+     * Calls the listener for every existing and future {@link Limit}.
+     */
+    public synchronized void addListener(Consumer<Limit> listener) {
+        listeners.add(listener);
+        limits.values().forEach(listener);
+    }
+
+    /**
+     * Calls the listener for every {@link Limit} that is dropped because it was idle.
+     */
+    public synchronized void addRemovalListener(Consumer<Limit> listener) {
+        removalListeners.add(listener);
+    }
+
+    private Limit getLimit(String fullMethodName, Metadata headers) {
+        long now = System.nanoTime();
+        long nextExpiry = nextExpiryNanos.get();
+        if (now - nextExpiry >= 0 && nextExpiryNanos.compareAndSet(nextExpiry, now + idleNanos)) {
+            expireIdleLimits(now);
+        }
+        String partition = getPartition(fullMethodName, headers);
+        String key = partition == null ? fullMethodName : fullMethodName + "#" + partition;
+        Limit limit = limits.get(key);
+        if (limit != null) {
+            return limit;
+        }
+        synchronized (this) {
+            limit = limits.get(key);
+            if (limit == null) {
+                if (partition != null && !OTHER_PARTITION.equals(partition)) {
+                    AtomicInteger count = partitionCounts.computeIfAbsent(fullMethodName, k -> new AtomicInteger());
+                    if (count.get() >= properties.getMaxPartitions()) {
+                        // another value took the last partition meanwhile
+                        partition = OTHER_PARTITION;
+                        key = fullMethodName + "#" + partition;
+                        limit = limits.get(key);
+                        if (limit != null) {
+                            return limit;
+                        }
+                    } else {
+                        count.incrementAndGet();
+                    }
+                }
+                limit = new Limit(fullMethodName, partition);
+                limits.put(key, limit);
+                for (Consumer<Limit> listener : listeners) {
+                    listener.accept(limit);
+                }
+            }
+            return limit;
+        }
+    }
+
+    private String getPartition(String fullMethodName, Metadata headers) {
+        String partition = partitionKey == null ? null : headers.get(partitionKey);
+        if (partition == null) {
+            return null;
+        }
+        if (!partitions.isEmpty() && !partitions.contains(partition)) {
+            return OTHER_PARTITION;
+        }
+        if (limits.containsKey(fullMethodName + "#" + partition)) {
+            return partition;
+        }
+        AtomicInteger count = partitionCounts.get(fullMethodName);
+        return count != null && count.get() >= properties.getMaxPartitions() ? OTHER_PARTITION : partition;
+    }
+
+    private synchronized void expireIdleLimits(long now) {
+        for (Map.Entry<String, Limit> entry : limits.entrySet()) {
+            Limit limit = entry.getValue();
+            if (limit.getInFlight() > 0 || now - limit.lastUsedNanos < idleNanos
+                    || !limits.remove(entry.getKey(), limit)) {
+                continue;
+            }
+            if (limit.partition != null && !OTHER_PARTITION.equals(limit.partition)) {
+                partitionCounts.get(limit.method).decrementAndGet();
+            }
+            for (Consumer<Limit> listener : removalListeners) {
+                listener.accept(limit);
+            }
+        }
+    }
+
+    /**
+     * The adaptive limit of one method, or of one caller of a method.
+     */
+    public final class Limit {
+
+        private final String method;
+
+        private final String partition;
+
+        private final Status rejection;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final LongAdder accepted = new LongAdder();
+
+        private final LongAdder rejected = new LongAdder();
+
+        private final LongAdder windowLatencyNanos = new LongAdder();
+
+        private final LongAdder windowSamples = new LongAdder();
+
+        private final AtomicBoolean updating = new AtomicBoolean();
+
+        private volatile long windowEndNanos = System.nanoTime() + windowNanos;
+
+        private volatile int maxInFlightInWindow;
+
+        private volatile double limit = properties.getInitialLimit();
+
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private double longTermLatencyNanos;
+
+        Limit(String method, String partition) {
+            this.method = method;
+            this.partition = partition;
+            this.rejection = Status.RESOURCE_EXHAUSTED.withDescription("Concurrency limit of " + method
+                    + (partition == null ? "" : " for " + partition) + " reached");
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= (int) limit) {
+                    rejected.increment();
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    accepted.increment();
+                    if (current + 1 > maxInFlightInWindow) {
+                        maxInFlightInWindow = current + 1;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        void release(long latencyNanos, boolean sample) {
+            inFlight.decrementAndGet();
+            if (sample) {
+                windowLatencyNanos.add(latencyNanos);
+                windowSamples.increment();
+            }
+            long now = System.nanoTime();
+            lastUsedNanos = now;
+            if (now - windowEndNanos >= 0 && updating.compareAndSet(false, true)) {
+                try {
+                    windowEndNanos = now + windowNanos;
+                    update();
+                } finally {
+                    updating.set(false);
+                }
+            }
+        }
+
+        private void update() {
+            long samples = windowSamples.sumThenReset();
+            long latencyNanos = windowLatencyNanos.sumThenReset();
+            int maxInFlight = maxInFlightInWindow;
+            maxInFlightInWindow = inFlight.get();
+            if (samples == 0) {
+                return;
+            }
+            double shortTerm = (double) latencyNanos / samples;
+            if (longTermLatencyNanos == 0) {
+                longTermLatencyNanos = shortTerm;
+            } else {
+                longTermLatencyNanos += (shortTerm - longTermLatencyNanos) / properties.getLongWindow();
+                if (longTermLatencyNanos / shortTerm > 2) {
+                    // latency dropped for good, follow it faster
+                    longTermLatencyNanos *= 0.95;
+                }
+            }
+            double current = limit;
+            if (maxInFlight < current / 2) {
+                // the limit isn't what holds the calls back, don't let it grow unbounded
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, properties.getTolerance() * longTermLatencyNanos / shortTerm));
+            double newLimit = current * gradient + Math.sqrt(current);
+            newLimit = current * (1 - properties.getSmoothing()) + newLimit * properties.getSmoothing();
+            limit = Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), newLimit));
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The caller this limit applies to, {@code other} for the callers without an own limit, null
+         * if the limit isn't partitioned.
+         */
+        public String getPartition() {
+            return partition;
+        }
+
+        public int getLimit() {
+            return (int) limit;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getAccepted() {
+            return accepted.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Limit [method=" + method + ", partition=" + partition + ", limit=" + getLimit()
+                    + ", inFlight=" + getInFlight() + ", rejected=" + getRejected() + "]";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GrpcConcurrencyLimitInterceptor " + limits.values();
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.demo.grpc.server;
+
+import com.github.demo.grpc.config.GrpcServerProperties;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.ServerChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies {@code grpc.server.netty.*} to the {@link NettyServerBuilder} of the server.
+ * <p>
+ * As long as no thread count is set and epoll isn't disabled the server runs on gRPC's shared event loops, which
+ * already use epoll when it is available. Otherwise this class creates and owns the boss and worker event loops, with
+ * epoll if it is enabled and available and NIO otherwise.
+ */
+public class GrpcNettyServerConfigurer implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final GrpcServerProperties.Netty properties;
+
+    private EventLoopGroup bossGroup;
+
+    private EventLoopGroup workerGroup;
+
+    public GrpcNettyServerConfigurer(GrpcServerProperties.Netty properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @param serverBuilder The builder of the server.
+     */
+    public void configure(NettyServerBuilder serverBuilder) {
+        configureEventLoops(serverBuilder);
+        if (properties.getFlowControlWindow() != null) {
+            serverBuilder.initialFlowControlWindow(toInt(properties.getFlowControlWindow().toBytes()));
+        }
+        if (properties.getMaxInboundMessageSize() != null) {
+            serverBuilder.maxInboundMessageSize(toInt(properties.getMaxInboundMessageSize().toBytes()));
+        }
+        if (properties.getMaxInboundMetadataSize() != null) {
+            serverBuilder.maxInboundMetadataSize(toInt(properties.getMaxInboundMetadataSize().toBytes()));
+        }
+        if (properties.getMaxConcurrentCallsPerConnection() != null) {
+            serverBuilder.maxConcurrentCallsPerConnection(properties.getMaxConcurrentCallsPerConnection());
+        }
+        if (properties.getKeepAliveTime() != null) {
+            serverBuilder.keepAliveTime(toNanos(properties.getKeepAliveTime()), TimeUnit.NANOSECONDS);
+        }
+        if (properties.getKeepAliveTimeout() != null) {
+            serverBuilder.keepAliveTimeout(toNanos(properties.getKeepAliveTimeout()), TimeUnit.NANOSECONDS);
+        }
+        if (properties.getPermitKeepAliveTime() != null) {
+            serverBuilder.permitKeepAliveTime(toNanos(properties.getPermitKeepAliveTime()), TimeUnit.NANOSECONDS);
+        }
+        if (properties.getPermitKeepAliveWithoutCalls() != null) {
+            serverBuilder.permitKeepAliveWithoutCalls(properties.getPermitKeepAliveWithoutCalls());
+        }
+        if (properties.getMaxConnectionAge() != null) {
+            serverBuilder.maxConnectionAge(toNanos(properties.getMaxConnectionAge()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void configureEventLoops(NettyServerBuilder serverBuilder) {
+        if (properties.isEpoll() && properties.getBossThreads() <= 0 && properties.getWorkerThreads() <= 0) {
+            return;
+        }
+        boolean epoll = properties.isEpoll() && Epoll.isAvailable();
+        if (properties.isEpoll() && !epoll) {
+            logger.warn("Epoll is not available, gRPC server falls back to NIO.", Epoll.unavailabilityCause());
+        }
+        int bossThreads = Math.max(properties.getBossThreads(), 1);
+        // 0 lets netty pick twice the number of cores
+        int workerThreads = Math.max(properties.getWorkerThreads(), 0);
+        Class<? extends ServerChannel> channelType;
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(bossThreads, new DefaultThreadFactory("grpc-server-boss", true));
+            workerGroup = new EpollEventLoopGroup(workerThreads, new DefaultThreadFactory("grpc-server-worker", true));
+            channelType = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(bossThreads, new DefaultThreadFactory("grpc-server-boss", true));
+            workerGroup = new NioEventLoopGroup(workerThreads, new DefaultThreadFactory("grpc-server-worker", true));
+            channelType = NioServerSocketChannel.class;
+        }
+        serverBuilder.bossEventLoopGroup(bossGroup).workerEventLoopGroup(workerGroup).channelType(channelType);
+        logger.info("gRPC server uses the {} transport.", epoll ? "epoll" : "nio");
+    }
+
+    @Override
+    public void destroy() {
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
+    }
+
+    private static int toInt(long bytes) {
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static long toNanos(Duration duration) {
+        return duration.toNanos();
+    }
+}
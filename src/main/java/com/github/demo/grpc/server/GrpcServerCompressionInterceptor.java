@@ -0,0 +1,63 @@
+package com.github.demo.grpc.server;
+
+import com.github.demo.grpc.compression.GrpcCodecRegistry;
+import com.github.demo.grpc.compression.MessageCompression;
+import com.github.demo.grpc.config.GrpcServerProperties;
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compresses the responses of the configured methods. The encoding is only used if the client accepts it, responses
+ * below the minimum size of their method are sent uncompressed. Methods without compression are not wrapped.
+ */
+public class GrpcServerCompressionInterceptor implements ServerInterceptor {
+
+    private final MessageCompression defaultCompression;
+
+    private final Map<String, MessageCompression> compressions;
+
+    /**
+     * @param properties    The compression of all services and the overrides per service or method.
+     * @param codecRegistry The codecs the server can compress with.
+     * @throws IllegalArgumentException If a configured encoding has no codec.
+     */
+    public GrpcServerCompressionInterceptor(GrpcServerProperties.ServerCompression properties, GrpcCodecRegistry codecRegistry) {
+        this.defaultCompression = codecRegistry.getMessageCompression(properties.getCodec(), properties.getMinSize().toBytes());
+        this.compressions = new HashMap<>();
+        properties.getMethods().forEach((name, compression) -> {
+            MessageCompression messageCompression = codecRegistry.getMessageCompression(compression.getCodec(), compression.getMinSize().toBytes());
+            if (messageCompression != null) {
+                compressions.put(name, messageCompression);
+            }
+        });
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        MessageCompression compression = MessageCompression.lookup(compressions,
+                call.getMethodDescriptor().getFullMethodName(), defaultCompression);
+        if (compression == null) {
+            return next.startCall(call, headers);
+        }
+        return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void sendHeaders(Metadata responseHeaders) {
+                // falls back to identity if the client does not accept the encoding
+                delegate().setCompression(compression.getEncoding());
+                super.sendHeaders(responseHeaders);
+            }
+
+            @Override
+            public void sendMessage(RespT message) {
+                delegate().setMessageCompression(compression.shouldCompress(message));
+                super.sendMessage(message);
+            }
+        }, headers);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.demo.grpc.server;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Deadline;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.internal.GrpcUtil;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the deadline every call is served under, configured by {@code grpc.server.max-deadline}.
+ * <p>
+ * gRPC serves each call in a {@link Context} carrying the caller's deadline, and stubs used while serving the call,
+ * e.g. {@code @GrpcClient} stubs, inherit it and are cancelled with it. Calls without a deadline, or with a longer
+ * one, would let that outbound work run forever. This interceptor serves them under the maximum deadline instead.
+ * Work handed to other threads keeps the deadline when wrapped with {@code Context.current().wrap(...)}.
+ */
+public class GrpcServerDeadlineInterceptor implements ServerInterceptor, DisposableBean {
+
+    private final long maxDeadlineNanos;
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(GrpcUtil.getThreadFactory("grpc-server-deadline-%d", true));
+
+    public GrpcServerDeadlineInterceptor(Duration maxDeadline) {
+        this.maxDeadlineNanos = maxDeadline.toNanos();
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        Context current = Context.current();
+        Deadline deadline = current.getDeadline();
+        if (deadline != null && deadline.timeRemaining(TimeUnit.NANOSECONDS) <= maxDeadlineNanos) {
+            return next.startCall(call, headers);
+        }
+        Context.CancellableContext context = current.withDeadlineAfter(maxDeadlineNanos, TimeUnit.NANOSECONDS, scheduler);
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = Contexts.interceptCall(context, call, headers, next);
+        } catch (RuntimeException e) {
+            context.cancel(e);
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onComplete() {
+                try {
+                    super.onComplete();
+                } finally {
+                    // releases the deadline timer
+                    context.cancel(null);
+                }
+            }
+
+            @Override
+            public void onCancel() {
+                try {
+                    super.onCancel();
+                } finally {
+                    context.cancel(null);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.demo.grpc.server;
+
+import com.github.demo.grpc.config.GrpcServerProperties;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shuts the server down without failing the calls it still serves, configured by {@code grpc.server.shutdown.*}.
+ * <p>
+ * {@link #drain(Server)} waits for the propagation delay so that clients learn that the instance is gone, stops
+ * accepting calls, waits up to the timeout for the running calls and cancels the rest. The caller deregisters the
+ * instance and reports NOT_SERVING before.
+ */
+public class GrpcServerDrainer {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final GrpcServerProperties.Shutdown properties;
+
+    private final AtomicInteger inFlightCalls = new AtomicInteger();
+
+    private final LongAdder drainedCalls = new LongAdder();
+
+    private final LongAdder cutOffCalls = new LongAdder();
+
+    public GrpcServerDrainer(GrpcServerProperties.Shutdown properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Installs the tracer counting the calls in flight.
+     *
+     * @param serverBuilder The builder of the server.
+     */
+    public void configure(ServerBuilder<?> serverBuilder) {
+        serverBuilder.addStreamTracerFactory(new InFlightTracerFactory());
+    }
+
+    /**
+     * Drains and shuts the server down, blocks until it terminated.
+     *
+     * @param server The running server.
+     * @throws InterruptedException If interrupted while waiting, the server is shut down immediately.
+     */
+    public void drain(Server server) throws InterruptedException {
+        try {
+            long delayMillis = properties.getPropagationDelay().toMillis();
+            if (delayMillis > 0) {
+                logger.info("Waiting {} ms for clients to stop routing to this gRPC server.", delayMillis);
+                Thread.sleep(delayMillis);
+            }
+            int running = inFlightCalls.get();
+            server.shutdown();
+            if (server.awaitTermination(properties.getTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                drainedCalls.add(running);
+                logger.info("gRPC server drained {} calls.", running);
+                return;
+            }
+            int cutOff = inFlightCalls.get();
+            drainedCalls.add(Math.max(running - cutOff, 0));
+            cutOffCalls.add(cutOff);
+            logger.warn("gRPC server didn't drain within {}, cancelling {} calls.", properties.getTimeout(), cutOff);
+        } finally {
+            server.shutdownNow();
+        }
+        server.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return The number of calls the server is currently serving.
+     */
+    public int getInFlightCalls() {
+        return inFlightCalls.get();
+    }
+
+    /**
+     * @return The number of calls that completed while the server was draining.
+     */
+    public long getDrainedCalls() {
+        return drainedCalls.sum();
+    }
+
+    /**
+     * @return The number of calls cancelled because they didn't complete within the timeout.
+     */
+    public long getCutOffCalls() {
+        return cutOffCalls.sum();
+    }
+
+    private class InFlightTracerFactory extends ServerStreamTracer.Factory {
+
+        @Override
+        public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+            inFlightCalls.incrementAndGet();
+            return new ServerStreamTracer() {
+                @Override
+                public void streamClosed(Status status) {
+                    inFlightCalls.decrementAndGet();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.demo.grpc.server;
+
+import com.github.demo.grpc.config.GrpcServerProperties;
+import io.grpc.Metadata;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The executor the gRPC server runs application code on, configured by {@code grpc.server.executor.*}.
+ * <p>
+ * The {@link Type#BOUNDED} pool admits new calls at the submission of their first task: a call arriving while
+ * {@code queue-capacity} tasks wait for a thread is rejected right away with the configured status, before any
+ * application code runs and without waiting for or taking a thread of the pool. The tasks of admitted calls are
+ * always queued, dropping those would corrupt the call and running them on the transport thread would block it.
+ */
+public class GrpcServerExecutor implements DisposableBean {
+
+    public enum Type {
+        /**
+         * gRPC's default, an unbounded cached thread pool.
+         */
+        DEFAULT,
+        /**
+         * A fixed number of threads with admission control on the queue length.
+         */
+        BOUNDED,
+        /**
+         * Run on the transport threads, only for services that never block.
+         */
+        DIRECT,
+        /**
+         * A work-stealing {@link ForkJoinPool}.
+         */
+        FORK_JOIN,
+        /**
+         * One virtual thread per task, requires a JVM with virtual threads, otherwise {@link #DEFAULT} is used.
+         */
+        VIRTUAL
+    }
+
+    /**
+     * Marks the headers of the calls rejected at submission, so they are closed before reaching the services.
+     */
+    private static final Metadata.Key<String> REJECTED_KEY = Metadata.Key.of("x-grpc-executor-rejected",
+            Metadata.ASCII_STRING_MARSHALLER);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Type type;
+
+    private final ExecutorService executor;
+
+    private final int queueCapacity;
+
+    private final Status rejectionStatus;
+
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    public GrpcServerExecutor(GrpcServerProperties.ServerExecutor properties) {
+        this.queueCapacity = properties.getQueueCapacity();
+        this.rejectionStatus = Status.fromCode(properties.getRejectionStatus())
+                .withDescription("Server is overloaded, executor queue is full");
+        Type requested = properties.getType();
+        ExecutorService created = null;
+        switch (requested) {
+            case BOUNDED:
+                created = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(),
+                        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                        GrpcUtil.getThreadFactory("grpc-server-executor-%d", true));
+                break;
+            case FORK_JOIN:
+                created = new ForkJoinPool(properties.getThreads(),
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+                break;
+            case VIRTUAL:
+                created = newVirtualThreadPerTaskExecutor();
+                if (created == null) {
+                    logger.warn("Virtual threads are not supported by this JVM, using the default gRPC executor.");
+                    requested = Type.DEFAULT;
+                }
+                break;
+            default:
+                break;
+        }
+        this.type = requested;
+        this.executor = created;
+    }
+
+    /**
+     * Applies the executor and, for {@link Type#BOUNDED}, the admission control to the server.
+     *
+     * @param serverBuilder The builder of the server.
+     */
+    public void configure(ServerBuilder<?> serverBuilder) {
+        if (type == Type.BOUNDED) {
+            // only the method lookup runs on the transport thread, each call then moves to the pool on its own
+            serverBuilder.directExecutor();
+            serverBuilder.callExecutor(new ServerCallExecutorSupplier() {
+                @Override
+                public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata headers) {
+                    headers.discardAll(REJECTED_KEY);
+                    return new CallExecutor(headers);
+                }
+            });
+            serverBuilder.intercept(new RejectionInterceptor());
+        } else if (type == Type.DIRECT) {
+            serverBuilder.directExecutor();
+        } else if (executor != null) {
+            serverBuilder.executor(executor);
+        }
+        logger.info("gRPC server uses the {} executor.", type);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The number of tasks waiting for a thread, -1 if the executor doesn't expose it.
+     */
+    public long getQueueDepth() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        } else if (executor instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) executor;
+            return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of threads running tasks, -1 if the executor doesn't expose it.
+     */
+    public int getActiveThreads() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        } else if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getActiveThreadCount();
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of calls rejected because the queue was full when they started.
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Submits the tasks of one call to the bounded pool. If the queue is full when the first task is submitted the
+     * call is marked as rejected and its tasks run inline, the {@link RejectionInterceptor} then closes it with the
+     * rejection status.
+     */
+    private class CallExecutor implements Executor {
+
+        private final Metadata headers;
+
+        private volatile boolean admitted;
+
+        private volatile boolean rejected;
+
+        CallExecutor(Metadata headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejected) {
+                task.run();
+                return;
+            }
+            if (!admitted) {
+                if (getQueueDepth() >= queueCapacity) {
+                    rejected = true;
+                    rejectedCalls.increment();
+                    headers.put(REJECTED_KEY, "true");
+                    task.run();
+                    return;
+                }
+                admitted = true;
+            }
+            executor.execute(task);
+        }
+    }
+
+    private class RejectionInterceptor implements ServerInterceptor {
+
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+            if (headers.containsKey(REJECTED_KEY)) {
+                call.close(rejectionStatus, new Metadata());
+                return new ServerCall.Listener<ReqT>() {
+                };
+            }
+            return next.startCall(call, headers);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.github.demo.grpc.server;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Detachable;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.HasByteBuffer;
+import io.grpc.KnownLength;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import io.grpc.protobuf.lite.ProtoLiteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Parses requests directly from the transport's buffers instead of copying them into heap arrays first. The
+ * {@code bytes} fields of the parsed messages are {@link ByteString}s wrapping the transport's buffers, so large
+ * payloads are never copied. Enabled per service or method through {@code @GrpcService(zeroCopy = ...)}.
+ * <p>
+ * The wrapped buffers are returned to the transport's pool once the message is no longer needed:
+ * <ul>
+ * <li>the request of a unary or server streaming method stays valid until the call completes or is cancelled,</li>
+ * <li>a message of a client or bidi streaming method stays valid until the {@code onNext} that received it
+ * returns.</li>
+ * </ul>
+ * Bytes that are kept longer must be copied, e.g. with {@link ByteString#copyFrom(ByteBuffer)} or
+ * {@link ByteString#toByteArray()}. The buffers are read-only. Messages are parsed with a copy as usual when the
+ * transport can't expose its buffers, e.g. for compressed requests.
+ * <p>
+ * The buffers are handed from the marshaller to the call on the thread that parsed the message, interceptors of
+ * zero-copy services must deliver messages on the calling thread.
+ *
+ * @param <T> The message type.
+ */
+public final class ZeroCopyMarshaller<T extends MessageLite> implements MethodDescriptor.PrototypeMarshaller<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZeroCopyMarshaller.class);
+
+    /**
+     * The buffers of the message parsed last on this thread, until the call takes them.
+     */
+    private static final ThreadLocal<InputStream> PARSED = new ThreadLocal<>();
+
+    private final MethodDescriptor.PrototypeMarshaller<T> delegate;
+
+    private final Parser<T> parser;
+
+    @SuppressWarnings("unchecked")
+    public ZeroCopyMarshaller(T prototype) {
+        this.delegate = (MethodDescriptor.PrototypeMarshaller<T>) ProtoLiteUtils.marshaller(prototype);
+        this.parser = (Parser<T>) prototype.getParserForType();
+    }
+
+    @Override
+    public T getMessagePrototype() {
+        return delegate.getMessagePrototype();
+    }
+
+    @Override
+    public Class<T> getMessageClass() {
+        return delegate.getMessageClass();
+    }
+
+    @Override
+    public InputStream stream(T value) {
+        // the default stream is written straight into the transport's buffers already
+        return delegate.stream(value);
+    }
+
+    @Override
+    public T parse(InputStream stream) {
+        if (!(stream instanceof Detachable) || !(stream instanceof HasByteBuffer) || !(stream instanceof KnownLength)
+                || !((HasByteBuffer) stream).byteBufferSupported() || !stream.markSupported()) {
+            return delegate.parse(stream);
+        }
+        InputStream detached = ((Detachable) stream).detach();
+        boolean parsed = false;
+        try {
+            int size = detached.available();
+            // while marked, buffers that were read stay alive until the stream is closed
+            detached.mark(size);
+            ByteString data = ByteString.EMPTY;
+            while (detached.available() > 0) {
+                ByteBuffer buffer = ((HasByteBuffer) detached).getByteBuffer();
+                if (buffer == null || !buffer.hasRemaining()) {
+                    break;
+                }
+                int length = buffer.remaining();
+                data = data.concat(UnsafeByteOperations.unsafeWrap(buffer));
+                if (detached.skip(length) != length) {
+                    throw new IOException("Failed to skip " + length + " bytes");
+                }
+            }
+            if (data.size() != size) {
+                detached.reset();
+                return delegate.parse(detached);
+            }
+            CodedInputStream in = data.newCodedInput();
+            in.enableAliasing(true);
+            // the server already limits the message size
+            in.setSizeLimit(Integer.MAX_VALUE);
+            T message = parser.parseFrom(in, ExtensionRegistryLite.getEmptyRegistry());
+            in.checkLastTagWas(0);
+            InputStream orphan = PARSED.get();
+            if (orphan != null) {
+                logger.warn("The buffers of a zero-copy message were never taken by its call, they are released now");
+                closeQuietly(orphan);
+            }
+            PARSED.set(detached);
+            parsed = true;
+            return message;
+        } catch (InvalidProtocolBufferException e) {
+            throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
+        } catch (IOException e) {
+            throw Status.INTERNAL.withDescription("Failed to read the message").withCause(e).asRuntimeException();
+        } finally {
+            if (!parsed) {
+                closeQuietly(detached);
+            }
+        }
+    }
+
+    /**
+     * Replaces the request marshallers of the selected methods with zero-copy ones. Methods whose requests aren't
+     * protobuf messages keep their marshallers.
+     *
+     * @param definition The bound service.
+     * @param methods    Selects the methods by their full name.
+     * @return The service with the replaced methods.
+     */
+    public static ServerServiceDefinition apply(ServerServiceDefinition definition, Predicate<String> methods) {
+        ServiceDescriptor service = definition.getServiceDescriptor();
+        List<ServerMethodDefinition<?, ?>> methodDefinitions = new ArrayList<>();
+        ServiceDescriptor.Builder serviceBuilder = ServiceDescriptor.newBuilder(service.getName())
+                .setSchemaDescriptor(service.getSchemaDescriptor());
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+            ServerMethodDefinition<?, ?> methodDefinition = methods.test(method.getMethodDescriptor().getFullMethodName()) ?
+                    apply(method) : method;
+            methodDefinitions.add(methodDefinition);
+            serviceBuilder.addMethod(methodDefinition.getMethodDescriptor());
+        }
+        // the descriptor must hold the very method descriptors that are bound
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(serviceBuilder.build());
+        methodDefinitions.forEach(builder::addMethod);
+        return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ReqT, RespT> ServerMethodDefinition<ReqT, RespT> apply(ServerMethodDefinition<ReqT, RespT> definition) {
+        MethodDescriptor<ReqT, RespT> method = definition.getMethodDescriptor();
+        Object prototype = method.getRequestMarshaller() instanceof MethodDescriptor.PrototypeMarshaller ?
+                ((MethodDescriptor.PrototypeMarshaller<?>) method.getRequestMarshaller()).getMessagePrototype() : null;
+        if (!(prototype instanceof MessageLite)) {
+            logger.warn("Zero-copy parsing needs protobuf requests, {} keeps its marshaller", method.getFullMethodName());
+            return definition;
+        }
+        MethodDescriptor.Marshaller<ReqT> marshaller = (MethodDescriptor.Marshaller<ReqT>) new ZeroCopyMarshaller<>((MessageLite) prototype);
+        return ServerMethodDefinition.create(method.toBuilder(marshaller, method.getResponseMarshaller()).build(),
+                new ReleasingCallHandler<>(definition.getServerCallHandler(), method.getType().clientSendsOneMessage()));
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Failed to release the buffers of a zero-copy message", e);
+        }
+    }
+
+    /**
+     * Releases the buffers of the messages of a call according to the lifetime rules.
+     */
+    private static final class ReleasingCallHandler<ReqT, RespT> implements ServerCallHandler<ReqT, RespT> {
+
+        private final ServerCallHandler<ReqT, RespT> delegate;
+
+        private final boolean untilComplete;
+
+        ReleasingCallHandler(ServerCallHandler<ReqT, RespT> delegate, boolean untilComplete) {
+            this.delegate = delegate;
+            this.untilComplete = untilComplete;
+        }
+
+        @Override
+        public ServerCall.Listener<ReqT> startCall(ServerCall<ReqT, RespT> call, Metadata headers) {
+            ServerCall.Listener<ReqT> listener = delegate.startCall(call, headers);
+            return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+
+                private final List<InputStream> buffers = new ArrayList<>(1);
+
+                @Override
+                public void onMessage(ReqT message) {
+                    InputStream parsed = PARSED.get();
+                    PARSED.remove();
+                    if (parsed == null || untilComplete) {
+                        if (parsed != null) {
+                            buffers.add(parsed);
+                        }
+                        super.onMessage(message);
+                        return;
+                    }
+                    try {
+                        super.onMessage(message);
+                    } finally {
+                        closeQuietly(parsed);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    try {
+                        super.onComplete();
+                    } finally {
+                        release();
+                    }
+                }
+
+                @Override
+                public void onCancel() {
+                    try {
+                        super.onCancel();
+                    } finally {
+                        release();
+                    }
+                }
+
+                private void release() {
+                    buffers.forEach(ZeroCopyMarshaller::closeQuietly);
+                    buffers.clear();
+                }
+            };
+        }
+    }
+}
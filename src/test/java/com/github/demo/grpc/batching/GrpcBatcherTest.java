@@ -0,0 +1,400 @@
+package com.github.demo.grpc.batching;
+
+import com.github.demo.grpc.metrics.BatchMetrics;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoMethodDescriptorSupplier;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GrpcBatcherTest {
+
+    private static final Descriptors.FileDescriptor FILE = buildFile();
+
+    private static final Descriptors.Descriptor REQUEST = FILE.findMessageTypeByName("GetUserRequest");
+
+    private static final Descriptors.Descriptor RESPONSE = FILE.findMessageTypeByName("User");
+
+    private static final Descriptors.Descriptor BATCH_RESPONSE = FILE.findMessageTypeByName("GetUsersResponse");
+
+    private static final MethodDescriptor<DynamicMessage, DynamicMessage> GET_USER = method("GetUser");
+
+    private static final MethodDescriptor<DynamicMessage, DynamicMessage> GET_USERS = method("GetUsers");
+
+    private static final Metadata.Key<String> TENANT = Metadata.Key.of("x-tenant", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final BatchMetrics metrics = new BatchMetrics("user-service", GET_USER.getFullMethodName());
+
+    /**
+     * The requests of every batch the server received, each suffixed with the batch's tenant header.
+     */
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile Status serverStatus = Status.OK;
+
+    private volatile int droppedResponses;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        ServerServiceDefinition service = ServerServiceDefinition.builder(GET_USERS.getServiceName())
+                .addMethod(GET_USERS, ServerCalls.asyncUnaryCall((request, responseObserver) -> {
+                    String tenant = TenantInterceptor.TENANT_CONTEXT.get();
+                    List<String> ids = new ArrayList<>();
+                    DynamicMessage.Builder response = DynamicMessage.newBuilder(BATCH_RESPONSE);
+                    Descriptors.FieldDescriptor requests = request.getDescriptorForType().findFieldByName("requests");
+                    for (int i = 0; i < request.getRepeatedFieldCount(requests); i++) {
+                        String id = getId((DynamicMessage) request.getRepeatedField(requests, i));
+                        ids.add(tenant == null ? id : id + "@" + tenant);
+                        if (i >= droppedResponses) {
+                            response.addRepeatedField(BATCH_RESPONSE.findFieldByName("users"), user("user-" + id));
+                        }
+                    }
+                    batches.add(ids);
+                    if (!serverStatus.isOk()) {
+                        responseObserver.onError(serverStatus.asRuntimeException());
+                        return;
+                    }
+                    responseObserver.onNext(response.build());
+                    responseObserver.onCompleted();
+                }))
+                .build();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(ServerInterceptors.intercept(service, new TenantInterceptor()))
+                .build().start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    @AfterEach
+    void stopServer() {
+        channel.shutdownNow();
+        server.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void fansOutTheResponsesInRequestOrder() throws Exception {
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(channel, Duration.ofSeconds(10), 3);
+
+        List<CompletableFuture<DynamicMessage>> calls = Arrays.asList(
+                call(batcher, "1", new Metadata()), call(batcher, "2", new Metadata()), call(batcher, "3", new Metadata()));
+
+        assertEquals("user-1", getId(calls.get(0).get(5, TimeUnit.SECONDS)));
+        assertEquals("user-2", getId(calls.get(1).get(5, TimeUnit.SECONDS)));
+        assertEquals("user-3", getId(calls.get(2).get(5, TimeUnit.SECONDS)));
+        assertEquals(Collections.singletonList(Arrays.asList("1", "2", "3")), batches);
+        assertEquals(1, metrics.getBatches());
+        assertEquals(3, metrics.getCalls());
+    }
+
+    @Test
+    void sendsAPartialBatchOnceTheWindowEnds() throws Exception {
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(channel, Duration.ofMillis(20), 100);
+
+        CompletableFuture<DynamicMessage> first = call(batcher, "1", new Metadata());
+        CompletableFuture<DynamicMessage> second = call(batcher, "2", new Metadata());
+
+        assertEquals("user-1", getId(first.get(5, TimeUnit.SECONDS)));
+        assertEquals("user-2", getId(second.get(5, TimeUnit.SECONDS)));
+        assertEquals(Collections.singletonList(Arrays.asList("1", "2")), batches);
+    }
+
+    @Test
+    void batchesOnlyCallsWithEqualHeaders() throws Exception {
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(channel, Duration.ofSeconds(10), 2);
+
+        List<CompletableFuture<DynamicMessage>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Metadata headers = new Metadata();
+            headers.put(TENANT, i % 2 == 0 ? "a" : "b");
+            calls.add(call(batcher, String.valueOf(i), headers));
+        }
+
+        for (CompletableFuture<DynamicMessage> call : calls) {
+            call.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList(Arrays.asList("0@a", "2@a"), Arrays.asList("1@b", "3@b")), batches);
+    }
+
+    @Test
+    void failsAllCallsWithTheStatusOfAFailedBatch() {
+        serverStatus = Status.UNAVAILABLE.withDescription("overloaded");
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(channel, Duration.ofSeconds(10), 2);
+
+        CompletableFuture<DynamicMessage> first = call(batcher, "1", new Metadata());
+        CompletableFuture<DynamicMessage> second = call(batcher, "2", new Metadata());
+
+        assertEquals(Status.Code.UNAVAILABLE, getStatus(first).getCode());
+        assertEquals(Status.Code.UNAVAILABLE, getStatus(second).getCode());
+        assertEquals(1, metrics.getFailedBatches());
+    }
+
+    @Test
+    void failsAllCallsWhenResponsesAreMissing() {
+        droppedResponses = 1;
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(channel, Duration.ofSeconds(10), 2);
+
+        CompletableFuture<DynamicMessage> first = call(batcher, "1", new Metadata());
+        CompletableFuture<DynamicMessage> second = call(batcher, "2", new Metadata());
+
+        assertEquals(Status.Code.INTERNAL, getStatus(first).getCode());
+        assertEquals(Status.Code.INTERNAL, getStatus(second).getCode());
+        assertEquals(1, metrics.getFailedBatches());
+    }
+
+    @Test
+    void countsABatchThatFailsToSendOnce() {
+        Channel failing = ClientInterceptors.intercept(channel, new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+                    @Override
+                    public void sendMessage(ReqT message) {
+                        throw new IllegalStateException("send failed");
+                    }
+                };
+            }
+        });
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(failing, Duration.ofSeconds(10), 2);
+
+        CompletableFuture<DynamicMessage> first = call(batcher, "1", new Metadata());
+        CompletableFuture<DynamicMessage> second = call(batcher, "2", new Metadata());
+
+        // closed either by the cancelled batch call or by the batcher, whichever comes first
+        assertEquals("Failed to send a batch", getStatus(first).getDescription());
+        assertEquals("Failed to send a batch", getStatus(second).getDescription());
+        assertEquals(1, metrics.getFailedBatches());
+    }
+
+    @Test
+    void leavesCancelledCallsOutOfTheBatch() throws Exception {
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(channel, Duration.ofMillis(50), 100);
+        List<ClientCall<DynamicMessage, DynamicMessage>> started = new ArrayList<>();
+
+        CompletableFuture<DynamicMessage> cancelled = call(batcher, "1", new Metadata(), started);
+        CompletableFuture<DynamicMessage> kept = call(batcher, "2", new Metadata());
+        started.get(0).cancel("not needed", null);
+
+        assertEquals(Status.Code.CANCELLED, getStatus(cancelled).getCode());
+        assertEquals("user-2", getId(kept.get(5, TimeUnit.SECONDS)));
+        assertEquals(Collections.singletonList(Collections.singletonList("2")), batches);
+    }
+
+    @Test
+    void expiresCallsWhileTheyWaitForTheirBatch() {
+        GrpcBatcher<DynamicMessage, DynamicMessage> batcher = newBatcher(channel, Duration.ofSeconds(10), 100);
+        ClientCall<DynamicMessage, DynamicMessage> call = batcher.newCall(CallOptions.DEFAULT.withDeadlineAfter(20, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<DynamicMessage> result = start(call, "1", new Metadata());
+
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, getStatus(result).getCode());
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void rejectsMethodsWithoutProtobufDescriptors() {
+        MethodDescriptor<DynamicMessage, DynamicMessage> plain = GET_USER.toBuilder().setSchemaDescriptor(null).build();
+
+        assertThrows(IllegalArgumentException.class, () -> new GrpcBatcher<>(channel, plain, GET_USERS,
+                Duration.ofMillis(1), 10, scheduler, metrics));
+    }
+
+    private GrpcBatcher<DynamicMessage, DynamicMessage> newBatcher(Channel channel, Duration window, int maxSize) {
+        return new GrpcBatcher<>(channel, GET_USER, GET_USERS, window, maxSize, scheduler, metrics);
+    }
+
+    private static CompletableFuture<DynamicMessage> call(GrpcBatcher<DynamicMessage, DynamicMessage> batcher, String id,
+                                                          Metadata headers) {
+        return call(batcher, id, headers, new ArrayList<>());
+    }
+
+    private static CompletableFuture<DynamicMessage> call(GrpcBatcher<DynamicMessage, DynamicMessage> batcher, String id,
+                                                          Metadata headers, List<ClientCall<DynamicMessage, DynamicMessage>> started) {
+        ClientCall<DynamicMessage, DynamicMessage> call = batcher.newCall(CallOptions.DEFAULT);
+        started.add(call);
+        return start(call, id, headers);
+    }
+
+    private static CompletableFuture<DynamicMessage> start(ClientCall<DynamicMessage, DynamicMessage> call, String id,
+                                                           Metadata headers) {
+        CompletableFuture<DynamicMessage> result = new CompletableFuture<>();
+        call.start(new ClientCall.Listener<DynamicMessage>() {
+
+            private DynamicMessage response;
+
+            @Override
+            public void onMessage(DynamicMessage message) {
+                response = message;
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                if (status.isOk()) {
+                    result.complete(response);
+                } else {
+                    result.completeExceptionally(status.asRuntimeException(trailers));
+                }
+            }
+        }, headers);
+        call.request(1);
+        call.sendMessage(DynamicMessage.newBuilder(REQUEST).setField(REQUEST.findFieldByName("id"), id).build());
+        call.halfClose();
+        return result;
+    }
+
+    private static Status getStatus(CompletableFuture<DynamicMessage> result) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof StatusRuntimeException, () -> "Unexpected failure " + e.getCause());
+        return ((StatusRuntimeException) e.getCause()).getStatus();
+    }
+
+    private static String getId(DynamicMessage message) {
+        return (String) message.getField(message.getDescriptorForType().findFieldByName("id"));
+    }
+
+    private static DynamicMessage user(String id) {
+        return DynamicMessage.newBuilder(RESPONSE).setField(RESPONSE.findFieldByName("id"), id).build();
+    }
+
+    /**
+     * The messages and methods {@code protoc} would generate for:
+     * <pre>
+     * message GetUserRequest { string id = 1; }
+     * message User { string id = 1; }
+     * message GetUsersRequest { repeated GetUserRequest requests = 1; }
+     * message GetUsersResponse { repeated User users = 1; }
+     * service UserService {
+     *   rpc GetUser(GetUserRequest) returns (User);
+     *   rpc GetUsers(GetUsersRequest) returns (GetUsersResponse);
+     * }
+     * </pre>
+     */
+    private static Descriptors.FileDescriptor buildFile() {
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("user.proto")
+                .setPackage("user")
+                .setSyntax("proto3")
+                .addMessageType(message("GetUserRequest", "id", null))
+                .addMessageType(message("User", "id", null))
+                .addMessageType(message("GetUsersRequest", "requests", ".user.GetUserRequest"))
+                .addMessageType(message("GetUsersResponse", "users", ".user.User"))
+                .addService(DescriptorProtos.ServiceDescriptorProto.newBuilder()
+                        .setName("UserService")
+                        .addMethod(DescriptorProtos.MethodDescriptorProto.newBuilder()
+                                .setName("GetUser").setInputType(".user.GetUserRequest").setOutputType(".user.User"))
+                        .addMethod(DescriptorProtos.MethodDescriptorProto.newBuilder()
+                                .setName("GetUsers").setInputType(".user.GetUsersRequest").setOutputType(".user.GetUsersResponse")))
+                .build();
+        try {
+            return Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0]);
+        } catch (Descriptors.DescriptorValidationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param repeatedType The type of the repeated message field, null for a single string field.
+     */
+    private static DescriptorProtos.DescriptorProto message(String name, String field, String repeatedType) {
+        DescriptorProtos.FieldDescriptorProto.Builder fieldBuilder = DescriptorProtos.FieldDescriptorProto.newBuilder()
+                .setName(field)
+                .setNumber(1);
+        if (repeatedType == null) {
+            fieldBuilder.setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL)
+                    .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING);
+        } else {
+            fieldBuilder.setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED)
+                    .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE)
+                    .setTypeName(repeatedType);
+        }
+        return DescriptorProtos.DescriptorProto.newBuilder().setName(name).addField(fieldBuilder).build();
+    }
+
+    private static MethodDescriptor<DynamicMessage, DynamicMessage> method(String name) {
+        Descriptors.MethodDescriptor method = FILE.findServiceByName("UserService").findMethodByName(name);
+        return MethodDescriptor.<DynamicMessage, DynamicMessage>newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName(method.getService().getFullName(), name))
+                .setRequestMarshaller(ProtoUtils.marshaller(DynamicMessage.getDefaultInstance(method.getInputType())))
+                .setResponseMarshaller(ProtoUtils.marshaller(DynamicMessage.getDefaultInstance(method.getOutputType())))
+                .setSchemaDescriptor(new ProtoMethodDescriptorSupplier() {
+                    @Override
+                    public Descriptors.MethodDescriptor getMethodDescriptor() {
+                        return method;
+                    }
+
+                    @Override
+                    public Descriptors.ServiceDescriptor getServiceDescriptor() {
+                        return method.getService();
+                    }
+
+                    @Override
+                    public Descriptors.FileDescriptor getFileDescriptor() {
+                        return method.getFile();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Hands the tenant header to the handler.
+     */
+    private static final class TenantInterceptor implements ServerInterceptor {
+
+        static final Context.Key<String> TENANT_CONTEXT = Context.key("tenant");
+
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                     ServerCallHandler<ReqT, RespT> next) {
+            return Contexts.interceptCall(Context.current().withValue(TENANT_CONTEXT, headers.get(TENANT)), call, headers, next);
+        }
+    }
+}
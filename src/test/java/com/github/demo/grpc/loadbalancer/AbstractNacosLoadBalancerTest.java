@@ -0,0 +1,357 @@
+package com.github.demo.grpc.loadbalancer;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class AbstractNacosLoadBalancerTest {
+
+    private static final MethodDescriptor<Void, Void> METHOD = MethodDescriptor.<Void, Void>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName("test.Service/Method")
+            .setRequestMarshaller(new VoidMarshaller())
+            .setResponseMarshaller(new VoidMarshaller())
+            .build();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final SynchronizationContext syncContext = new SynchronizationContext((thread, e) -> {
+        throw new AssertionError(e);
+    });
+
+    private final FakeHelper helper = new FakeHelper();
+
+    private final RoundRobinLoadBalancer loadBalancer = new RoundRobinLoadBalancer(helper);
+
+    @AfterEach
+    void shutdown() {
+        syncContext.execute(loadBalancer::shutdown);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void ejectsAfterConsecutiveFailures() {
+        start(3, config(3, 0.5, 100, 60_000, 60_000, 60_000, 0.5));
+        FakeSubchannel failing = helper.subchannels.get(0);
+
+        recordOutcomes(failing, Status.UNAVAILABLE, 3);
+
+        assertFalse(pickAll().contains(failing));
+        assertEquals(2, pickAll().size());
+    }
+
+    @Test
+    void ignoresApplicationErrors() {
+        start(3, config(3, 0.5, 100, 60_000, 60_000, 60_000, 0.5));
+        FakeSubchannel failing = helper.subchannels.get(0);
+
+        recordOutcomes(failing, Status.NOT_FOUND, 10);
+        recordOutcomes(failing, Status.PERMISSION_DENIED, 10);
+
+        assertTrue(pickAll().contains(failing));
+    }
+
+    @Test
+    void restartsCountingConsecutiveFailuresAfterASuccess() {
+        start(3, config(3, 0.5, 100, 60_000, 60_000, 60_000, 0.5));
+        FakeSubchannel failing = helper.subchannels.get(0);
+
+        recordOutcomes(failing, Status.UNAVAILABLE, 2);
+        recordOutcomes(failing, Status.OK, 1);
+        recordOutcomes(failing, Status.DEADLINE_EXCEEDED, 2);
+
+        assertTrue(pickAll().contains(failing));
+    }
+
+    @Test
+    void neverEjectsMoreThanTheMaximumFraction() {
+        start(2, config(3, 0.5, 100, 60_000, 60_000, 60_000, 0.5));
+        FakeSubchannel first = helper.subchannels.get(0);
+        FakeSubchannel second = helper.subchannels.get(1);
+
+        recordOutcomes(first, Status.UNAVAILABLE, 3);
+        recordOutcomes(second, Status.UNAVAILABLE, 3);
+
+        assertEquals(Collections.singleton(second), pickAll());
+    }
+
+    @Test
+    void usesEjectedSubchannelsWhenNoOtherIsReady() {
+        start(1, config(3, 0.5, 100, 60_000, 60_000, 60_000, 1));
+        FakeSubchannel only = helper.subchannels.get(0);
+
+        recordOutcomes(only, Status.UNAVAILABLE, 3);
+
+        assertEquals(Collections.singleton(only), pickAll());
+    }
+
+    @Test
+    void ejectsOnFailureRateUntilTheEjectionTimeEnds() {
+        // consecutive failures disabled, only the rate counts
+        start(3, config(0, 0.5, 4, 50, 300, 60_000, 0.5));
+        FakeSubchannel failing = helper.subchannels.get(0);
+
+        recordOutcomes(failing, Status.UNAVAILABLE, 3);
+        recordOutcomes(failing, Status.OK, 1);
+
+        await(() -> !pickAll().contains(failing));
+        await(() -> pickAll().contains(failing));
+    }
+
+    @Test
+    void ignoresTheFailureRateBelowTheMinimumCalls() throws InterruptedException {
+        start(3, config(0, 0.5, 10, 50, 60_000, 60_000, 0.5));
+        FakeSubchannel failing = helper.subchannels.get(0);
+
+        recordOutcomes(failing, Status.UNAVAILABLE, 5);
+        // a few intervals
+        Thread.sleep(200);
+
+        assertTrue(pickAll().contains(failing));
+    }
+
+    @Test
+    void endsEjectionsWhenOutlierDetectionIsDisabled() {
+        start(3, config(3, 0.5, 100, 60_000, 60_000, 60_000, 0.5));
+        FakeSubchannel failing = helper.subchannels.get(0);
+        recordOutcomes(failing, Status.UNAVAILABLE, 3);
+
+        syncContext.execute(() -> loadBalancer.handleResolvedAddresses(LoadBalancer.ResolvedAddresses.newBuilder()
+                .setAddresses(addresses(3))
+                .setLoadBalancingPolicyConfig(NacosLoadBalancerConfig.DEFAULT)
+                .build()));
+
+        assertTrue(pickAll().contains(failing));
+    }
+
+    private static NacosLoadBalancerConfig config(int consecutiveFailures, double failureRateThreshold, int minimumCalls,
+                                                  long intervalMillis, long baseEjectionTimeMillis,
+                                                  long maxEjectionTimeMillis, double maxEjectedFraction) {
+        return new NacosLoadBalancerConfig(new OutlierDetectionConfig(consecutiveFailures, failureRateThreshold,
+                minimumCalls, intervalMillis, baseEjectionTimeMillis, maxEjectionTimeMillis, maxEjectedFraction), null);
+    }
+
+    private static List<EquivalentAddressGroup> addresses(int count) {
+        List<EquivalentAddressGroup> addresses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            addresses.add(new EquivalentAddressGroup(new InetSocketAddress("10.0.0." + (i + 1), 9000)));
+        }
+        return addresses;
+    }
+
+    private void start(int subchannels, NacosLoadBalancerConfig config) {
+        syncContext.execute(() -> loadBalancer.handleResolvedAddresses(LoadBalancer.ResolvedAddresses.newBuilder()
+                .setAddresses(addresses(subchannels))
+                .setLoadBalancingPolicyConfig(config)
+                .build()));
+        for (FakeSubchannel subchannel : helper.subchannels) {
+            syncContext.execute(() -> subchannel.listener.onSubchannelState(ConnectivityStateInfo.forNonError(ConnectivityState.READY)));
+        }
+        assertEquals(ConnectivityState.READY, helper.state);
+    }
+
+    /**
+     * Picks the given subchannel and closes the given number of calls on it with the status.
+     */
+    private void recordOutcomes(FakeSubchannel subchannel, Status status, int calls) {
+        for (int i = 0; i < calls; i++) {
+            LoadBalancer.PickResult result;
+            do {
+                result = helper.picker.pickSubchannel(new FakePickArgs());
+            } while (result.getSubchannel() != subchannel);
+            ClientStreamTracer tracer = result.getStreamTracerFactory()
+                    .newClientStreamTracer(ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+            tracer.streamClosed(status);
+        }
+    }
+
+    private Set<LoadBalancer.Subchannel> pickAll() {
+        Set<LoadBalancer.Subchannel> picked = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            picked.add(helper.picker.pickSubchannel(new FakePickArgs()).getSubchannel());
+        }
+        return picked;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("Condition not met within 5 seconds");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+
+    private static final class RoundRobinLoadBalancer extends AbstractNacosLoadBalancer {
+
+        RoundRobinLoadBalancer(Helper helper) {
+            super(helper);
+        }
+
+        @Override
+        protected SubchannelPicker newPicker(List<Subchannel> readySubchannels) {
+            AtomicInteger next = new AtomicInteger();
+            return new SubchannelPicker() {
+                @Override
+                public PickResult pickSubchannel(PickSubchannelArgs args) {
+                    return PickResult.withSubchannel(
+                            readySubchannels.get(Math.floorMod(next.getAndIncrement(), readySubchannels.size())));
+                }
+            };
+        }
+    }
+
+    private final class FakeHelper extends LoadBalancer.Helper {
+
+        final List<FakeSubchannel> subchannels = new ArrayList<>();
+
+        volatile ConnectivityState state;
+
+        volatile LoadBalancer.SubchannelPicker picker;
+
+        @Override
+        public LoadBalancer.Subchannel createSubchannel(LoadBalancer.CreateSubchannelArgs args) {
+            FakeSubchannel subchannel = new FakeSubchannel(args);
+            subchannels.add(subchannel);
+            return subchannel;
+        }
+
+        @Override
+        public void updateBalancingState(ConnectivityState newState, LoadBalancer.SubchannelPicker newPicker) {
+            state = newState;
+            picker = newPicker;
+        }
+
+        @Override
+        public SynchronizationContext getSynchronizationContext() {
+            return syncContext;
+        }
+
+        @Override
+        public ScheduledExecutorService getScheduledExecutorService() {
+            return scheduler;
+        }
+
+        @Override
+        public void refreshNameResolution() {
+        }
+
+        @Override
+        public ManagedChannel createOobChannel(EquivalentAddressGroup eag, String authority) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getAuthority() {
+            return "test";
+        }
+    }
+
+    private static final class FakeSubchannel extends LoadBalancer.Subchannel {
+
+        private final Attributes attributes;
+
+        private volatile List<EquivalentAddressGroup> addresses;
+
+        LoadBalancer.SubchannelStateListener listener;
+
+        FakeSubchannel(LoadBalancer.CreateSubchannelArgs args) {
+            this.attributes = args.getAttributes();
+            this.addresses = args.getAddresses();
+        }
+
+        @Override
+        public void start(LoadBalancer.SubchannelStateListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void requestConnection() {
+        }
+
+        @Override
+        public List<EquivalentAddressGroup> getAllAddresses() {
+            return addresses;
+        }
+
+        @Override
+        public void updateAddresses(List<EquivalentAddressGroup> addresses) {
+            this.addresses = addresses;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return attributes;
+        }
+    }
+
+    private static final class FakePickArgs extends LoadBalancer.PickSubchannelArgs {
+
+        @Override
+        public CallOptions getCallOptions() {
+            return CallOptions.DEFAULT;
+        }
+
+        @Override
+        public Metadata getHeaders() {
+            return new Metadata();
+        }
+
+        @Override
+        public MethodDescriptor<?, ?> getMethodDescriptor() {
+            return METHOD;
+        }
+    }
+
+    private static final class VoidMarshaller implements MethodDescriptor.Marshaller<Void> {
+
+        @Override
+        public InputStream stream(Void value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Void parse(InputStream stream) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
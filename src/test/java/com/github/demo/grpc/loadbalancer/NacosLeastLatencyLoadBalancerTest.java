@@ -0,0 +1,173 @@
+package com.github.demo.grpc.loadbalancer;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class NacosLeastLatencyLoadBalancerTest {
+
+    private static final MethodDescriptor<Void, Void> UNARY = MethodDescriptor.<Void, Void>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName("test.Service/Method")
+            .setRequestMarshaller(new VoidMarshaller())
+            .setResponseMarshaller(new VoidMarshaller())
+            .build();
+
+    private static final long DECAY_MILLIS = 20;
+
+    private final FakeSubchannel healthy = new FakeSubchannel();
+
+    private final FakeSubchannel penalized = new FakeSubchannel();
+
+    private final PeakEwma healthyStats = new PeakEwma(DECAY_MILLIS, TimeUnit.MILLISECONDS);
+
+    private final PeakEwma penalizedStats = new PeakEwma(DECAY_MILLIS, TimeUnit.MILLISECONDS);
+
+    private final NacosLeastLatencyLoadBalancer.PowerOfTwoChoicesPicker picker =
+            new NacosLeastLatencyLoadBalancer.PowerOfTwoChoicesPicker(
+                    new LoadBalancer.Subchannel[]{healthy, penalized},
+                    new PeakEwma[]{healthyStats, penalizedStats},
+                    new double[]{1, 1});
+
+    @Test
+    void picksAPenalizedEndpointAgainOnceItsEstimateDecayed() {
+        recordCall(healthyStats, TimeUnit.MILLISECONDS.toNanos(1));
+        penalizedStats.callStarted();
+        penalizedStats.callFailed();
+
+        assertSame(healthy, pick().getSubchannel());
+
+        // the peer keeps getting calls, the penalized endpoint none
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pick().getSubchannel() != penalized) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("The penalized endpoint was never picked again");
+            }
+            recordCall(healthyStats, TimeUnit.MILLISECONDS.toNanos(1));
+            sleep(1);
+        }
+    }
+
+    @Test
+    void capsThePenaltyOfConsecutiveFailures() {
+        for (int i = 0; i < 10; i++) {
+            penalizedStats.callStarted();
+            penalizedStats.callFailed();
+        }
+
+        double average = penalizedStats.getAverage(System.nanoTime());
+        assertTrue(average <= TimeUnit.MILLISECONDS.toNanos(DECAY_MILLIS), () -> "Penalty grew to " + average);
+    }
+
+    @Test
+    void penalizesOnlyEndpointFailures() {
+        closeCall(Status.UNAVAILABLE);
+        assertTrue(penalizedStats.getAverage(System.nanoTime()) > TimeUnit.MILLISECONDS.toNanos(DECAY_MILLIS) / 2);
+    }
+
+    @Test
+    void measuresApplicationErrorsLikeSuccessfulCalls() {
+        closeCall(Status.NOT_FOUND);
+
+        assertTrue(penalizedStats.getAverage(System.nanoTime()) < TimeUnit.MILLISECONDS.toNanos(DECAY_MILLIS) / 2);
+    }
+
+    @Test
+    void ignoresCancelledCalls() {
+        closeCall(Status.CANCELLED);
+
+        assertEquals(1d, penalizedStats.cost());
+    }
+
+    /**
+     * Closes a unary call on the penalized endpoint with the given status.
+     */
+    private void closeCall(Status status) {
+        LoadBalancer.PickResult result;
+        do {
+            result = pick();
+            // the first pick of two endpoints without estimates is random
+        } while (result.getSubchannel() != penalized);
+        ClientStreamTracer tracer = result.getStreamTracerFactory()
+                .newClientStreamTracer(ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+        tracer.streamClosed(status);
+    }
+
+    private LoadBalancer.PickResult pick() {
+        return picker.pickSubchannel(new FakePickArgs());
+    }
+
+    private static void recordCall(PeakEwma stats, long latencyNanos) {
+        stats.callStarted();
+        stats.callFinished(latencyNanos);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+    }
+
+    private static final class FakeSubchannel extends LoadBalancer.Subchannel {
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void requestConnection() {
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return Attributes.EMPTY;
+        }
+    }
+
+    private static final class FakePickArgs extends LoadBalancer.PickSubchannelArgs {
+
+        @Override
+        public CallOptions getCallOptions() {
+            return CallOptions.DEFAULT;
+        }
+
+        @Override
+        public Metadata getHeaders() {
+            return new Metadata();
+        }
+
+        @Override
+        public MethodDescriptor<?, ?> getMethodDescriptor() {
+            return UNARY;
+        }
+    }
+
+    private static final class VoidMarshaller implements MethodDescriptor.Marshaller<Void> {
+
+        @Override
+        public InputStream stream(Void value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Void parse(InputStream stream) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.demo.grpc.metrics;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GrpcClientMetricsTest {
+
+    private static final String SERVICE = "test-service";
+
+    private static final MethodDescriptor<Void, Void> METHOD = MethodDescriptor.<Void, Void>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName("test.Service/Method")
+            .setRequestMarshaller(new VoidMarshaller())
+            .setResponseMarshaller(new VoidMarshaller())
+            .build();
+
+    private static final InetSocketAddress FIRST = InetSocketAddress.createUnresolved("10.0.0.1", 9090);
+
+    private static final InetSocketAddress SECOND = InetSocketAddress.createUnresolved("10.0.0.2", 9090);
+
+    private final GrpcClientMetrics metrics = new GrpcClientMetrics(Duration.ofMillis(50));
+
+    private final ClientInterceptor interceptor = metrics.newInterceptor(SERVICE);
+
+    private final List<CallMetrics> removed = new ArrayList<>();
+
+    @Test
+    void removesTheMetricsOfIdleEndpoints() throws InterruptedException {
+        metrics.addRemovalListener(removed::add);
+        call(FIRST);
+        call(SECOND);
+        CallMetrics first = metrics.getCallMetrics(SERVICE, METHOD.getFullMethodName(), FIRST);
+
+        callSecondUntilRemoval();
+
+        assertEquals(1, removed.size());
+        assertTrue(removed.contains(first));
+        assertNull(metrics.getCallMetrics(SERVICE, METHOD.getFullMethodName(), FIRST));
+        assertNotNull(metrics.getCallMetrics(SERVICE, METHOD.getFullMethodName(), SECOND));
+        assertEquals(1, metrics.getCallMetrics().size());
+    }
+
+    @Test
+    void keepsEndpointsWithCallsInFlight() throws InterruptedException {
+        metrics.addRemovalListener(removed::add);
+        ClientStreamTracer pending = start(FIRST);
+
+        Thread.sleep(150);
+        call(SECOND);
+        Thread.sleep(150);
+        call(SECOND);
+
+        assertTrue(removed.isEmpty());
+        pending.streamClosed(Status.OK);
+        assertEquals(1, metrics.getCallMetrics(SERVICE, METHOD.getFullMethodName(), FIRST).getLatency().getCount());
+    }
+
+    @Test
+    void recreatesTheMetricsOfAnEndpointThatCameBack() throws InterruptedException {
+        metrics.addRemovalListener(removed::add);
+        call(FIRST);
+        callSecondUntilRemoval();
+
+        call(FIRST);
+
+        CallMetrics recreated = metrics.getCallMetrics(SERVICE, METHOD.getFullMethodName(), FIRST);
+        assertNotNull(recreated);
+        assertEquals(1, recreated.getLatency().getCount());
+    }
+
+    /**
+     * Only the second endpoint keeps getting calls until an endpoint is removed.
+     */
+    private void callSecondUntilRemoval() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (removed.isEmpty() && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+            call(SECOND);
+        }
+    }
+
+    private void call(InetSocketAddress endpoint) {
+        start(endpoint).streamClosed(Status.OK);
+    }
+
+    private ClientStreamTracer start(InetSocketAddress endpoint) {
+        CapturingChannel channel = new CapturingChannel();
+        interceptor.interceptCall(METHOD, CallOptions.DEFAULT, channel);
+        ClientStreamTracer tracer = channel.callOptions.getStreamTracerFactories().get(0)
+                .newClientStreamTracer(ClientStreamTracer.StreamInfo.newBuilder().build(), new Metadata());
+        tracer.streamCreated(Attributes.newBuilder().set(Grpc.TRANSPORT_ATTR_REMOTE_ADDR, endpoint).build(), new Metadata());
+        return tracer;
+    }
+
+    private static final class CapturingChannel extends Channel {
+
+        private CallOptions callOptions;
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+            this.callOptions = callOptions;
+            return null;
+        }
+
+        @Override
+        public String authority() {
+            return SERVICE;
+        }
+    }
+
+    private static final class VoidMarshaller implements MethodDescriptor.Marshaller<Void> {
+
+        @Override
+        public InputStream stream(Void value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Void parse(InputStream stream) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
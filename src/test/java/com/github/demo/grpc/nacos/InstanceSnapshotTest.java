@@ -0,0 +1,117 @@
+package com.github.demo.grpc.nacos;
+
+import io.grpc.EquivalentAddressGroup;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstanceSnapshotTest {
+
+    @Test
+    void reportsAllInstancesAsAddedToTheEmptySnapshot() {
+        InstanceSnapshot.Diff diff = InstanceSnapshot.EMPTY.diff(Arrays.asList(
+                instance("10.0.0.1", 9000), instance("10.0.0.2", 9000)));
+
+        assertTrue(diff.hasChanges());
+        assertEquals(2, diff.getAdded().size());
+        assertTrue(diff.getRemoved().isEmpty());
+        assertEquals(Arrays.asList(address("10.0.0.1", 9000), address("10.0.0.2", 9000)),
+                diff.getSnapshot().getAddressGroups().stream().map(group -> group.getAddresses().get(0))
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    void reusesTheAddressGroupsOfUnchangedInstances() {
+        InstanceSnapshot snapshot = InstanceSnapshot.EMPTY.diff(Arrays.asList(
+                instance("10.0.0.1", 9000), instance("10.0.0.2", 9000))).getSnapshot();
+
+        // the order of the instances doesn't matter
+        InstanceSnapshot.Diff diff = snapshot.diff(Arrays.asList(
+                instance("10.0.0.2", 9000), instance("10.0.0.1", 9000)));
+
+        assertFalse(diff.hasChanges());
+        assertEquals(2, diff.getUnchanged().size());
+        assertSame(snapshot.getAddressGroups().get(1), diff.getSnapshot().getAddressGroups().get(0));
+        assertSame(snapshot.getAddressGroups().get(0), diff.getSnapshot().getAddressGroups().get(1));
+    }
+
+    @Test
+    void separatesAddedRemovedAndUpdatedInstances() {
+        InstanceSnapshot snapshot = InstanceSnapshot.EMPTY.diff(Arrays.asList(
+                instance("10.0.0.1", 9000), instance("10.0.0.2", 9000), instance("10.0.0.3", 9000))).getSnapshot();
+        EquivalentAddressGroup kept = snapshot.getAddressGroups().get(0);
+        EquivalentAddressGroup reweighted = snapshot.getAddressGroups().get(1);
+        EquivalentAddressGroup gone = snapshot.getAddressGroups().get(2);
+
+        InstanceSnapshot.Diff diff = snapshot.diff(Arrays.asList(
+                instance("10.0.0.1", 9000),
+                instance("10.0.0.2", 9000, Collections.singletonMap(NacosAttributes.WEIGHT_METADATA, "3")),
+                instance("10.0.0.4", 9000)));
+
+        assertTrue(diff.hasChanges());
+        assertEquals(Collections.singletonList(kept), diff.getUnchanged());
+        assertEquals(Collections.singletonList(gone), diff.getRemoved());
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(address("10.0.0.4", 9000), diff.getAdded().get(0).getAddresses().get(0));
+        assertEquals(1, diff.getUpdated().size());
+        EquivalentAddressGroup updated = diff.getUpdated().get(0);
+        // updated endpoints keep their socket address objects but get the new attributes
+        assertSame(reweighted.getAddresses().get(0), updated.getAddresses().get(0));
+        assertEquals(3.0d, NacosAttributes.getWeight(updated.getAttributes()));
+        assertEquals(3, diff.getSnapshot().size());
+    }
+
+    @Test
+    void distinguishesPortsOfTheSameHost() {
+        InstanceSnapshot snapshot = InstanceSnapshot.EMPTY.diff(Collections.singletonList(
+                instance("10.0.0.1", 9000))).getSnapshot();
+
+        InstanceSnapshot.Diff diff = snapshot.diff(Collections.singletonList(instance("10.0.0.1", 9001)));
+
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(1, diff.getRemoved().size());
+    }
+
+    @Test
+    void reportsDuplicateEndpointsOnce() {
+        InstanceSnapshot.Diff diff = InstanceSnapshot.EMPTY.diff(Arrays.asList(
+                instance("10.0.0.1", 9000), instance("10.0.0.1", 9000)));
+
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(1, diff.getSnapshot().size());
+    }
+
+    @Test
+    void reportsAllInstancesAsRemovedWhenNoneAreLeft() {
+        InstanceSnapshot snapshot = InstanceSnapshot.EMPTY.diff(Arrays.asList(
+                instance("10.0.0.1", 9000), instance("10.0.0.2", 9000))).getSnapshot();
+
+        InstanceSnapshot.Diff diff = snapshot.diff(Collections.emptyList());
+
+        assertEquals(2, diff.getRemoved().size());
+        assertTrue(diff.getSnapshot().isEmpty());
+    }
+
+    private static ServiceInstance instance(String host, int port) {
+        return instance(host, port, Collections.emptyMap());
+    }
+
+    private static ServiceInstance instance(String host, int port, Map<String, String> metadata) {
+        return new DefaultServiceInstance(host + ":" + port, "service", host, port, false, metadata);
+    }
+
+    private static InetSocketAddress address(String host, int port) {
+        return new InetSocketAddress(host, port);
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.demo.grpc.nacos;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NacosSnapshotStoreTest {
+
+    private static final String SERVICE = "test-service";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresTheMetadataOfEveryInstance() {
+        NacosSnapshotStore store = new NacosSnapshotStore(directory);
+        List<ServiceInstance> saved = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            Map<String, String> metadata = new HashMap<>();
+            metadata.put("weight", Integer.toString(i));
+            metadata.put("preserved.zone", "zone-" + i);
+            saved.add(new DefaultServiceInstance("id-" + i, SERVICE, "10.0.0." + i, 9000, false, metadata));
+        }
+
+        store.save(SERVICE, saved);
+        List<ServiceInstance> loaded = store.load(SERVICE).getInstances();
+
+        assertEquals(saved.size(), loaded.size());
+        for (int i = 0; i < saved.size(); i++) {
+            assertEquals(saved.get(i).getInstanceId(), loaded.get(i).getInstanceId());
+            assertEquals(saved.get(i).getHost(), loaded.get(i).getHost());
+            assertEquals(saved.get(i).getMetadata(), loaded.get(i).getMetadata());
+        }
+    }
+
+    @Test
+    void restoresInstancesWithoutMetadata() {
+        NacosSnapshotStore store = new NacosSnapshotStore(directory);
+        store.save(SERVICE, Collections.singletonList(
+                new DefaultServiceInstance(null, SERVICE, "10.0.0.1", 9000, true, null)));
+
+        ServiceInstance loaded = store.load(SERVICE).getInstances().get(0);
+
+        assertNull(loaded.getInstanceId());
+        assertTrue(loaded.isSecure());
+        assertTrue(loaded.getMetadata().isEmpty());
+    }
+
+    @Test
+    void hasNoSnapshotOfAnUnknownService() {
+        assertNull(new NacosSnapshotStore(directory).load(SERVICE));
+    }
+}
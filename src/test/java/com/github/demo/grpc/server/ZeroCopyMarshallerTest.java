@@ -0,0 +1,360 @@
+package com.github.demo.grpc.server;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import io.grpc.Attributes;
+import io.grpc.Detachable;
+import io.grpc.HasByteBuffer;
+import io.grpc.KnownLength;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.ProtoUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZeroCopyMarshallerTest {
+
+    /**
+     * Whether the buffers of the message were released when the handler received it.
+     */
+    private final List<Boolean> releasedOnReceipt = new ArrayList<>();
+
+    private BufferStream current;
+
+    @Test
+    void parsesWithoutCopying() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.UNARY);
+        BufferStream stream = new BufferStream(message("payload"));
+        ByteBuffer buffer = stream.buffers[0];
+
+        BytesValue message = call.parse(stream);
+        // the message wraps the transport's buffer
+        buffer.put(buffer.limit() - 1, (byte) 'X');
+        call.listener.onMessage(message);
+
+        assertEquals("payloaX", message.getValue().toStringUtf8());
+        call.listener.onComplete();
+    }
+
+    @Test
+    void parsesMessagesSpanningSeveralBuffers() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.UNARY);
+        byte[] bytes = message("spanning several buffers");
+
+        BytesValue message = call.parse(new BufferStream(Arrays.copyOfRange(bytes, 0, 5),
+                Arrays.copyOfRange(bytes, 5, bytes.length)));
+        call.listener.onMessage(message);
+
+        assertEquals("spanning several buffers", message.getValue().toStringUtf8());
+        call.listener.onComplete();
+    }
+
+    @Test
+    void keepsUnaryRequestsUntilTheCallCompletes() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.UNARY);
+        BufferStream stream = new BufferStream(message("request"));
+
+        call.listener.onMessage(call.parse(stream));
+        call.listener.onHalfClose();
+
+        assertEquals(Arrays.asList(false), releasedOnReceipt);
+        assertFalse(stream.released.get());
+        call.listener.onComplete();
+        assertTrue(stream.released.get());
+    }
+
+    @Test
+    void releasesUnaryRequestsOfCancelledCalls() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.SERVER_STREAMING);
+        BufferStream stream = new BufferStream(message("request"));
+
+        call.listener.onMessage(call.parse(stream));
+        call.listener.onCancel();
+
+        assertTrue(stream.released.get());
+    }
+
+    @Test
+    void releasesStreamedMessagesOnceTheyWereReceived() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.CLIENT_STREAMING);
+        BufferStream first = new BufferStream(message("first"));
+        BufferStream second = new BufferStream(message("second"));
+
+        call.listener.onMessage(call.parse(first));
+        assertTrue(first.released.get());
+        call.listener.onMessage(call.parse(second));
+        assertTrue(second.released.get());
+
+        assertEquals(Arrays.asList(false, false), releasedOnReceipt);
+        call.listener.onComplete();
+    }
+
+    @Test
+    void releasesBuffersThatNoCallTook() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.UNARY);
+        BufferStream orphan = new BufferStream(message("orphan"));
+        BufferStream taken = new BufferStream(message("taken"));
+
+        call.parse(orphan);
+        call.listener.onMessage(call.parse(taken));
+
+        assertTrue(orphan.released.get());
+        assertFalse(taken.released.get());
+        call.listener.onComplete();
+        assertTrue(taken.released.get());
+    }
+
+    @Test
+    void releasesTheBuffersOfInvalidMessages() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.UNARY);
+        // a length delimited field whose length exceeds the message
+        BufferStream stream = new BufferStream(new byte[]{0x0a, 0x7f, 0x01});
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () -> call.parse(stream));
+
+        assertEquals(Status.Code.INTERNAL, e.getStatus().getCode());
+        assertTrue(stream.released.get());
+    }
+
+    @Test
+    void copiesWhenTheTransportDoesNotExposeItsBuffers() {
+        ZeroCopyCall call = newCall(MethodDescriptor.MethodType.UNARY);
+
+        BytesValue message = call.parse(new ByteArrayInputStream(message("copied")));
+        call.listener.onMessage(message);
+
+        assertEquals("copied", message.getValue().toStringUtf8());
+        call.listener.onComplete();
+    }
+
+    @Test
+    void keepsTheMarshallersOfMethodsThatAreNotSelected() {
+        MethodDescriptor<BytesValue, BytesValue> method = method(MethodDescriptor.MethodType.UNARY);
+        ServerServiceDefinition definition = ServerServiceDefinition.builder("test.Service")
+                .addMethod(method, (call, headers) -> new ServerCall.Listener<BytesValue>() {
+                })
+                .build();
+
+        ServerServiceDefinition applied = ZeroCopyMarshaller.apply(definition, name -> false);
+
+        assertSame(method.getRequestMarshaller(),
+                applied.getMethod(method.getFullMethodName()).getMethodDescriptor().getRequestMarshaller());
+    }
+
+    private ZeroCopyCall newCall(MethodDescriptor.MethodType type) {
+        MethodDescriptor<BytesValue, BytesValue> method = method(type);
+        ServerServiceDefinition definition = ServerServiceDefinition.builder("test.Service")
+                .addMethod(method, (call, headers) -> new ServerCall.Listener<BytesValue>() {
+                    @Override
+                    public void onMessage(BytesValue message) {
+                        releasedOnReceipt.add(current != null && current.released.get());
+                    }
+                })
+                .build();
+        @SuppressWarnings("unchecked")
+        ServerMethodDefinition<BytesValue, BytesValue> zeroCopy = (ServerMethodDefinition<BytesValue, BytesValue>)
+                ZeroCopyMarshaller.apply(definition, name -> true).getMethod(method.getFullMethodName());
+        return new ZeroCopyCall(zeroCopy);
+    }
+
+    private static MethodDescriptor<BytesValue, BytesValue> method(MethodDescriptor.MethodType type) {
+        return MethodDescriptor.<BytesValue, BytesValue>newBuilder()
+                .setType(type)
+                .setFullMethodName("test.Service/Method")
+                .setRequestMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+                .setResponseMarshaller(ProtoUtils.marshaller(BytesValue.getDefaultInstance()))
+                .build();
+    }
+
+    private static byte[] message(String value) {
+        return BytesValue.newBuilder().setValue(ByteString.copyFromUtf8(value)).build().toByteArray();
+    }
+
+    /**
+     * A started call of a zero-copy method, parsing with the method's marshaller like the transport does.
+     */
+    private final class ZeroCopyCall {
+
+        private final MethodDescriptor<BytesValue, BytesValue> method;
+
+        private final ServerCall.Listener<BytesValue> listener;
+
+        ZeroCopyCall(ServerMethodDefinition<BytesValue, BytesValue> definition) {
+            this.method = definition.getMethodDescriptor();
+            this.listener = definition.getServerCallHandler().startCall(new NoopServerCall(method), new Metadata());
+        }
+
+        BytesValue parse(InputStream stream) {
+            current = stream instanceof BufferStream ? (BufferStream) stream : null;
+            return method.parseRequest(stream);
+        }
+    }
+
+    /**
+     * A stream over a list of direct buffers like the transport's, its buffers are released when the stream it was
+     * detached to is closed. Protobuf only aliases direct buffers, heap buffers without an accessible array are copied.
+     */
+    private static final class BufferStream extends InputStream implements KnownLength, HasByteBuffer, Detachable {
+
+        final AtomicBoolean released;
+
+        ByteBuffer[] buffers;
+
+        private int[] marks;
+
+        BufferStream(byte[]... chunks) {
+            this(wrap(chunks), new AtomicBoolean());
+        }
+
+        private BufferStream(ByteBuffer[] buffers, AtomicBoolean released) {
+            this.buffers = buffers;
+            this.released = released;
+        }
+
+        private static ByteBuffer[] wrap(byte[][] chunks) {
+            ByteBuffer[] buffers = new ByteBuffer[chunks.length];
+            for (int i = 0; i < chunks.length; i++) {
+                buffers[i] = ByteBuffer.allocateDirect(chunks[i].length);
+                buffers[i].put(chunks[i]).flip();
+            }
+            return buffers;
+        }
+
+        @Override
+        public int read() {
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    return buffer.get() & 0xff;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = 0;
+            for (ByteBuffer buffer : buffers) {
+                int length = (int) Math.min(buffer.remaining(), n - skipped);
+                buffer.position(buffer.position() + length);
+                skipped += length;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            int available = 0;
+            for (ByteBuffer buffer : buffers) {
+                available += buffer.remaining();
+            }
+            return available;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            marks = new int[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                marks[i] = buffers[i].position();
+            }
+        }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i].position(marks[i]);
+            }
+        }
+
+        @Override
+        public boolean byteBufferSupported() {
+            return true;
+        }
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    return buffer.slice().asReadOnlyBuffer();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream detach() {
+            BufferStream detached = new BufferStream(buffers, released);
+            buffers = new ByteBuffer[0];
+            return detached;
+        }
+
+        @Override
+        public void close() {
+            if (buffers.length > 0) {
+                released.set(true);
+            }
+        }
+    }
+
+    private static final class NoopServerCall extends ServerCall<BytesValue, BytesValue> {
+
+        private final MethodDescriptor<BytesValue, BytesValue> method;
+
+        NoopServerCall(MethodDescriptor<BytesValue, BytesValue> method) {
+            this.method = method;
+        }
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void sendHeaders(Metadata headers) {
+        }
+
+        @Override
+        public void sendMessage(BytesValue message) {
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return Attributes.EMPTY;
+        }
+
+        @Override
+        public MethodDescriptor<BytesValue, BytesValue> getMethodDescriptor() {
+            return method;
+        }
+    }
+}